@@ -7,6 +7,7 @@ import ar.com.leo.api.ml.model.OrdenML;
 import ar.com.leo.api.ml.model.TokensML;
 import ar.com.leo.api.ml.model.Venta;
 import ar.com.leo.etiquetas.model.ZplLabel;
+import ar.com.leo.etiquetas.parser.ZplDocument;
 import ar.com.leo.etiquetas.parser.ZplParser;
 import ar.com.leo.pedidos.model.PedidoML;
 import javafx.application.Platform;
@@ -17,9 +18,10 @@ import tools.jackson.databind.json.JsonMapper;
 import tools.jackson.databind.node.ArrayNode;
 import tools.jackson.databind.node.ObjectNode;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
@@ -33,9 +35,8 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -72,8 +73,6 @@ public class MercadoLibreAPI {
 
     // Patrones para identificar a qué envío pertenece cada etiqueta mirando su contenido ZPL,
     // en vez de asumir el orden de la respuesta de ML (que no está garantizado).
-    private static final Pattern ZPL_ENVIO_PATTERN = Pattern.compile("Envio:\\s*(\\d+)");
-    private static final Pattern ZPL_QR_ID_PATTERN = Pattern.compile("\"id\"\\s*:\\s*\"(\\d+)\"");
     private static MLCredentials mlCredentials;
     private static volatile TokensML tokens;
 
@@ -445,77 +444,86 @@ public class MercadoLibreAPI {
                 .GET()
                 .build();
 
-        // Usar sendWithRetry pero necesitamos bytes, así que hacemos la request manual con retry logic
-        HttpResponse<byte[]> response;
+        // Usar sendWithRetry pero necesitamos el cuerpo como stream, así que hacemos la request manual
+        HttpResponse<InputStream> response;
         try {
             HttpRequest request = requestBuilder.get();
-            response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
         } catch (IOException | InterruptedException e) {
             AppLogger.warn("ML - Error al descargar etiquetas ZPL: " + e.getMessage());
             return List.of();
         }
 
-        if (response.statusCode() != 200) {
-            AppLogger.warn("ML - Error descargando etiquetas (HTTP " + response.statusCode() + "): "
-                    + new String(response.body(), StandardCharsets.UTF_8));
-            return List.of();
-        }
-
-        // La respuesta puede ser un ZIP o texto plano ZPL
-        String contentType = response.headers().firstValue("content-type").orElse("");
-        String zplContent;
+        // Las etiquetas se parsean y se enriquecen a medida que llegan los bytes, sin esperar a
+        // que termine la descarga ni juntar el ZIP y el texto enteros en memoria.
+        List<ZplLabel> enriched = new ArrayList<>();
+        Consumer<ZplLabel> enriquecer = label ->
+                enriched.add(enriquecerEtiqueta(label, enriched.size(), shipmentIds, skuMap, turboShipmentIds));
+
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                AppLogger.warn("ML - Error descargando etiquetas (HTTP " + response.statusCode() + "): "
+                        + new String(body.readAllBytes(), StandardCharsets.UTF_8));
+                return List.of();
+            }
 
-        if (contentType.contains("zip") || contentType.contains("octet-stream")) {
-            zplContent = extractZplFromZip(response.body());
-        } else {
-            zplContent = new String(response.body(), StandardCharsets.UTF_8);
+            // La respuesta puede ser un ZIP o texto plano ZPL
+            String contentType = response.headers().firstValue("content-type").orElse("");
+            if (contentType.contains("zip") || contentType.contains("octet-stream")) {
+                parsearZip(body, enriquecer);
+            } else {
+                zplParser.parse(new InputStreamReader(body, StandardCharsets.UTF_8), enriquecer);
+            }
+        } catch (IOException e) {
+            // ML ya las marcó como impresas: mejor quedarse con las que llegaron que con ninguna.
+            AppLogger.warn("ML - Error al leer las etiquetas ZPL (" + enriched.size() + " recibidas): "
+                    + e.getMessage());
         }
 
-        // Parsear las etiquetas
-        List<ZplLabel> parsed = zplParser.parse(zplContent);
-
-        // Enriquecer con datos de las órdenes (SKU más confiable desde API).
-        // IMPORTANTE: alinear cada etiqueta con su envío por CONTENIDO (el id dentro del ZPL),
-        // NO por posición. ML no garantiza que el orden de las etiquetas devueltas coincida con
-        // el de shipment_ids ni que haya exactamente una por envío; emparejar por posición
-        // desalinea SKU/zona/COD.EXT cuando se imprimen varias etiquetas.
-        List<ZplLabel> enriched = new ArrayList<>();
-        for (int i = 0; i < parsed.size(); i++) {
-            ZplLabel label = parsed.get(i);
-
-            Long shipId = identificarShipment(label.rawZpl(), shipmentIds);
-            if (shipId == null) {
-                // Fallback al comportamiento anterior (por posición) + aviso: puede cruzar datos.
-                shipId = i < shipmentIds.size() ? shipmentIds.get(i) : null;
-                AppLogger.warn("ML - No se pudo identificar el envío de una etiqueta por su contenido; "
-                        + "alineando por posición (shipId=" + shipId + "). Si las etiquetas salen con "
-                        + "SKU/COD.EXT cruzados, revisá el formato de etiqueta de ML.");
-            }
+        return enriched;
+    }
 
-            String sku = label.sku();
-            String desc = label.productDescription();
-            int qty = 1;
-            boolean turbo = false;
-            String orderIds = "";
-            if (shipId != null) {
-                SkuInfo info = skuMap.get(shipId);
-                if (info != null) {
-                    if (info.sku != null && !info.sku.isBlank()) {
-                        sku = info.sku;
-                    }
-                    if (info.title != null && !info.title.isBlank()) {
-                        desc = info.title;
-                    }
-                    qty = info.quantity;
-                    orderIds = info.orderIds;
+    /**
+     * Enriquece con datos de las órdenes (SKU más confiable desde API).
+     * IMPORTANTE: alinear cada etiqueta con su envío por CONTENIDO (el id dentro del ZPL),
+     * NO por posición. ML no garantiza que el orden de las etiquetas devueltas coincida con
+     * el de shipment_ids ni que haya exactamente una por envío; emparejar por posición
+     * desalinea SKU/zona/COD.EXT cuando se imprimen varias etiquetas.
+     *
+     * @param posicion lugar de la etiqueta en la respuesta, solo para el fallback por posición.
+     */
+    private static ZplLabel enriquecerEtiqueta(ZplLabel label, int posicion, List<Long> shipmentIds,
+                                               Map<Long, SkuInfo> skuMap, Set<Long> turboShipmentIds) {
+        Long shipId = identificarShipment(ZplDocument.of(label), shipmentIds);
+        if (shipId == null) {
+            // Fallback al comportamiento anterior (por posición) + aviso: puede cruzar datos.
+            shipId = posicion < shipmentIds.size() ? shipmentIds.get(posicion) : null;
+            AppLogger.warn("ML - No se pudo identificar el envío de una etiqueta por su contenido; "
+                    + "alineando por posición (shipId=" + shipId + "). Si las etiquetas salen con "
+                    + "SKU/COD.EXT cruzados, revisá el formato de etiqueta de ML.");
+        }
+
+        String sku = label.sku();
+        String desc = label.productDescription();
+        int qty = 1;
+        boolean turbo = false;
+        String orderIds = "";
+        if (shipId != null) {
+            SkuInfo info = skuMap.get(shipId);
+            if (info != null) {
+                if (info.sku != null && !info.sku.isBlank()) {
+                    sku = info.sku;
                 }
-                turbo = turboShipmentIds.contains(shipId);
+                if (info.title != null && !info.title.isBlank()) {
+                    desc = info.title;
+                }
+                qty = info.quantity;
+                orderIds = info.orderIds;
             }
-
-            enriched.add(new ZplLabel(label.rawZpl(), sku, desc, label.details(), qty, turbo, orderIds));
+            turbo = turboShipmentIds.contains(shipId);
         }
 
-        return enriched;
+        return label.conDatos(sku, desc, label.details(), qty, turbo, orderIds);
     }
 
     /**
@@ -527,12 +535,12 @@ public class MercadoLibreAPI {
      * @param candidatos shipmentIds esperados en este batch.
      * @return el shipmentId identificado, o {@code null} si no se puede determinar.
      */
-    private static Long identificarShipment(String rawZpl, List<Long> candidatos) {
+    private static Long identificarShipment(ZplDocument doc, List<Long> candidatos) {
         // 1) Campo "Envio: <id>"
-        Matcher env = ZPL_ENVIO_PATTERN.matcher(rawZpl);
-        if (env.find()) {
+        String envio = doc.envioId();
+        if (envio != null) {
             try {
-                long id = Long.parseLong(env.group(1));
+                long id = Long.parseLong(envio);
                 if (candidatos.contains(id)) return id;
             } catch (NumberFormatException ignored) {
                 // id no parseable: probar con el QR
@@ -541,9 +549,8 @@ public class MercadoLibreAPI {
         // 2) id del QR = shipmentId + dígitos de seguridad → match por prefijo.
         // Si varios candidatos son prefijo (caso raro con ids de distinta longitud),
         // gana el más específico (el más largo) para evitar falsos positivos.
-        Matcher qr = ZPL_QR_ID_PATTERN.matcher(rawZpl);
-        if (qr.find()) {
-            String qrId = qr.group(1);
+        String qrId = doc.qrId();
+        if (qrId != null) {
             Long mejor = null;
             for (Long c : candidatos) {
                 String s = String.valueOf(c);
@@ -557,22 +564,20 @@ public class MercadoLibreAPI {
         return null;
     }
 
-    private static String extractZplFromZip(byte[] zipData) {
-        StringBuilder sb = new StringBuilder();
-        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zipData))) {
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                if (!entry.isDirectory()) {
-                    byte[] content = zis.readAllBytes();
-                    sb.append(new String(content, StandardCharsets.UTF_8));
-                    sb.append("\n");
-                }
-                zis.closeEntry();
+    /**
+     * Infla cada archivo del ZIP directo en el parser, a medida que llega. Cada archivo se parsea
+     * por separado: ML manda etiquetas completas en cada uno.
+     */
+    private static void parsearZip(InputStream zip, Consumer<ZplLabel> consumidor) throws IOException {
+        ZipInputStream zis = new ZipInputStream(zip);
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            if (!entry.isDirectory()) {
+                // El reader no se cierra: cerraría el ZIP entero. Al final de la entrada devuelve -1.
+                zplParser.parse(new InputStreamReader(zis, StandardCharsets.UTF_8), consumidor);
             }
-        } catch (IOException e) {
-            AppLogger.warn("ML - Error al extraer ZPL del ZIP: " + e.getMessage());
+            zis.closeEntry();
         }
-        return sb.toString();
     }
 
     private record SkuInfo(String sku, String title, int quantity, String orderIds) {
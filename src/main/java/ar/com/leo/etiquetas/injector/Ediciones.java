@@ -0,0 +1,84 @@
+package ar.com.leo.etiquetas.injector;
+
+import ar.com.leo.etiquetas.model.ZplLote;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Los cambios a una etiqueta, anotados con las posiciones del texto original y aplicados de una
+ * sola vez al final.
+ *
+ * Dos inserciones en el mismo lugar quedan como si se hubieran hecho una después de la otra
+ * sobre el texto ya modificado: la que se engancha al final de lo anterior (después de un ^FS)
+ * queda pegada a eso, y la que se engancha al principio de lo que sigue (antes de un ^FO)
+ * queda pegada a eso otro.
+ */
+final class Ediciones {
+
+    private record Edicion(int desde, int hasta, int tipo, int orden, String texto) {
+    }
+
+    private static final int DESPUES = 0;
+    private static final int BORRAR = 1;
+    private static final int ANTES = 2;
+    private static final Comparator<Edicion> ORDEN = Comparator.comparingInt(Edicion::desde)
+            .thenComparingInt(Edicion::tipo)
+            .thenComparingInt(e -> e.tipo() == DESPUES ? -e.orden() : e.orden());
+
+    private final String original;
+    private final List<Edicion> ediciones = new ArrayList<>();
+    private int borradoDesde = -1;
+    private int borradoHasta = -1;
+
+    Ediciones(String original) {
+        this.original = original;
+    }
+
+    /** Inserta pegado a lo que termina en {@code posicion}. */
+    void insertarDespues(int posicion, String texto) {
+        ediciones.add(new Edicion(posicion, posicion, DESPUES, ediciones.size(), texto));
+    }
+
+    /** Inserta pegado a lo que empieza en {@code posicion}. */
+    void insertarAntes(int posicion, String texto) {
+        ediciones.add(new Edicion(posicion, posicion, ANTES, ediciones.size(), texto));
+    }
+
+    void borrar(int desde, int hasta) {
+        ediciones.add(new Edicion(desde, hasta, BORRAR, ediciones.size(), ""));
+    }
+
+    /**
+     * Borra un tramo que, además, deja de existir para las búsquedas que siguen: lo que caiga
+     * adentro no sirve de ancla.
+     */
+    void quitar(int desde, int hasta) {
+        borrar(desde, hasta);
+        borradoDesde = desde;
+        borradoHasta = hasta;
+    }
+
+    /** Si la posición cae en el tramo quitado. */
+    boolean borrado(int posicion) {
+        return posicion >= borradoDesde && posicion < borradoHasta;
+    }
+
+    /** Escribe la etiqueta ya modificada al final del lote y devuelve dónde empieza. */
+    int aplicar(ZplLote destino) {
+        int inicio = destino.tamanio();
+        ediciones.sort(ORDEN);
+        int copiado = 0;
+        for (Edicion e : ediciones) {
+            if (e.desde() > copiado) {
+                destino.agregar(original, copiado, e.desde());
+                copiado = e.desde();
+            }
+            destino.agregar(e.texto());
+            copiado = Math.max(copiado, e.hasta());
+        }
+        destino.agregar(original, copiado, original.length());
+        return inicio;
+    }
+}
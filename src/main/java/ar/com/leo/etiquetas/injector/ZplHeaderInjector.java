@@ -0,0 +1,665 @@
+package ar.com.leo.etiquetas.injector;
+
+import ar.com.leo.AppLogger;
+import ar.com.leo.etiquetas.model.DatosEmbalaje;
+import ar.com.leo.etiquetas.model.MedidaSku;
+import ar.com.leo.etiquetas.model.SortResult;
+import ar.com.leo.etiquetas.model.SortedLabelGroup;
+import ar.com.leo.etiquetas.model.ZplLabel;
+import ar.com.leo.etiquetas.model.ZplLote;
+import ar.com.leo.etiquetas.parser.ComboCatalog;
+import ar.com.leo.etiquetas.parser.ComboProduct;
+import ar.com.leo.etiquetas.parser.EmbalajeRenderer;
+import ar.com.leo.etiquetas.parser.MedidasExcelManager;
+import ar.com.leo.etiquetas.parser.ZplDocument;
+import ar.com.leo.etiquetas.parser.ZplParser;
+import ar.com.leo.etiquetas.ui.EstadoDato;
+import ar.com.leo.util.ZplHexDecoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Agrega a las etiquetas de ML lo que necesita el depósito: el número de posición, la zona, el
+ * COD.EXT., las líneas de embalaje y el resaltado de las cantidades.
+ *
+ * No depende de la ventana: lo usan la app, los tests y los benchmarks. Cada etiqueta se mira
+ * con {@link ZplDocument} sobre el índice que trae del tokenizer, los cambios se anotan con las
+ * posiciones del texto original y se escriben de una sola pasada en el lote de salida, así que no
+ * se arma ninguna copia intermedia del ZPL.
+ *
+ * Con lotes grandes las etiquetas se reescriben en paralelo en el ForkJoinPool común. El resultado
+ * es el mismo que en orden: el #N y el banner MEDIR se reparten antes, en una pasada secuencial, y
+ * los avisos de cada etiqueta se juntan aparte y se registran en orden cuando terminan todas.
+ */
+public final class ZplHeaderInjector {
+
+    private static final Pattern FO_PATTERN = Pattern.compile("\\^FO(\\d+),(\\d+)");
+    private static final Pattern FONT_PATTERN = Pattern.compile("\\^A0N,(\\d+),(\\d+)");
+    private static final Pattern FB_PATTERN = Pattern.compile("\\^FB(\\d+),(\\d+)");
+    private static final Pattern CARROS_SKU_NUMBER = Pattern.compile("SKU:\\s*(\\d+)");
+    /** Lo que lleva delante el número grande de unidades, pegado a su ^FOx,y. */
+    private static final String FORMATO_UNIDADES = "^A0N,70,70^FB160,1,0,C^FD";
+
+    // Anclas de texto que dependen del formato de etiqueta de ML: la inyección de
+    // ZONA se posiciona debajo del campo "Unidad" y la de COD.EXT. debajo del de "SKU:".
+    // Si ML cambia estos textos, la inyección se omite y se registra una advertencia
+    // (en vez de fallar en silencio produciendo etiquetas incompletas).
+    private static final String ANCHOR_UNIDAD = "Unidad";
+    private static final String ANCHOR_SKU = "SKU:";
+    // Fragmento del texto "Recortá esta parte..." de ML, sin acentos ni mayúsculas para no depender
+    // de cómo venga codificada la tilde.
+    private static final String ANCHOR_RECORTE = "ecort";
+    /** Dónde guarda {@link ZplLayoutCache} la medida de cada ancla. */
+    private static final int ANCLA_UNIDAD = 0;
+    private static final int ANCLA_SKU = 1;
+
+    /**
+     * El banner MEDIR quedó fuera de uso. El código que lo arma se conserva entero: alcanza con
+     * poner esto en true para que vuelva. Lo que sigue activo es lo demás que dispara la detección
+     * de pendientes: el alta en el Excel y el diálogo del final del lote.
+     */
+    private static final boolean BANNER_MEDIR = false;
+
+    /** Cuántas etiquetas inyecta cada tarea del modo paralelo antes de no partir más. */
+    static final int ETIQUETAS_POR_TAREA = 64;
+
+    private final Map<String, String> skuToExtCode;
+    private final ComboCatalog combos;
+    private final MedidasExcelManager.Medidas medidas;
+    private final ZplLayoutCache layouts;
+    /** El embalaje armado de cada SKU de {@link #medidas}: dura lo que ellas. */
+    private final EmbalajeRenderer.Bloques bloques = new EmbalajeRenderer.Bloques();
+
+    public ZplHeaderInjector(Map<String, String> skuToExtCode, ComboCatalog combos,
+                             MedidasExcelManager.Medidas medidas) {
+        this(skuToExtCode, combos, medidas, new ZplLayoutCache());
+    }
+
+    /**
+     * @param skuToExtCode     el COD.EXT. de cada SKU, del Excel de stock
+     * @param combos           los combos del Excel; null si no hay
+     * @param medidas          el Excel de medidas; null si el módulo está apagado o no se pudo leer
+     * @param layouts          lo ya leído de cada formato de etiqueta; conviene que dure más que un lote
+     */
+    public ZplHeaderInjector(Map<String, String> skuToExtCode, ComboCatalog combos,
+                             MedidasExcelManager.Medidas medidas, ZplLayoutCache layouts) {
+        this.skuToExtCode = skuToExtCode;
+        this.combos = combos != null ? combos : ComboCatalog.VACIO;
+        this.medidas = medidas;
+        this.layouts = layouts;
+    }
+
+    /**
+     * @param skusPendientesOut     se completa con los SKU sin medidas, para darlos de alta en el
+     *                              Excel. No importa de cuántas unidades sea la etiqueta: lo que se
+     *                              crea es la fila donde después hay que cargarlos.
+     * @param embalajesFaltantesOut se completa con los SKU que salieron con el aviso
+     *                              "NO ESTANDARIZADO" impreso: los que tienen NO en esa columna y
+     *                              los que todavía no figuran en el Excel.
+     * @param sinDatosOut           se completa con los SKU que salieron con el aviso de falta de
+     *                              datos: la fórmula dice que sí, pero no tienen cargada ninguna de
+     *                              las tres columnas de embalaje. Van aparte porque lo que hay que
+     *                              arreglar en el Excel es otra cosa.
+     */
+    public SortResult inject(SortResult result, Map<String, String> skusPendientesOut,
+                             Set<String> embalajesFaltantesOut, Set<String> sinDatosOut) {
+        // Hace falta para los SKU que todavía no figuran en el Excel: sin ninguna fila propia, es
+        // lo único que dice si la función está en uso o si no hay nada que reclamar.
+        boolean moduloEmbalajeActivo = medidas != null && medidas.embalajeEnUso();
+        // Primera pasada, en orden y sin tocar el ZPL: lo único que depende de las etiquetas
+        // anteriores es el #N, qué etiqueta lleva el banner MEDIR y el orden de los avisos, y
+        // queda resuelto acá. Lo que cuesta, reescribir cada etiqueta, va después y en paralelo.
+        List<Trabajo> trabajos = new ArrayList<>();
+        int labelPosition = 1;
+        Set<String> skusYaMarcados = new HashSet<>();
+        for (SortedLabelGroup group : result.groups()) {
+            String zone = group.zone();
+            String sku = group.sku();
+            String extCodeText = null;
+            if (!"CARROS".equals(zone)) {
+                String extCode = skuToExtCode.getOrDefault(sku, "");
+                // Fallback: si el SKU es un combo con un solo componente, usar el COD.EXT.
+                // del componente. Aplica a cualquier zona (el combo puede estar mapeado
+                // a J*, T*, COMBOS, etc. en el Excel de stock).
+                if (!combos.isEmpty()) {
+                    String componentExt = resolveSingleComponentExtCode(sku);
+                    if (componentExt != null) extCode = componentExt;
+                }
+                extCodeText = "COD.EXT.: " + (extCode.isEmpty() ? "-" : extCode);
+            }
+
+            // Un SKU es elegible para las líneas de embalaje y para la detección de pendientes de
+            // medición si tiene número propio y su etiqueta corresponde a un solo producto. Los
+            // carros listan varios; los no numéricos son sentinelas del parser ("SKU INVALIDO:
+            // ...") que nunca llegan al Excel de medidas, así que no se les puede cargar ni medida
+            // ni embalaje. La condición es una sola para los dos usos, para que no diverjan.
+            boolean skuElegible = medidas != null && EstadoDato.esSkuElegible(zone, sku);
+            MedidaSku medidaSku = skuElegible ? medidas.porSku().get(sku) : null;
+
+            // Dos preguntas distintas sobre el mismo SKU. Al Excel hay que agregarle una fila si
+            // todavía no la tiene, y eso no depende de si está medido ni de cuántas unidades trae
+            // la etiqueta: la fila es donde después se cargan las medidas y el embalaje, y un SKU
+            // que solo sale de a varias unidades avisa en papel igual, así que sin esto el operario
+            // iría al Excel y no encontraría la fila que el aviso le pide completar.
+            boolean skuSinFila = skuElegible && medidaSku == null;
+            // Medir es otra cosa: la fila puede existir y estar vacía.
+            boolean skuPendienteMedicion = skuElegible && (medidaSku == null || !medidaSku.estaMedido());
+
+            if (skuSinFila) {
+                skusPendientesOut.putIfAbsent(sku,
+                        group.productDescription() != null ? group.productDescription() : "");
+            }
+
+            // Datos de embalaje del SKU. Son los mismos para todas las etiquetas del grupo, pero
+            // las líneas dependen de la cantidad de cada una, así que se arman más abajo.
+            DatosEmbalaje datosEmbalaje = skuElegible
+                    ? EstadoDato.embalajeDe(medidaSku, moduloEmbalajeActivo)
+                    : DatosEmbalaje.VACIO;
+
+            for (ZplLabel label : group.labels()) {
+                // Un pedido de dos o más unidades no es un producto suelto, así que el envase sale
+                // encabezado como referencia. Los avisos salen igual: no dependen de la cantidad.
+                // Es el mismo bloque para todas las etiquetas del SKU con una unidad, y otro para todas
+                // las de varias: se arma una vez.
+                EmbalajeRenderer.Bloque embalaje = bloques.bloque(datosEmbalaje, label.quantity());
+                List<String> lineasEmbalaje = embalaje.lineas();
+                String embalajeZpl = embalaje.zpl();
+                // El aviso final lista exactamente los SKU que salieron avisados en papel.
+                if (embalajesFaltantesOut != null
+                        && EmbalajeRenderer.avisaSinEstandarizar(lineasEmbalaje)) {
+                    embalajesFaltantesOut.add(sku);
+                }
+                if (sinDatosOut != null && EmbalajeRenderer.avisaSinDatos(lineasEmbalaje)) {
+                    sinDatosOut.add(sku);
+                }
+                String medirPrefix = "";
+                // Medir sí necesita el producto suelto: con dos o más unidades el operario no tiene
+                // uno para pasarle la cinta.
+                boolean necesitaMedir = skuPendienteMedicion && label.quantity() == 1;
+                // Solo marcamos una etiqueta por SKU aunque haya varias elegibles (todas de 1 unidad).
+                // Alcanza con una sola medición para cargar las dimensiones del SKU.
+                if (BANNER_MEDIR && necesitaMedir && skusYaMarcados.add(sku)) {
+                    // Banner MEDIR: [SKU] en video inverso (blanco sobre negro), bien visible.
+                    // Va debajo del #X (que termina en y=65) y encima del "Pack ID:" de ML (y=129),
+                    // ocupando el ancho hasta x=400. El margen superior derecho quedó para las
+                    // líneas de embalaje, que necesitan todo el alto para las observaciones largas.
+                    // Los SKU son de 7 dígitos, así que el texto mide 14 caracteres: con fuente 42
+                    // ocupa ~322 de los 380 de ancho y entra sin necesidad de una segunda línea.
+                    String medirText = "MEDIR: " + sku;
+                    medirPrefix =
+                            "^FO20,70^GB380,52,52^FS\n"
+                            + "^FO20,75^A0N,42,42^FB380,1,0,C^FR^FD" + medirText + "^FS\n";
+                }
+                trabajos.add(new Trabajo(label, labelPosition++, zone, sku, extCodeText, embalajeZpl, medirPrefix,
+                        new ArrayList<>(0)));
+            }
+        }
+
+        ZplLabel[] inyectadas = new ZplLabel[trabajos.size()];
+        if (trabajos.size() < ETIQUETAS_POR_TAREA * 2) {
+            new Inyeccion(trabajos, inyectadas, 0, trabajos.size()).compute();
+        } else {
+            ForkJoinPool.commonPool().invoke(new Inyeccion(trabajos, inyectadas, 0, trabajos.size()));
+        }
+        for (Trabajo t : trabajos) {
+            t.avisos().forEach(AppLogger::warn);
+        }
+
+        List<SortedLabelGroup> newGroups = new ArrayList<>();
+        int desde = 0;
+        for (SortedLabelGroup group : result.groups()) {
+            int hasta = desde + group.labels().size();
+            List<ZplLabel> newLabels = new ArrayList<>(Arrays.asList(inyectadas).subList(desde, hasta));
+            newGroups.add(new SortedLabelGroup(group.zone(), group.sku(), group.productDescription(),
+                    group.details(), newLabels));
+            desde = hasta;
+        }
+        return new SortResult(newGroups, result.statistics());
+    }
+
+    /**
+     * Una etiqueta con todo lo que depende del orden ya resuelto. En {@code avisos} queda lo que
+     * hubo que advertir al inyectarla, para registrarlo en el orden de las etiquetas.
+     */
+    private record Trabajo(ZplLabel label, int posicion, String zone, String sku, String extCodeText,
+                           String embalajeZpl, String medirPrefix, List<String> avisos) {
+    }
+
+    /**
+     * Parte el rango de etiquetas a la mitad hasta que queda chico y lo inyecta en un lote propio:
+     * uno compartido tendría que sincronizarse. Cada etiqueta va a su lugar del arreglo, así que el
+     * resultado sale en el mismo orden que la pasada secuencial.
+     */
+    private final class Inyeccion extends RecursiveAction {
+
+        private final List<Trabajo> trabajos;
+        private final ZplLabel[] salida;
+        private final int desde;
+        private final int hasta;
+
+        Inyeccion(List<Trabajo> trabajos, ZplLabel[] salida, int desde, int hasta) {
+            this.trabajos = trabajos;
+            this.salida = salida;
+            this.desde = desde;
+            this.hasta = hasta;
+        }
+
+        @Override
+        protected void compute() {
+            if (hasta - desde > ETIQUETAS_POR_TAREA) {
+                int medio = (desde + hasta) >>> 1;
+                invokeAll(new Inyeccion(trabajos, salida, desde, medio), new Inyeccion(trabajos, salida, medio, hasta));
+                return;
+            }
+            ZplLote lote = new ZplLote();
+            for (int i = desde; i < hasta; i++) {
+                Trabajo t = trabajos.get(i);
+                int inicioZpl = inyectar(ZplDocument.of(t.label()), t.posicion(), t.zone(), t.sku(), t.extCodeText(),
+                        t.embalajeZpl(), t.medirPrefix(), lote, t.avisos());
+                salida[i] = t.label().conZpl(lote, inicioZpl, lote.tamanio() - inicioZpl);
+            }
+        }
+    }
+
+    /**
+     * Escribe en {@code destino} la etiqueta con todo lo inyectado y devuelve dónde empieza.
+     *
+     * @param extCodeText el "COD.EXT.: ..." a poner debajo del SKU, o null para no ponerlo (CARROS)
+     * @param embalajeZpl las líneas de embalaje; si hay, reemplazan el texto de recorte de ML
+     * @param medirPrefix el banner MEDIR, o vacío
+     * @param avisos      se completa con las advertencias de la etiqueta, sin registrarlas: puede
+     *                    correr en paralelo con otras y quien llama las registra en orden
+     */
+    int inyectar(ZplDocument doc, int posicion, String zone, String sku, String extCodeText, String embalajeZpl,
+                 String medirPrefix, ZplLote destino, List<String> avisos) {
+        String zoneText = "ZONA: " + zone;
+        // Todo lo que sigue busca sobre el índice que armó el tokenizer. Los cambios se
+        // anotan con las posiciones del texto original y se aplican juntos al final, así
+        // ninguna búsqueda tiene que ajustar lo que corrió una inserción previa.
+        ZplLayoutCache.Formato formato = layouts.formato(doc);
+        Ediciones ediciones = new Ediciones(doc.raw());
+        // Las líneas de embalaje ocupan la franja donde ML imprime "Recortá esta parte...",
+        // que no le sirve al operario. El tramo quitado no cuenta para ninguna de las
+        // búsquedas que siguen.
+        if (!embalajeZpl.isEmpty()) {
+            quitarTextoRecorte(doc, ediciones, sku, avisos);
+        }
+        // Inyectar número de posición (#1, #2, ...) arriba a la izquierda en negrita
+        // Se inserta antes de ^LH (si existe) para que use coordenadas absolutas (top-left del label)
+        String posText = "#" + posicion;
+        int lhIdx = -1;
+        for (int i = 0; i < doc.lhCount() && lhIdx < 0; i++) {
+            if (!ediciones.borrado(doc.lh(i))) lhIdx = doc.lh(i);
+        }
+        int insertIdx = lhIdx >= 0 ? lhIdx : doc.inicio();
+        // ^LH0,0 resetea el label home a (0,0) para usar coordenadas absolutas. Y=30 para no ser cortado por el borde superior
+        String posField1 = "^FO45,30^A0N,35,35^FD" + posText + "^FS";
+        String posField2 = "^FO46,30^A0N,35,35^FD" + posText + "^FS";
+        String posField3 = "^FO45,31^A0N,35,35^FD" + posText + "^FS";
+        String inyectado = "^LH0,0\n" + posField1 + "\n" + posField2 + "\n" + posField3 + "\n" + embalajeZpl + medirPrefix;
+        ediciones.insertarAntes(insertIdx, inyectado);
+        // A partir de acá arranca el ZPL de ML. Las anclas se buscan solo ahí: OBS es
+        // texto libre del Excel y una observación que diga "2 Unidades por caja" haría
+        // que ZONA se posicione tomando como referencia la línea de embalaje.
+        final int inicioMl = insertIdx;
+        final int primerCampoMl = doc.primerCampoDesde(inicioMl);
+
+        // Parsear ^LH original para convertir coordenadas relativas a absolutas. Es el
+        // primero que tiene la forma ^LHx,y: el ^LH0,0 de #X se inserta antes que él.
+        int origLhX = 0, origLhY = 0;
+        for (int i = 0; i < doc.lhCount(); i++) {
+            int[] lh = ediciones.borrado(doc.lh(i)) ? null : doc.lhCoordenadas(i);
+            if (lh != null) {
+                origLhX = lh[0];
+                origLhY = lh[1];
+                break;
+            }
+        }
+
+        // 1. Inyectar ZONA siempre debajo de "Unidades"
+        int unidadCampo = doc.campoCon(ANCHOR_UNIDAD, primerCampoMl);
+        while (unidadCampo >= 0 && ediciones.borrado(doc.inicioContenido(unidadCampo))) {
+            unidadCampo = doc.campoCon(ANCHOR_UNIDAD, unidadCampo + 1);
+        }
+        if (unidadCampo < 0) {
+            avisos.add("ZPL - No se encontró el ancla '" + ANCHOR_UNIDAD
+                    + "' para inyectar ZONA (sku=" + sku + ", zona=" + zone
+                    + "). ¿Cambió el formato de etiqueta de ML?");
+        } else {
+            int zoneAnchorFsIdx = doc.finContenido(unidadCampo);
+            int zoneAnchorFoIdx = foDelCampo(doc, ediciones, unidadCampo, inicioMl);
+            ZplLayoutCache.Medida medida = zoneAnchorFoIdx >= 0
+                    ? medida(doc, formato, ANCLA_UNIDAD, unidadCampo, zoneAnchorFoIdx, zoneAnchorFsIdx)
+                    : null;
+            if (medida != null) {
+                int newY = medida.y() + (medida.fontH() * medida.fbLines()) + 4;
+                int fontSize = 25;
+                // Usar coordenadas absolutas (^LH0,0) para alinear con la tijera/logo
+                int absZoneX = 20;
+                int absZoneY = origLhY + newY;
+                String field1 = "^LH0,0\n^FO" + absZoneX + "," + absZoneY + "^A0N," + fontSize + "," + fontSize + "^FD" + zoneText + "^FS";
+                String field2 = "^FO" + (absZoneX + 1) + "," + absZoneY + "^A0N," + fontSize + "," + fontSize + "^FD" + zoneText + "^FS";
+                String restoreLh = "\n^LH" + origLhX + "," + origLhY;
+                ediciones.insertarDespues(zoneAnchorFsIdx + 3, "\n" + field1 + "\n" + field2 + restoreLh);
+            }
+        }
+
+        // 2. Inyectar COD.EXT. debajo del último SKU (solo para zonas que no son CARROS)
+        if (extCodeText != null) {
+            int skuCampo = doc.ultimoCampoCon(ANCHOR_SKU);
+            while (skuCampo >= 0 && ediciones.borrado(doc.inicioContenido(skuCampo))) {
+                skuCampo = skuCampo > 0 ? doc.ultimoCampoCon(ANCHOR_SKU, skuCampo - 1) : -1;
+            }
+            if (skuCampo >= 0 && doc.inicioContenido(skuCampo) < inicioMl) skuCampo = -1;
+            if (skuCampo < 0) {
+                avisos.add("ZPL - No se encontró el ancla '" + ANCHOR_SKU
+                        + "' para inyectar COD.EXT. (sku=" + sku + ", zona=" + zone
+                        + "). ¿Cambió el formato de etiqueta de ML?");
+            } else {
+                int extAnchorFsIdx = doc.finContenido(skuCampo);
+                int extAnchorFoIdx = foDelCampo(doc, ediciones, skuCampo, inicioMl);
+                ZplLayoutCache.Medida medida = extAnchorFoIdx >= 0
+                        ? medida(doc, formato, ANCLA_SKU, skuCampo, extAnchorFoIdx, extAnchorFsIdx)
+                        : null;
+                if (medida != null) {
+                    int x = medida.x();
+                    int newY = medida.y() + (medida.fontH() * medida.fbLines()) + 4;
+                    int fontSize = 25;
+                    String field1 = "^FO" + x + "," + newY + "^A0N," + fontSize + "," + fontSize + "^FD" + extCodeText + "^FS";
+                    String field2 = "^FO" + (x + 1) + "," + newY + "^A0N," + fontSize + "," + fontSize + "^FD" + extCodeText + "^FS";
+                    ediciones.insertarDespues(extAnchorFsIdx + 3, "\n" + field1 + "\n" + field2);
+                }
+            }
+        }
+        // Resaltar número de unidad (video inverso) si > 1 y zona no es CARROS ni RETIROS
+        highlightUnitIfNeeded(doc, ediciones, zone);
+        // Para CARROS con productos listados, resaltar cantidades individuales > 1 (ej: "| 3 u.")
+        // y agregar COD.EXT. inline junto a cada SKU listado
+        if ("CARROS".equals(zone)) {
+            highlightCarrosProductQuantities(doc, ediciones);
+            injectCarrosExtCodes(doc, ediciones, skuToExtCode);
+        }
+        return ediciones.aplicar(destino);
+    }
+
+    /**
+     * El ^FO, la letra y las líneas del ^FB del campo ancla, leídos en el tramo que va de su ^FO a
+     * su ^FS. Si el formato ya se leyó con el ancla en el mismo lugar, salen de lo guardado. Null si
+     * el tramo no tiene un ^FOx,y.
+     */
+    private ZplLayoutCache.Medida medida(ZplDocument doc, ZplLayoutCache.Formato formato, int ancla, int campo,
+                                         int foIdx, int fsIdx) {
+        int fo = doc.indiceFo(foIdx);
+        ZplLayoutCache.Medida medida = layouts.medida(formato, ancla, campo, fo);
+        if (medida != null) return medida;
+        Matcher foMatcher = FO_PATTERN.matcher(doc.raw()).region(foIdx, fsIdx);
+        Matcher fontMatcher = FONT_PATTERN.matcher(doc.raw()).region(foIdx, fsIdx);
+        Matcher fbMatcher = FB_PATTERN.matcher(doc.raw()).region(foIdx, fsIdx);
+        if (!foMatcher.find()) return null;
+        int x = Integer.parseInt(foMatcher.group(1));
+        int y = Integer.parseInt(foMatcher.group(2));
+        int fontH = fontMatcher.find() ? Integer.parseInt(fontMatcher.group(1)) : 28;
+        int fbLines = fbMatcher.find() ? Integer.parseInt(fbMatcher.group(2)) : 1;
+        medida = new ZplLayoutCache.Medida(campo, fo, x, y, fontH, fbLines);
+        layouts.guardar(formato, ancla, medida);
+        return medida;
+    }
+
+    private String resolveSingleComponentExtCode(String sku) {
+        ComboProduct combo = combos.combo(sku);
+        if (combo == null || combo.componentes().size() != 1) return null;
+        String componentSku = combo.componentes().getFirst().codigoComponente();
+        if (componentSku == null || componentSku.isBlank()) return null;
+        String ext = skuToExtCode.getOrDefault(componentSku, "");
+        if (ext.isEmpty()) {
+            String normComp = ZplParser.normalizeSku(componentSku);
+            if (normComp != null && !normComp.startsWith("SKU INVALIDO")) {
+                ext = skuToExtCode.getOrDefault(normComp, "");
+            }
+        }
+        return ext.isEmpty() ? null : ext;
+    }
+
+    /**
+     * Elimina el campo de ML "Recortá esta parte de la etiqueta para que tu paquete viaje seguro",
+     * que ocupa la franja donde van las líneas de embalaje. Se busca por el fragmento "ecort" —sin
+     * acentos ni mayúsculas— para no depender de cómo ML codifique la tilde, y se corta desde su
+     * ^FO hasta su ^FS.
+     *
+     * Si el ancla no aparece (ML cambió el texto) se anota una advertencia y la etiqueta sale
+     * con los dos textos encimados: visible, en vez de perder el embalaje en silencio.
+     */
+    private static void quitarTextoRecorte(ZplDocument doc, Ediciones ediciones, String sku, List<String> avisos) {
+        int campo = doc.campoCon(ANCHOR_RECORTE, 0);
+        if (campo < 0) {
+            avisos.add("ZPL - No se encontró el ancla '" + ANCHOR_RECORTE
+                    + "' para quitar el texto de recorte (sku=" + sku
+                    + "). Las líneas de embalaje pueden encimarse. ¿Cambió el formato de ML?");
+            return;
+        }
+        int inicio = doc.foAntes(doc.inicioContenido(campo));
+        if (inicio < 0) return;
+        ediciones.quitar(inicio, doc.finContenido(campo) + 3);
+    }
+
+    /** El ^FO que ubica el campo, salteando el tramo quitado; -1 si queda antes del ZPL de ML. */
+    private static int foDelCampo(ZplDocument doc, Ediciones ediciones, int campo, int inicioMl) {
+        int fo = doc.foAntes(doc.inicioContenido(campo));
+        while (fo >= 0 && ediciones.borrado(fo)) fo = doc.foAntes(fo);
+        return fo >= inicioMl ? fo : -1;
+    }
+
+    /**
+     * El número grande de unidades es el primer campo de solo dígitos con exactamente
+     * {@code ^FOx,y^A0N,70,70^FB160,1,0,C^FD} delante. Uno que ya trae ^FR quedó resaltado en una
+     * pasada anterior y no se vuelve a tocar.
+     */
+    private static void highlightUnitIfNeeded(ZplDocument doc, Ediciones ediciones, String zone) {
+        String zoneUpper = zone.toUpperCase();
+        if (zoneUpper.startsWith("CARROS") || zoneUpper.startsWith("RETIROS")) {
+            return;
+        }
+        String raw = doc.raw();
+        for (int campo = 0; campo < doc.campoCount(); campo++) {
+            int fdIdx = doc.inicioContenido(campo);
+            int formatoIdx = fdIdx - FORMATO_UNIDADES.length();
+            if (formatoIdx < 0 || !raw.startsWith(FORMATO_UNIDADES, formatoIdx)
+                    || ediciones.borrado(formatoIdx)) continue;
+            String unidades = doc.contenido(campo);
+            if (unidades.isEmpty() || !unidades.chars().allMatch(c -> c >= '0' && c <= '9')) continue;
+            int foIdx = doc.foAntes(formatoIdx);
+            if (foIdx < 0) continue;
+            Matcher fo = FO_PATTERN.matcher(raw).region(foIdx, formatoIdx);
+            if (!fo.lookingAt() || fo.end() != formatoIdx) continue;
+
+            int unitNum = Integer.parseInt(unidades);
+            if (unitNum > 1) {
+                int x = Integer.parseInt(fo.group(1));
+                int y = Integer.parseInt(fo.group(2));
+                // Caja negra rellena detrás del número, tamaño ajustado a la cantidad de dígitos
+                int digits = String.valueOf(unitNum).length();
+                int boxW = digits * 50 + 28;
+                int boxH = 76;
+                int boxX = x + (160 - boxW) / 2;
+                String box = "^FO" + boxX + "," + (y - 3) + "^GB" + boxW + "," + boxH + "," + boxH + "^FS\n";
+                ediciones.insertarAntes(foIdx, box);
+                // ^FR debe ir ANTES de ^FD para invertir el campo (blanco sobre negro)
+                ediciones.insertarAntes(fdIdx - 3, "^FR");
+            }
+            return;
+        }
+    }
+
+    private static final Pattern CHECKBOX_PATTERN = Pattern.compile("\\^FO(\\d+),(\\d+)\\^GB30,30,3\\^FS");
+    private static final Pattern PRODUCT_QTY_PATTERN = Pattern.compile("\\|\\s*(\\d+)\\s*u\\.");
+    /** Convierte texto ZPL con ^FH hex a forma renderizada: cada secuencia UTF-8 (_C3_A9 etc.) se reemplaza por 'X'. */
+    private static String toRenderedForm(String fdText) {
+        StringBuilder sb = new StringBuilder(fdText.length());
+        int n = fdText.length();
+        int i = 0;
+        while (i < n) {
+            int firstByte = ZplHexDecoder.hexByte(fdText, i, n);
+            if (firstByte >= 0) {
+                i += 3;
+                int extraBytes = 0;
+                if (firstByte >= 0xC0 && firstByte < 0xE0) extraBytes = 1;
+                else if (firstByte >= 0xE0 && firstByte < 0xF0) extraBytes = 2;
+                else if (firstByte >= 0xF0) extraBytes = 3;
+                for (int b = 0; b < extraBytes && ZplHexDecoder.hexByte(fdText, i, n) >= 0; b++) {
+                    i += 3;
+                }
+                sb.append('X');
+            } else {
+                sb.append(fdText.charAt(i));
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void highlightCarrosProductQuantities(ZplDocument doc, Ediciones ediciones) {
+        String rawZpl = doc.raw();
+        // Buscar checkboxes de productos y detectar cuáles tienen "| N u." con N > 1. Cada
+        // checkbox es un ^FO, así que alcanza con mirar los que indexó el documento.
+        Matcher m = CHECKBOX_PATTERN.matcher(rawZpl);
+        List<int[]> mods = new ArrayList<>();
+
+        for (int f = 0; f < doc.foCount(); f++) {
+            if (!m.region(doc.fo(f), rawZpl.length()).lookingAt()) continue;
+            int afterCheckbox = m.end();
+            int campo = doc.primerCampoDesde(afterCheckbox + 3);
+            int fdStart = campo < doc.campoCount() ? doc.inicioContenido(campo) - 3 : -1;
+            int fsEnd = fdStart >= 0 ? doc.finContenido(campo) : -1;
+            if (fdStart >= 0 && fsEnd >= 0 && (fdStart - afterCheckbox) < 200) {
+                String fdContent = rawZpl.substring(fdStart + 3, fsEnd);
+                Matcher qtyM = PRODUCT_QTY_PATTERN.matcher(fdContent);
+                if (qtyM.find()) {
+                    int qty = Integer.parseInt(qtyM.group(1));
+                    if (qty > 1) {
+                        int removeStart = fdStart + 3 + qtyM.start();
+                        int removeEnd = fdStart + 3 + qtyM.end();
+                        // Incluir espacio previo al |
+                        if (removeStart > 0 && rawZpl.charAt(removeStart - 1) == ' ') {
+                            removeStart--;
+                        }
+
+                        // Parsear posición y fuente del campo de texto del producto
+                        String fieldSetup = rawZpl.substring(afterCheckbox, fdStart);
+                        Matcher foM = FO_PATTERN.matcher(fieldSetup);
+                        int textX = 200, textY = Integer.parseInt(m.group(2));
+                        if (foM.find()) {
+                            textX = Integer.parseInt(foM.group(1));
+                            textY = Integer.parseInt(foM.group(2));
+                        }
+                        Matcher fontM = FONT_PATTERN.matcher(fieldSetup);
+                        int fontH = 22, fontW = 22;
+                        if (fontM.find()) {
+                            fontH = Integer.parseInt(fontM.group(1));
+                            fontW = Integer.parseInt(fontM.group(2));
+                            if (fontW == 0) fontW = fontH;
+                        }
+                        Matcher fbM = FB_PATTERN.matcher(fieldSetup);
+                        int fbWidth = 570;
+                        if (fbM.find()) {
+                            fbWidth = Integer.parseInt(fbM.group(1));
+                        }
+
+                        // Calcular texto restante (sin " | N u.")
+                        int fdContentRemoveStart = removeStart - (fdStart + 3);
+                        int fdContentRemoveEnd = removeEnd - (fdStart + 3);
+                        String remainingText = fdContent.substring(0, fdContentRemoveStart) + fdContent.substring(fdContentRemoveEnd);
+
+                        // Convertir a forma renderizada (hex → char placeholder) para simular word-wrap
+                        // Usar remainingText completo (con "...") para que el wrap refleje lo que realmente se renderiza
+                        String rendered = toRenderedForm(remainingText);
+                        // Factor para word-wrap (ajustado para coincidir con wrapping real de ZPL A0)
+                        double wrapCharW = fontW * 0.46;
+                        int charsPerLine = Math.max(1, (int) (fbWidth / wrapCharW));
+
+                        // Simular word-wrap de ^FB para encontrar posición en la última línea
+                        int lineNum = 0;
+                        int pos = 0;
+                        int lastLineChars = 0;
+                        while (pos < rendered.length()) {
+                            int remaining = rendered.length() - pos;
+                            if (remaining <= charsPerLine) {
+                                lastLineChars = remaining;
+                                break;
+                            }
+                            int maxEnd = pos + charsPerLine;
+                            int lastSpace = rendered.lastIndexOf(' ', maxEnd);
+                            if (lastSpace > pos) {
+                                pos = lastSpace + 1;
+                            } else {
+                                pos = maxEnd;
+                            }
+                            lineNum++;
+                        }
+
+                        // Badge inline después del texto visible
+                        String qtyTextTemp = qty + " u.";
+                        int boxWTemp = qtyTextTemp.length() * 13 + 8;
+                        double posCharW = fontW * 0.50;
+                        int qtyX = textX + (int) (lastLineChars * posCharW) + 16;
+
+                        // Si no cabe en la línea, mover a la siguiente alineado a la izquierda
+                        if (qtyX + boxWTemp > textX + fbWidth) {
+                            qtyX = textX;
+                            lineNum++;
+                        }
+                        int qtyY = textY + lineNum * fontH;
+
+                        mods.add(new int[]{qty, qtyX, qtyY, fontH, removeStart, removeEnd, fsEnd + 3});
+                    }
+                }
+            }
+        }
+
+        for (int[] mod : mods) {
+            int qty = mod[0], qtyX = mod[1], qtyY = mod[2];
+            int fontH = mod[3];
+            int removeStart = mod[4], removeEnd = mod[5];
+            int insertPos = mod[6];
+
+            // Superponer "N u." resaltado (video inverso) sobre el texto original
+            String qtyText = qty + " u.";
+            int fontSize = Math.min(fontH, 22);
+            int boxW = qtyText.length() * 13 + 8;
+            int boxH = fontSize + 4;
+            String boldField = "\n^FO" + qtyX + "," + (qtyY - 1)
+                    + "^GB" + boxW + "," + boxH + "," + boxH + "^FS"
+                    + "\n^FO" + qtyX + "," + (qtyY + 1)
+                    + "^A0N," + fontSize + "," + fontSize + "^FB" + boxW + ",1,0,C^FR^FD" + qtyText + "^FS";
+            // Insertar el campo resaltado después del producto y borrar " | N u." del texto original
+            ediciones.insertarDespues(insertPos, boldField);
+            ediciones.borrar(removeStart, removeEnd);
+        }
+    }
+
+    /**
+     * Agrega " | COD.EXT.: ..." al final de cada campo de producto de un carro. El campo tiene que
+     * ser texto plano —sin ningún '^' adentro— y traer un "SKU:" seguido del número.
+     */
+    private static void injectCarrosExtCodes(ZplDocument doc, Ediciones ediciones, Map<String, String> skuToExtCode) {
+        String rawZpl = doc.raw();
+        for (int campo = 0; campo < doc.campoCount(); campo++) {
+            int desde = doc.inicioContenido(campo);
+            int hasta = doc.finContenido(campo);
+            if (rawZpl.lastIndexOf('^', hasta - 1) >= desde) continue;
+            Matcher m = CARROS_SKU_NUMBER.matcher(rawZpl).region(desde, hasta);
+            if (!m.find()) continue;
+            String extCode = skuToExtCode.getOrDefault(m.group(1), "");
+            ediciones.insertarAntes(hasta, " | COD.EXT.: " + (extCode.isEmpty() ? "-" : extCode));
+        }
+    }
+
+}
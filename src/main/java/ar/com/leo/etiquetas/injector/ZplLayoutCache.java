@@ -0,0 +1,108 @@
+package ar.com.leo.etiquetas.injector;
+
+import ar.com.leo.AppLogger;
+import ar.com.leo.etiquetas.parser.ZplDocument;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lo que ya se leyó de cada formato de etiqueta de ML: el ^FO, la letra y el ^FB de los campos
+ * debajo de los que van la ZONA y el COD.EXT. Todas las etiquetas de un mismo formato los tienen
+ * iguales, así que se leen con las expresiones regulares una vez y las demás los toman de acá.
+ *
+ * El formato se busca por la {@link ZplDocument#huella() huella} de la etiqueta y se confirma con
+ * su {@link ZplDocument#esqueleto() esqueleto}, que se guarda con el formato y se compara en cada
+ * etiqueta: la huella es un hash de 64 bits y dos formatos distintos pueden dar la misma. Si pasa,
+ * la etiqueta se mide de cero como si no hubiera nada guardado. Qué campo es el ancla sí
+ * depende de lo que dicen los campos, así que se sigue buscando en cada etiqueta; lo guardado se
+ * usa solo si el ancla cayó en el mismo campo y con el mismo ^FO. Las etiquetas con un '^' en el
+ * contenido de algún campo no se guardan: ahí la huella no alcanza.
+ *
+ * También cuenta los formatos que va viendo y avisa en el log cada vez que aparece uno nuevo: si
+ * ML cambia el formato de sus etiquetas, se nota ahí y en {@link #fallos()}.
+ *
+ * La usan varios hilos a la vez durante la inyección.
+ */
+public final class ZplLayoutCache {
+
+    /** Los campos ancla que se guardan por formato. */
+    static final int ANCLAS = 2;
+    /** Más formatos que esto ya no es ML cambiando de formato sino etiquetas armadas a mano. */
+    static final int MAX_FORMATOS = 256;
+
+    /** Lo leído del ^FO del campo {@code campo}, que es el {@code fo}-ésimo ^FO de la etiqueta. */
+    record Medida(int campo, int fo, int x, int y, int fontH, int fbLines) {
+    }
+
+    /** Las medidas de un formato, una por ancla. */
+    static final class Formato {
+        private final String esqueleto;
+        private final AtomicReferenceArray<Medida> medidas = new AtomicReferenceArray<>(ANCLAS);
+
+        private Formato(String esqueleto) {
+            this.esqueleto = esqueleto;
+        }
+    }
+
+    private final Map<Long, Formato> formatos = new ConcurrentHashMap<>();
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+
+    /** El formato de la etiqueta, o null si no se puede guardar. */
+    Formato formato(ZplDocument doc) {
+        if (doc.comandosEnContenido()) return null;
+        Formato formato = formatos.get(doc.huella());
+        if (formato != null) return mismoFormato(doc, formato);
+        if (formatos.size() >= MAX_FORMATOS) return null;
+        Formato nuevo = new Formato(doc.esqueleto());
+        formato = formatos.putIfAbsent(doc.huella(), nuevo);
+        if (formato != null) return mismoFormato(doc, formato);
+        AppLogger.info("ZPL - Formato de etiqueta nuevo (" + String.format("%016x", doc.huella()) + "), "
+                + formatos.size() + " conocidos.");
+        return nuevo;
+    }
+
+    /** El formato guardado con la huella de la etiqueta, si de verdad es el suyo; si no, null. */
+    private static Formato mismoFormato(ZplDocument doc, Formato formato) {
+        return doc.tieneEsqueleto(formato.esqueleto) ? formato : null;
+    }
+
+    /** La medida guardada del ancla, si es del mismo campo y el mismo ^FO; si no, null. */
+    Medida medida(Formato formato, int ancla, int campo, int fo) {
+        Medida medida = formato != null ? formato.medidas.get(ancla) : null;
+        if (medida != null && medida.campo() == campo && medida.fo() == fo) {
+            aciertos.increment();
+            return medida;
+        }
+        fallos.increment();
+        return null;
+    }
+
+    void guardar(Formato formato, int ancla, Medida medida) {
+        if (formato != null) formato.medidas.set(ancla, medida);
+    }
+
+    /** Cuántos formatos distintos se vieron. */
+    public int formatos() {
+        return formatos.size();
+    }
+
+    /** Cuántas veces una medida salió de lo guardado. */
+    public long aciertos() {
+        return aciertos.sum();
+    }
+
+    /** Cuántas veces hubo que leer la medida de la etiqueta. */
+    public long fallos() {
+        return fallos.sum();
+    }
+
+    public void clear() {
+        formatos.clear();
+        aciertos.reset();
+        fallos.reset();
+    }
+}
@@ -0,0 +1,167 @@
+package ar.com.leo.etiquetas.model;
+
+import java.util.Arrays;
+
+/**
+ * Las posiciones de una etiqueta ZPL: dónde está cada ^LH, cada ^FO y cada campo ^FD...^FS, y la
+ * huella de su formato. Es lo que el {@code ZplDocument} del parser consulta en vez de recorrer el
+ * texto.
+ *
+ * Se arma una sola vez, al tokenizar, y viaja con la {@link ZplLabel}: el emparejado con el envío y
+ * la inyección de encabezados lo reusan en lugar de volver a recorrer el texto cada uno. Solo
+ * guarda números, así que no retiene ningún String de la etiqueta.
+ *
+ * Las posiciones son de caracteres del texto con el que se armó, que es el mismo que devuelve
+ * {@link ZplLabel#rawZpl()}. Los campos se cortan igual que en el tokenizer: del ^FD al primer ^FS,
+ * aunque aparezca otro ^FD en el medio.
+ *
+ * La huella es un hash de todo el texto menos el contenido de los campos. Dos etiquetas con la
+ * misma huella tienen, casi seguro, los mismos comandos con los mismos números, y solo cambia lo
+ * que dicen.
+ */
+public final class ZplIndice {
+
+    private final int inicio;
+    private final int[] lh;
+    private final int[] fo;
+    /** Dónde empieza el contenido de cada campo, justo después del ^FD. */
+    private final int[] fd;
+    /** Dónde está el ^FS que cierra cada campo. */
+    private final int[] fs;
+    private final long huella;
+    private final boolean comandosEnContenido;
+
+    private ZplIndice(int inicio, int[] lh, int[] fo, int[] fd, int[] fs, long huella, boolean comandosEnContenido) {
+        this.inicio = inicio;
+        this.lh = lh;
+        this.fo = fo;
+        this.fd = fd;
+        this.fs = fs;
+        this.huella = huella;
+        this.comandosEnContenido = comandosEnContenido;
+    }
+
+    /** Recorre el texto una vez; sirve tanto el String de la etiqueta como el bloque del tokenizer. */
+    public static ZplIndice de(CharSequence texto) {
+        Posiciones lh = new Posiciones();
+        Posiciones fo = new Posiciones();
+        Posiciones fd = new Posiciones();
+        Posiciones fs = new Posiciones();
+        int inicio = -1;
+        int campoAbierto = -1;
+        long huella = 1;
+        boolean comandosEnContenido = false;
+        int n = texto.length() - 2;
+        for (int i = 0; i < n; i++) {
+            char c = texto.charAt(i);
+            if (campoAbierto < 0) huella = 31 * huella + c;
+            if (c != '^') continue;
+            char c1 = texto.charAt(i + 1);
+            char c2 = texto.charAt(i + 2);
+            if (campoAbierto >= 0 && (c1 != 'F' || c2 != 'S')) comandosEnContenido = true;
+            if (c1 == 'F') {
+                if (c2 == 'D' && campoAbierto < 0) {
+                    campoAbierto = i + 3;
+                } else if (c2 == 'S' && campoAbierto >= 0) {
+                    fd.agregar(campoAbierto);
+                    fs.agregar(i);
+                    campoAbierto = -1;
+                } else if (c2 == 'O' && campoAbierto < 0) {
+                    fo.agregar(i);
+                }
+            } else if (campoAbierto < 0) {
+                if (c1 == 'L' && c2 == 'H') {
+                    lh.agregar(i);
+                } else if (c1 == 'X' && c2 == 'A' && inicio < 0) {
+                    inicio = i + 3;
+                }
+            }
+        }
+        for (int i = Math.max(n, 0); i < texto.length(); i++) {
+            if (campoAbierto < 0) huella = 31 * huella + texto.charAt(i);
+        }
+        return new ZplIndice(inicio, lh.toArray(), fo.toArray(), fd.toArray(), fs.toArray(), huella,
+                comandosEnContenido);
+    }
+
+    /** Lo que sigue al primer ^XA, o -1 si no lo tiene. */
+    public int inicio() {
+        return inicio;
+    }
+
+    public int lhCount() {
+        return lh.length;
+    }
+
+    /** Dónde está el i-ésimo ^LH. */
+    public int lh(int i) {
+        return lh[i];
+    }
+
+    /** El último ^FO que empieza antes de {@code posicion}, o -1. */
+    public int foAntes(int posicion) {
+        int i = Arrays.binarySearch(fo, posicion);
+        int anterior = i >= 0 ? i - 1 : -i - 2;
+        return anterior >= 0 ? fo[anterior] : -1;
+    }
+
+    /** Qué número de ^FO es el que está en {@code posicion}, o negativo si ahí no hay uno. */
+    public int indiceFo(int posicion) {
+        return Arrays.binarySearch(fo, posicion);
+    }
+
+    public int foCount() {
+        return fo.length;
+    }
+
+    public int fo(int i) {
+        return fo[i];
+    }
+
+    public int campoCount() {
+        return fd.length;
+    }
+
+    public int inicioContenido(int campo) {
+        return fd[campo];
+    }
+
+    /** Dónde está el ^FS que cierra el campo. */
+    public int finContenido(int campo) {
+        return fs[campo];
+    }
+
+    /** El primer campo cuyo contenido empieza en {@code posicion} o después, o campoCount(). */
+    public int primerCampoDesde(int posicion) {
+        int i = Arrays.binarySearch(fd, posicion);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    /** El hash del texto sin el contenido de los campos. */
+    public long huella() {
+        return huella;
+    }
+
+    /**
+     * Si algún campo tiene un '^' en el contenido. Esos contenidos se pueden confundir con
+     * comandos, así que la huella no alcanza para decir que dos etiquetas tienen el mismo formato.
+     */
+    public boolean comandosEnContenido() {
+        return comandosEnContenido;
+    }
+
+    /** Un int[] que crece, para no encajonar las posiciones. */
+    private static final class Posiciones {
+        private int[] valores = new int[16];
+        private int cantidad;
+
+        void agregar(int valor) {
+            if (cantidad == valores.length) valores = Arrays.copyOf(valores, cantidad * 2);
+            valores[cantidad++] = valor;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(valores, cantidad);
+        }
+    }
+}
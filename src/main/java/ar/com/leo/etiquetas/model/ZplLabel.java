@@ -1,6 +1,74 @@
 package ar.com.leo.etiquetas.model;
 
-public record ZplLabel(String rawZpl, String sku, String productDescription, String details, int quantity, boolean turbo, String orderIds) {
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Una etiqueta y lo que se sacó de ella.
+ *
+ * El ZPL no se guarda como String: es un tramo del {@link ZplLote} de su lote, y
+ * {@link #rawZpl()} lo arma cada vez que se pide. Por eso conviene pedirlo una sola vez por
+ * etapa y no guardarlo. Los datos de la etiqueta sí quedan como campos comunes.
+ *
+ * Los SKU de un carro vienen en un solo String, uno por línea. Se separan una vez al crear la
+ * etiqueta ({@link #skus()}) para que el sort, las estadísticas y el orden de los carros no los
+ * vuelvan a partir cada vez que los miran.
+ *
+ * El {@link ZplIndice} también viaja con la etiqueta: el tokenizer lo arma al cerrar el bloque y
+ * las etapas que buscan campos lo reusan. Una etiqueta armada de otra forma lo arma la primera
+ * vez que se pide.
+ */
+public final class ZplLabel {
+
+    private final ZplLote lote;
+    private final int inicio;
+    private final int largo;
+    private final String sku;
+    private final String productDescription;
+    private final String details;
+    private final int quantity;
+    private final boolean turbo;
+    private final String orderIds;
+    private final List<String> skus;
+    /**
+     * Null hasta que alguien lo pide, si no vino del tokenizer. Dos hilos que lo pidan a la vez
+     * arman el mismo; como es inmutable, cualquiera de los dos sirve.
+     */
+    private ZplIndice indice;
+
+    public ZplLabel(ZplLote lote, int inicio, int largo, String sku, String productDescription, String details,
+                    int quantity, boolean turbo, String orderIds) {
+        this(lote, inicio, largo, null, sku, productDescription, details, quantity, turbo, orderIds);
+    }
+
+    /** Con el índice que el tokenizer ya armó sobre este mismo texto. */
+    public ZplLabel(ZplLote lote, int inicio, int largo, ZplIndice indice, String sku, String productDescription,
+                    String details, int quantity, boolean turbo, String orderIds) {
+        this(lote, inicio, largo, indice, sku, distinctSkus(sku), productDescription, details, quantity, turbo,
+                orderIds);
+    }
+
+    private ZplLabel(ZplLote lote, int inicio, int largo, ZplIndice indice, String sku, List<String> skus,
+                     String productDescription, String details, int quantity, boolean turbo, String orderIds) {
+        this.lote = lote;
+        this.inicio = inicio;
+        this.largo = largo;
+        this.indice = indice;
+        this.sku = sku;
+        this.productDescription = productDescription;
+        this.details = details;
+        this.quantity = quantity;
+        this.turbo = turbo;
+        this.orderIds = orderIds;
+        this.skus = skus;
+    }
+
+    /** Una etiqueta suelta, con un lote propio del tamaño justo. */
+    public ZplLabel(String rawZpl, String sku, String productDescription, String details, int quantity, boolean turbo, String orderIds) {
+        this(suelta(rawZpl), sku, productDescription, details, quantity, turbo, orderIds);
+    }
 
     public ZplLabel(String rawZpl, String sku, String productDescription, String details) {
         this(rawZpl, sku, productDescription, details, 1, false, "");
@@ -13,4 +81,134 @@ public record ZplLabel(String rawZpl, String sku, String productDescription, Str
     public ZplLabel(String rawZpl, String sku, String productDescription, String details, int quantity, boolean turbo) {
         this(rawZpl, sku, productDescription, details, quantity, turbo, "");
     }
+
+    private ZplLabel(ZplLote suelta, String sku, String productDescription, String details, int quantity,
+                     boolean turbo, String orderIds) {
+        this(suelta, 0, suelta.tamanio(), sku, productDescription, details, quantity, turbo, orderIds);
+    }
+
+    private static ZplLote suelta(String rawZpl) {
+        ZplLote lote = new ZplLote(rawZpl.length());
+        lote.agregar(rawZpl);
+        return lote;
+    }
+
+    public String rawZpl() {
+        return lote.texto(inicio, largo);
+    }
+
+    /** Las posiciones de los comandos y campos de {@link #rawZpl()}. */
+    public ZplIndice indice() {
+        ZplIndice armado = indice;
+        if (armado == null) {
+            armado = ZplIndice.de(rawZpl());
+            indice = armado;
+        }
+        return armado;
+    }
+
+    /** Cuántos bytes ocupa el ZPL en UTF-8. */
+    public int largoZpl() {
+        return largo;
+    }
+
+    /**
+     * Copia en {@code destino} lo que entre del ZPL a partir del byte {@code desde}, sin armar el
+     * String; devuelve cuántos bytes copió. Es para mandar el lote a la impresora de a tramos.
+     */
+    public int copiarZpl(int desde, ByteBuffer destino) {
+        return lote.copiar(inicio + desde, largo - desde, destino);
+    }
+
+    public boolean terminaEnSaltoDeLinea() {
+        return largo > 0 && lote.byteEn(inicio + largo - 1) == '\n';
+    }
+
+    /** La misma etiqueta con otros datos, sin copiar el ZPL ni volver a indexarlo. */
+    public ZplLabel conDatos(String sku, String productDescription, String details, int quantity, boolean turbo,
+                             String orderIds) {
+        return new ZplLabel(lote, inicio, largo, indice, sku, productDescription, details, quantity, turbo, orderIds);
+    }
+
+    /** Los mismos datos con otro ZPL, ya escrito en un lote; su índice se arma si alguien lo pide. */
+    public ZplLabel conZpl(ZplLote otroLote, int otroInicio, int otroLargo) {
+        return new ZplLabel(otroLote, otroInicio, otroLargo, null, sku, skus, productDescription, details, quantity,
+                turbo, orderIds);
+    }
+
+    /**
+     * Los SKU distintos de un texto con uno por línea, sin espacios ni líneas vacías y en el orden
+     * en que aparecen. Un texto null o en blanco no tiene ninguno.
+     */
+    public static List<String> distinctSkus(String skuMultiline) {
+        if (skuMultiline == null || skuMultiline.isBlank()) return List.of();
+        List<String> distintos = new ArrayList<>(1);
+        int desde = 0;
+        while (desde <= skuMultiline.length()) {
+            int fin = skuMultiline.indexOf('\n', desde);
+            if (fin < 0) fin = skuMultiline.length();
+            String sku = skuMultiline.substring(desde, fin).trim();
+            if (!sku.isEmpty() && !distintos.contains(sku)) distintos.add(sku);
+            desde = fin + 1;
+        }
+        return List.copyOf(distintos);
+    }
+
+    public String sku() {
+        return sku;
+    }
+
+    public String productDescription() {
+        return productDescription;
+    }
+
+    public String details() {
+        return details;
+    }
+
+    public int quantity() {
+        return quantity;
+    }
+
+    public boolean turbo() {
+        return turbo;
+    }
+
+    public String orderIds() {
+        return orderIds;
+    }
+
+    /** Los SKU distintos de {@link #sku()}; más de uno es un carro. */
+    public List<String> skus() {
+        return skus;
+    }
+
+    public int distinctSkuCount() {
+        return skus.size();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ZplLabel that)) return false;
+        return quantity == that.quantity
+                && turbo == that.turbo
+                && Objects.equals(sku, that.sku)
+                && Objects.equals(productDescription, that.productDescription)
+                && Objects.equals(details, that.details)
+                && Objects.equals(orderIds, that.orderIds)
+                && lote.mismoTexto(inicio, largo, that.lote, that.inicio, that.largo);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lote.hash(inicio, largo), sku, productDescription, details, quantity, turbo, orderIds);
+    }
+
+    @Override
+    public String toString() {
+        return "ZplLabel[rawZpl=" + rawZpl() + ", sku=" + sku + ", productDescription=" + productDescription
+                + ", details=" + details + ", quantity=" + quantity + ", turbo=" + turbo
+                + ", orderIds=" + orderIds + "]";
+    }
 }
@@ -0,0 +1,117 @@
+package ar.com.leo.etiquetas.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * El ZPL de todo un lote de etiquetas, una detrás de la otra, en un solo arreglo de bytes UTF-8.
+ * Cada {@link ZplLabel} guarda solo dónde empieza la suya y cuánto mide, y el texto se arma recién
+ * cuando alguien lo pide: al inyectar los encabezados, al imprimir o al guardar.
+ *
+ * Con miles de etiquetas son miles de Strings menos —cada uno con su arreglo aparte— y el
+ * recolector tiene que mover un par de arreglos grandes en lugar de todos ellos, que es lo que
+ * congelaba la ventana mientras se procesaba un lote grande.
+ *
+ * Lo llena un solo hilo y recién después se reparten las etiquetas: no está pensado para que se
+ * agregue texto mientras otro lee.
+ */
+public final class ZplLote {
+
+    /** El arreglo más grande que se pide: algunas JVM reservan unos bytes de encabezado. */
+    private static final int MAX_BYTES = Integer.MAX_VALUE - 8;
+
+    private byte[] bytes;
+    private int tamanio;
+
+    public ZplLote() {
+        this(64 * 1024);
+    }
+
+    public ZplLote(int capacidad) {
+        this.bytes = new byte[Math.max(capacidad, 16)];
+    }
+
+    public int tamanio() {
+        return tamanio;
+    }
+
+    /** Agrega el texto al final y devuelve dónde empieza. */
+    public int agregar(CharSequence texto) {
+        return agregar(texto, 0, texto.length());
+    }
+
+    /** Agrega {@code texto[desde, hasta)} al final y devuelve dónde empieza. */
+    public int agregar(CharSequence texto, int desde, int hasta) {
+        int inicio = tamanio;
+        asegurar(hasta - desde);
+        for (int i = desde; i < hasta; i++) {
+            char c = texto.charAt(i);
+            if (c < 0x80) {
+                bytes[tamanio++] = (byte) c;
+                continue;
+            }
+            // Lo ASCII entra justo; el resto puede ocupar hasta tres bytes por carácter.
+            asegurar(hasta - i + 3);
+            if (c < 0x800) {
+                bytes[tamanio++] = (byte) (0xC0 | c >> 6);
+                bytes[tamanio++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < hasta
+                    && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, texto.charAt(++i));
+                bytes[tamanio++] = (byte) (0xF0 | cp >> 18);
+                bytes[tamanio++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                bytes[tamanio++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                bytes[tamanio++] = (byte) (0x80 | cp & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                // Una mitad suelta no se puede escribir en UTF-8: sale '?', como con getBytes.
+                bytes[tamanio++] = '?';
+            } else {
+                bytes[tamanio++] = (byte) (0xE0 | c >> 12);
+                bytes[tamanio++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[tamanio++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return inicio;
+    }
+
+    String texto(int inicio, int largo) {
+        return new String(bytes, inicio, largo, StandardCharsets.UTF_8);
+    }
+
+    /** Copia en {@code destino} lo que entre de {@code [inicio, inicio + largo)}; devuelve cuántos bytes copió. */
+    int copiar(int inicio, int largo, ByteBuffer destino) {
+        int cuantos = Math.min(largo, destino.remaining());
+        destino.put(bytes, inicio, cuantos);
+        return cuantos;
+    }
+
+    byte byteEn(int posicion) {
+        return bytes[posicion];
+    }
+
+    boolean mismoTexto(int inicio, int largo, ZplLote otro, int otroInicio, int otroLargo) {
+        return Arrays.equals(bytes, inicio, inicio + largo, otro.bytes, otroInicio, otroInicio + otroLargo);
+    }
+
+    int hash(int inicio, int largo) {
+        int h = 1;
+        for (int i = inicio, fin = inicio + largo; i < fin; i++) h = 31 * h + bytes[i];
+        return h;
+    }
+
+    /**
+     * Hace lugar para {@code cuantos} bytes más. Un arreglo no pasa de {@link #MAX_BYTES}: si lo
+     * que falta no entra ahí se corta con un error, en vez de crecer hasta el tope y escribir
+     * afuera.
+     */
+    private void asegurar(int cuantos) {
+        long necesario = (long) tamanio + cuantos;
+        if (necesario <= bytes.length) return;
+        if (necesario > MAX_BYTES) {
+            throw new OutOfMemoryError("El lote no entra en un arreglo: hacen falta " + necesario
+                    + " bytes y el máximo es " + MAX_BYTES);
+        }
+        bytes = Arrays.copyOf(bytes, (int) Math.min(Math.max((long) bytes.length * 2, necesario), MAX_BYTES));
+    }
+}
@@ -0,0 +1,103 @@
+package ar.com.leo.etiquetas.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Los combos del Excel, indexados una vez: por código de combo y por código de componente. Cada
+ * combo figura también bajo su SKU normalizado, que es como llega desde las etiquetas.
+ *
+ * No se puede modificar, así que se comparte entre lotes y entre hilos.
+ */
+public final class ComboCatalog {
+
+    public static final ComboCatalog VACIO = of(Map.of());
+
+    private final Map<String, ComboProduct> porCodigo;
+    private final Map<String, List<ComboProduct>> porComponente;
+
+    private ComboCatalog(Map<String, ComboProduct> porCodigo, Map<String, List<ComboProduct>> porComponente) {
+        this.porCodigo = porCodigo;
+        this.porComponente = porComponente;
+    }
+
+    /** @param combos lo que devuelve {@link ComboExcelReader#read}, por código de combo */
+    public static ComboCatalog of(Map<String, ComboProduct> combos) {
+        Map<String, ComboProduct> porCodigo = new LinkedHashMap<>();
+        for (var entry : combos.entrySet()) {
+            ComboProduct combo = entry.getValue();
+            porCodigo.put(entry.getKey(), new ComboProduct(combo.codigoCompuesto(),
+                    combo.productoCompuesto(), List.copyOf(combo.componentes())));
+        }
+        Map<String, List<ComboProduct>> porComponente = new LinkedHashMap<>();
+        for (var entry : List.copyOf(porCodigo.entrySet())) {
+            ComboProduct combo = entry.getValue();
+            String normalizado = normalizado(entry.getKey());
+            if (normalizado != null) porCodigo.putIfAbsent(normalizado, combo);
+            for (ComboComponent componente : combo.componentes()) {
+                agregar(porComponente, componente.codigoComponente(), combo);
+                String componenteNormalizado = normalizado(componente.codigoComponente());
+                if (componenteNormalizado != null && !componenteNormalizado.equals(componente.codigoComponente())) {
+                    agregar(porComponente, componenteNormalizado, combo);
+                }
+            }
+        }
+        porComponente.replaceAll((codigo, lista) -> List.copyOf(lista));
+        return new ComboCatalog(Collections.unmodifiableMap(porCodigo), Collections.unmodifiableMap(porComponente));
+    }
+
+    public boolean isEmpty() {
+        return porCodigo.isEmpty();
+    }
+
+    /** Cada combo por su código y por su SKU normalizado. */
+    public Map<String, ComboProduct> porCodigo() {
+        return porCodigo;
+    }
+
+    /** El combo de ese SKU, tal cual o normalizado; null si no es un combo. */
+    public ComboProduct combo(String sku) {
+        ComboProduct combo = porCodigo.get(sku);
+        if (combo != null) return combo;
+        String normalizado = normalizado(sku);
+        return normalizado != null ? porCodigo.get(normalizado) : null;
+    }
+
+    /** Los combos que llevan ese componente, tal cual o normalizado. */
+    public List<ComboProduct> combosConComponente(String componente) {
+        List<ComboProduct> combos = porComponente.get(componente);
+        if (combos != null) return combos;
+        String normalizado = normalizado(componente);
+        return normalizado != null ? porComponente.getOrDefault(normalizado, List.of()) : List.of();
+    }
+
+    /** Los combos cuyo código, tal cual o normalizado, está entre los SKU; ordenados por código. */
+    public List<ComboProduct> combosDe(Set<String> skus) {
+        List<ComboProduct> encontrados = new ArrayList<>();
+        Set<String> vistos = new HashSet<>();
+        for (var entry : porCodigo.entrySet()) {
+            if (skus.contains(entry.getKey()) && vistos.add(entry.getValue().codigoCompuesto())) {
+                encontrados.add(entry.getValue());
+            }
+        }
+        encontrados.sort(Comparator.comparing(ComboProduct::codigoCompuesto));
+        return encontrados;
+    }
+
+    private static void agregar(Map<String, List<ComboProduct>> porComponente, String codigo, ComboProduct combo) {
+        List<ComboProduct> combos = porComponente.computeIfAbsent(codigo, k -> new ArrayList<>());
+        if (!combos.contains(combo)) combos.add(combo);
+    }
+
+    /** El SKU normalizado, o null si no tiene uno válido. */
+    private static String normalizado(String sku) {
+        String normalizado = ZplParser.normalizeSku(sku);
+        return normalizado != null && !normalizado.startsWith("SKU INVALIDO") ? normalizado : null;
+    }
+}
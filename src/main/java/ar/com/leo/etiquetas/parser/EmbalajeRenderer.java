@@ -4,6 +4,8 @@ import ar.com.leo.etiquetas.model.DatosEmbalaje;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Arma las líneas de embalaje que van en la etiqueta a partir de lo cargado en el Excel, y su
@@ -124,9 +126,45 @@ public final class EmbalajeRenderer {
      */
     private static final int SUBIDA_REFERENCIA = Y_INICIAL - Y_TECHO;
 
+    /** Las líneas de embalaje de una etiqueta y su fragmento ZPL. */
+    public record Bloque(List<String> lineas, String zpl) {
+    }
+
+    /**
+     * Bloques ya armados. Las líneas dependen solo de los datos y de si la etiqueta es de más de una
+     * unidad, y un lote trae cientos de etiquetas del mismo SKU: se arman una vez por SKU y tipo de
+     * etiqueta.
+     *
+     * No hay uno global. Lo tiene quien tiene las medidas de donde salen los datos —el
+     * {@code ZplHeaderInjector}—, así que dura lo que ellas y no hace falta tope ni limpieza: con
+     * el Excel releído viene otro.
+     */
+    public static final class Bloques {
+
+        private final Map<ClaveBloque, Bloque> armados = new ConcurrentHashMap<>();
+
+        /** El {@link EmbalajeRenderer#bloque bloque} de la etiqueta, armado la primera vez. */
+        public Bloque bloque(DatosEmbalaje datos, int cantidad) {
+            return armados.computeIfAbsent(new ClaveBloque(datos, cantidad > 1),
+                    clave -> EmbalajeRenderer.bloque(datos, cantidad));
+        }
+    }
+
+    private record ClaveBloque(DatosEmbalaje datos, boolean referencia) {
+    }
+
     private EmbalajeRenderer() {
     }
 
+    /**
+     * {@link #lineas} y {@link #campoZpl} juntos. Las líneas que devuelve no se pueden modificar;
+     * para armarlo una sola vez por SKU está {@link Bloques}.
+     */
+    public static Bloque bloque(DatosEmbalaje datos, int cantidad) {
+        List<String> lineas = lineas(datos, cantidad);
+        return new Bloque(List.copyOf(lineas), campoZpl(lineas));
+    }
+
     /**
      * Líneas a imprimir para un SKU en una etiqueta de {@code cantidad} unidades.
      *
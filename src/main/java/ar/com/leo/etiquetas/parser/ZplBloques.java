@@ -0,0 +1,106 @@
+package ar.com.leo.etiquetas.parser;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+
+/**
+ * Busca los límites ^XA...^XZ directamente sobre los bytes del archivo, sin decodificarlo.
+ *
+ * Se puede porque los comandos ZPL son ASCII y en UTF-8 ningún byte de un carácter multibyte cae
+ * por debajo de 0x80: un '^' en los bytes es siempre un '^' en el texto.
+ *
+ * Los límites son los mismos que arma el {@link ZplTokenizer}: el bloque va del primer ^XA al ^XZ
+ * siguiente, aunque en el medio haya otro ^XA.
+ *
+ * Si la JVM arrancó con {@code --add-modules jdk.incubator.vector} la búsqueda la hace
+ * {@link ZplBloquesVectoriales}, de a muchos bytes por vez; si no, byte por byte. Esta clase no la
+ * nombra en el código, la busca por nombre: así es la única que se compila con el módulo en
+ * incubación (ver el pom) y el resto del build no carga con su aviso.
+ */
+final class ZplBloques {
+
+    private static final byte CARET = '^';
+
+    /** {@code ZplBloquesVectoriales.comando}, o null si la JVM no tiene el módulo. */
+    private static final MethodHandle COMANDO_VECTORIAL = buscarComandoVectorial();
+
+    static final boolean VECTORIAL = COMANDO_VECTORIAL != null;
+
+    private final ByteBuffer bytes;
+    private final int hasta;
+    /**
+     * Todo el buffer como segmento, para la búsqueda vectorial: se arma una vez por búsqueda y
+     * no en cada comando. Empieza en 0 para que las posiciones sean las mismas que las del buffer.
+     */
+    private final MemorySegment memoria;
+
+    /** Una búsqueda sobre {@code bytes}, desde 0 hasta su límite. */
+    ZplBloques(ByteBuffer bytes) {
+        this.bytes = bytes;
+        this.hasta = bytes.limit();
+        this.memoria = VECTORIAL ? MemorySegment.ofBuffer(bytes.duplicate().position(0)) : null;
+    }
+
+    /** Dónde empieza el próximo ^XA a partir de {@code desde}, o -1. */
+    int inicio(int desde) {
+        return comando(desde, (byte) 'X', (byte) 'A');
+    }
+
+    /**
+     * Dónde termina el bloque que empieza en {@code inicio}: la posición siguiente a su ^XZ, o -1
+     * si el archivo se corta antes.
+     */
+    int fin(int inicio) {
+        int xz = comando(inicio + 3, (byte) 'X', (byte) 'Z');
+        return xz < 0 ? -1 : xz + 3;
+    }
+
+    private int comando(int desde, byte letra1, byte letra2) {
+        if (VECTORIAL) return comandoVectorial(memoria, bytes, desde, hasta, letra1, letra2);
+        return comandoEscalar(bytes, desde, hasta, letra1, letra2);
+    }
+
+    /**
+     * Lo mismo que {@link #comandoEscalar}, con la Vector API. Solo se puede llamar si
+     * {@link #VECTORIAL}. El handle es una constante, así que el JIT lo resuelve como una llamada
+     * directa.
+     */
+    static int comandoVectorial(MemorySegment memoria, ByteBuffer bytes, int desde, int hasta, byte letra1,
+                                byte letra2) {
+        try {
+            return (int) COMANDO_VECTORIAL.invokeExact(memoria, bytes, desde, hasta, letra1, letra2);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Dónde está el próximo {@code ^<letra1><letra2>} entre {@code desde} y {@code hasta}, o -1. */
+    static int comandoEscalar(ByteBuffer bytes, int desde, int hasta, byte letra1, byte letra2) {
+        for (int i = desde; i + 2 < hasta; i++) {
+            if (bytes.get(i) == CARET && bytes.get(i + 1) == letra1 && bytes.get(i + 2) == letra2) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sin el módulo la clase vectorial ni se carga. Con el módulo y sin la clase —un jar armado
+     * sin la segunda compilación del pom— se busca byte por byte, igual que sin el módulo.
+     */
+    private static MethodHandle buscarComandoVectorial() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
+        try {
+            Class<?> clase = Class.forName(ZplBloques.class.getPackageName() + ".ZplBloquesVectoriales");
+            return MethodHandles.lookup().findStatic(clase, "comando", MethodType.methodType(int.class,
+                    MemorySegment.class, ByteBuffer.class, int.class, int.class, byte.class, byte.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
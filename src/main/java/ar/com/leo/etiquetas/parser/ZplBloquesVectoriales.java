@@ -0,0 +1,52 @@
+package ar.com.leo.etiquetas.parser;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * La búsqueda de {@link ZplBloques} con la Vector API: compara de a {@code SPECIES.length()} bytes
+ * (32 o 64, según el procesador) contra '^', contra la primera letra un byte más adelante y contra
+ * la segunda dos bytes más adelante, y se queda con el primer lugar donde coinciden las tres.
+ *
+ * Buscar el comando entero y no solo el '^' es lo que la hace rápida: en un ZPL hay un '^' cada
+ * pocos bytes, pero un ^XA o un ^XZ recién cada cientos, así que casi todas las vueltas no
+ * encuentran nada y pasan de largo. La cola que no llena un vector la termina la búsqueda común.
+ *
+ * Solo se usa si el módulo {@code jdk.incubator.vector} está cargado; ver {@link ZplBloques#VECTORIAL}.
+ * Es la única clase que se compila con ese módulo, en una ejecución aparte del compilador, y nadie
+ * la nombra en el código: {@link ZplBloques} la busca por nombre.
+ */
+final class ZplBloquesVectoriales {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final byte CARET = '^';
+
+    private ZplBloquesVectoriales() {
+    }
+
+    /**
+     * @param memoria {@code bytes} entero como segmento, empezando en 0; lo arma una vez por
+     *                búsqueda el que llama, no cada comando
+     */
+    static int comando(MemorySegment memoria, ByteBuffer bytes, int desde, int hasta, byte letra1, byte letra2) {
+        int largo = SPECIES.length();
+        int i = desde;
+        // La tercera carga llega hasta i + 2 + largo - 1, que tiene que quedar antes de hasta.
+        for (; i + largo + 2 <= hasta; i += largo) {
+            VectorMask<Byte> coinciden = cargar(memoria, i).eq(CARET)
+                    .and(cargar(memoria, i + 1).eq(letra1))
+                    .and(cargar(memoria, i + 2).eq(letra2));
+            if (coinciden.anyTrue()) return i + coinciden.firstTrue();
+        }
+        return ZplBloques.comandoEscalar(bytes, i, hasta, letra1, letra2);
+    }
+
+    private static ByteVector cargar(MemorySegment memoria, int posicion) {
+        return ByteVector.fromMemorySegment(SPECIES, memoria, posicion, ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,214 @@
+package ar.com.leo.etiquetas.parser;
+
+import ar.com.leo.etiquetas.model.ZplIndice;
+import ar.com.leo.etiquetas.model.ZplLabel;
+import ar.com.leo.etiquetas.model.ZplLote;
+import ar.com.leo.util.ZplHexDecoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lo que se va sacando de los campos ^FD de una etiqueta a medida que el {@link ZplTokenizer} los
+ * corta. Cada campo se mira una vez, en el orden en que aparece, y al cerrar el bloque se arma la
+ * {@link ZplLabel}.
+ */
+final class ZplCampos {
+
+    private static final String ROTULO_SKU = "SKU:";
+    /**
+     * Los comandos que ML pone delante del número grande de unidades. Tienen que estar pegados al
+     * ^FD; el ^FR aparece cuando el archivo ya pasó por la app, que lo agrega para el video inverso.
+     */
+    private static final String FORMATO_CANTIDAD = "^A0N,70,70^FB160,1,0,C";
+    private static final String FORMATO_CANTIDAD_INVERSO = FORMATO_CANTIDAD + "^FR";
+    /**
+     * El rótulo con el que ML anuncia el número de la orden: "Pack ID:", o "Venta ID:" cuando la
+     * etiqueta no agrupa varias.
+     */
+    private static final Pattern ROTULO_ORDEN = Pattern.compile("(?:Pack|Venta)\\s*ID:");
+    /** El número en sí. Los pack y order id de ML son de 11 dígitos. */
+    private static final Pattern NUMERO_ORDEN = Pattern.compile("\\d{8,}");
+    /**
+     * Cuántos campos después del rótulo se busca el número.
+     *
+     * Acotarlo es lo que evita quedarse con un número equivocado. En la etiqueta real el rótulo
+     * viene duplicado —ML simula la negrita— y entre él y el número hay un campo con un "20000",
+     * así que el número queda a dos o tres campos. Sin tope, la búsqueda seguiría hasta el
+     * contenido del código de barras, que también es una tirada larga de dígitos: la columna
+     * mostraría un número plausible pero equivocado, y el operario la usa para buscar la venta.
+     */
+    private static final int MAX_CAMPOS_ORDEN = 3;
+    /**
+     * El bloque de tipo de envío que imprime ML: "Envío Turbo" frente a "Envío Flex".
+     *
+     * En la descarga por API el dato sale de los tags del shipment, pero por archivo no hay de
+     * dónde sacarlo salvo la etiqueta misma, y sin él una etiqueta turbo no se agrupa en TURBOS.
+     * Se ancla en el "Envío" para no confundirlo con el "ZONA: TURBOS" que la app inyecta y que un
+     * archivo ya procesado trae adentro.
+     */
+    private static final Pattern ENVIO_TURBO = Pattern.compile("Env\\S*o\\s+Turbo", Pattern.CASE_INSENSITIVE);
+
+    private final List<String> skus = new ArrayList<>();
+    private final List<String> descripciones = new ArrayList<>();
+    private final List<String> detalles = new ArrayList<>();
+    private String campoAnterior;
+    private String orden;
+    private int camposDesdeRotulo;
+    private int cantidad;
+    private boolean cantidadEncontrada;
+    private boolean turbo;
+    private int campos;
+
+    ZplCampos() {
+        reiniciar();
+    }
+
+    void reiniciar() {
+        skus.clear();
+        descripciones.clear();
+        detalles.clear();
+        campoAnterior = null;
+        orden = "";
+        camposDesdeRotulo = -1;
+        cantidad = 1;
+        cantidadEncontrada = false;
+        turbo = false;
+        campos = 0;
+    }
+
+    boolean hayCampos() {
+        return campos > 0;
+    }
+
+    /**
+     * Un campo cerrado.
+     *
+     * @param inicioComando donde está el ^FD, para mirar los comandos que lo preceden
+     * @param desde         primer carácter del contenido
+     * @param hasta         el ^FS que lo cierra
+     */
+    void campo(CharSequence bloque, int inicioComando, int desde, int hasta) {
+        campos++;
+        String contenido = ZplHexDecoder.decodeField(bloque, desde, hasta);
+
+        if (!cantidadEncontrada && esCampoDeCantidad(bloque, inicioComando) && sonDigitos(contenido)) {
+            cantidad = Integer.parseInt(contenido);
+            cantidadEncontrada = true;
+        }
+
+        if (!turbo && contieneSinMayusculas(contenido, "turbo")) {
+            turbo = ENVIO_TURBO.matcher(contenido).find();
+        }
+
+        if (orden.isEmpty()) {
+            Matcher rotulo = contenido.contains("ID:") ? ROTULO_ORDEN.matcher(contenido) : null;
+            if (rotulo != null && rotulo.find()) {
+                // El número puede venir pegado al rótulo, en el mismo campo.
+                camposDesdeRotulo = 0;
+                orden = numeroDeOrden(contenido.substring(rotulo.end()));
+            } else if (camposDesdeRotulo >= 0 && camposDesdeRotulo < MAX_CAMPOS_ORDEN) {
+                camposDesdeRotulo++;
+                orden = numeroDeOrden(contenido);
+            }
+        }
+
+        int rotuloSku = buscarSku(contenido);
+        if (rotuloSku >= 0) {
+            skus.add(ZplParser.normalizeSku(valorSku(contenido, rotuloSku)));
+            if (campoAnterior != null && !campoAnterior.isEmpty()) {
+                descripciones.add(campoAnterior);
+            }
+            String antesDelSku = contenido.substring(0, rotuloSku).trim();
+            if (antesDelSku.endsWith("|")) {
+                antesDelSku = antesDelSku.substring(0, antesDelSku.length() - 1).trim();
+            }
+            if (!antesDelSku.isEmpty()) {
+                detalles.add(antesDelSku);
+            }
+        }
+        campoAnterior = contenido.trim();
+    }
+
+    ZplLabel etiqueta(ZplLote lote, int inicio, int largo, ZplIndice indice) {
+        String sku = skus.isEmpty() ? null : String.join("\n", skus);
+        String descripcion = descripciones.isEmpty() ? null : String.join("\n", descripciones);
+        String detalle = detalles.isEmpty() ? null : String.join("\n", detalles);
+        return new ZplLabel(lote, inicio, largo, indice, sku, descripcion, detalle, cantidad, turbo, orden);
+    }
+
+    private static boolean esCampoDeCantidad(CharSequence bloque, int inicioComando) {
+        return terminaCon(bloque, inicioComando, FORMATO_CANTIDAD)
+                || terminaCon(bloque, inicioComando, FORMATO_CANTIDAD_INVERSO);
+    }
+
+    private static boolean terminaCon(CharSequence texto, int fin, String sufijo) {
+        int inicio = fin - sufijo.length();
+        if (inicio < 0) return false;
+        for (int i = 0; i < sufijo.length(); i++) {
+            if (texto.charAt(inicio + i) != sufijo.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static boolean sonDigitos(String texto) {
+        if (texto.isEmpty()) return false;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Dónde está el primer "SKU:" seguido de un valor, o -1. Un rótulo sin nada después no cuenta:
+     * se sigue buscando, como hacía la expresión {@code SKU:\s*(\S+)}.
+     */
+    private static int buscarSku(String contenido) {
+        int desde = 0;
+        while (true) {
+            int idx = contenido.indexOf(ROTULO_SKU, desde);
+            if (idx < 0) return -1;
+            int i = saltarEspacios(contenido, idx + ROTULO_SKU.length());
+            if (i < contenido.length()) return idx;
+            desde = idx + 1;
+        }
+    }
+
+    private static String valorSku(String contenido, int rotuloSku) {
+        int inicio = saltarEspacios(contenido, rotuloSku + ROTULO_SKU.length());
+        int fin = inicio;
+        while (fin < contenido.length() && !esEspacio(contenido.charAt(fin))) fin++;
+        return contenido.substring(inicio, fin);
+    }
+
+    private static int saltarEspacios(String texto, int i) {
+        while (i < texto.length() && esEspacio(texto.charAt(i))) i++;
+        return i;
+    }
+
+    /** Lo que las expresiones regulares toman por {@code \s}. */
+    private static boolean esEspacio(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean contieneSinMayusculas(String texto, String buscado) {
+        for (int i = 0, ultimo = texto.length() - buscado.length(); i <= ultimo; i++) {
+            if (texto.regionMatches(true, i, buscado, 0, buscado.length())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * La tirada larga de dígitos de un campo, o vacío si no la tiene.
+     *
+     * El campo tiene que ser el número y nada más: los códigos de barras llevan su contenido en un
+     * ^FD y también traen tiradas largas de dígitos, pero mezcladas con otros caracteres.
+     */
+    private static String numeroDeOrden(String fieldContent) {
+        String texto = fieldContent.trim();
+        return NUMERO_ORDEN.matcher(texto).matches() ? texto : "";
+    }
+}
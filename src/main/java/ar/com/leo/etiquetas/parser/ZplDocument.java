@@ -0,0 +1,252 @@
+package ar.com.leo.etiquetas.parser;
+
+import ar.com.leo.etiquetas.model.ZplIndice;
+import ar.com.leo.etiquetas.model.ZplLabel;
+
+/**
+ * Una etiqueta ZPL con su {@link ZplIndice}: dónde está cada ^LH, cada ^FO y cada campo
+ * ^FD...^FS, y los dos números que identifican el envío (el "Envio:" impreso y el id del QR).
+ *
+ * Quien necesite ubicar algo —el emparejado con el envío, la inyección de encabezados, el
+ * resaltado de cantidades— pregunta por posiciones en lugar de volver a recorrer la etiqueta con
+ * indexOf o expresiones regulares. Las de una {@link ZplLabel} vienen del tokenizer, que arma el
+ * índice una sola vez; {@link #of(String)} lo arma para un texto suelto.
+ *
+ * Las posiciones son del texto con el que se armó el índice.
+ */
+public final class ZplDocument {
+
+    private static final String ROTULO_ENVIO = "Envio:";
+    private static final String CLAVE_ID_QR = "\"id\"";
+
+    private final String raw;
+    private final ZplIndice indice;
+    private final String envioId;
+    private final String qrId;
+
+    private ZplDocument(String raw, ZplIndice indice) {
+        this.raw = raw;
+        this.indice = indice;
+        String envio = null;
+        String qr = null;
+        for (int i = 0; i < indice.campoCount() && (envio == null || qr == null); i++) {
+            if (envio == null) envio = numeroEnvio(indice.inicioContenido(i), indice.finContenido(i));
+            if (qr == null) qr = idQr(indice.inicioContenido(i), indice.finContenido(i));
+        }
+        this.envioId = envio;
+        this.qrId = qr;
+    }
+
+    public static ZplDocument of(String raw) {
+        return new ZplDocument(raw, ZplIndice.de(raw));
+    }
+
+    /** El ZPL de la etiqueta con el índice que ya trae, sin volver a recorrerlo. */
+    public static ZplDocument of(ZplLabel label) {
+        return new ZplDocument(label.rawZpl(), label.indice());
+    }
+
+    public String raw() {
+        return raw;
+    }
+
+    /** Lo que sigue al primer ^XA, o -1 si no lo tiene. */
+    public int inicio() {
+        return indice.inicio();
+    }
+
+    public int lhCount() {
+        return indice.lhCount();
+    }
+
+    /** Dónde está el i-ésimo ^LH. */
+    public int lh(int i) {
+        return indice.lh(i);
+    }
+
+    /**
+     * Las coordenadas del ^LH, o null si no tiene la forma {@code ^LHx,y}: el que viene con
+     * espacios o sin alguno de los dos números no cuenta como origen.
+     */
+    public int[] lhCoordenadas(int i) {
+        int p = indice.lh(i) + 3;
+        int finX = finDigitos(p);
+        if (finX == p || finX >= raw.length() || raw.charAt(finX) != ',') return null;
+        int finY = finDigitos(finX + 1);
+        if (finY == finX + 1) return null;
+        return new int[]{entero(p, finX), entero(finX + 1, finY)};
+    }
+
+    /** El último ^FO que empieza antes de {@code posicion}, o -1. */
+    public int foAntes(int posicion) {
+        return indice.foAntes(posicion);
+    }
+
+    /** Qué número de ^FO es el que está en {@code posicion}, o negativo si ahí no hay uno. */
+    public int indiceFo(int posicion) {
+        return indice.indiceFo(posicion);
+    }
+
+    public int foCount() {
+        return indice.foCount();
+    }
+
+    public int fo(int i) {
+        return indice.fo(i);
+    }
+
+    public int campoCount() {
+        return indice.campoCount();
+    }
+
+    public int inicioContenido(int campo) {
+        return indice.inicioContenido(campo);
+    }
+
+    /** Dónde está el ^FS que cierra el campo. */
+    public int finContenido(int campo) {
+        return indice.finContenido(campo);
+    }
+
+    public String contenido(int campo) {
+        return raw.substring(indice.inicioContenido(campo), indice.finContenido(campo));
+    }
+
+    /** El primer campo cuyo contenido empieza en {@code posicion} o después, o campoCount(). */
+    public int primerCampoDesde(int posicion) {
+        return indice.primerCampoDesde(posicion);
+    }
+
+    /** El primer campo desde {@code desdeCampo} cuyo contenido incluye el texto, o -1. */
+    public int campoCon(String texto, int desdeCampo) {
+        for (int i = Math.max(desdeCampo, 0); i < indice.campoCount(); i++) {
+            if (contiene(i, texto)) return i;
+        }
+        return -1;
+    }
+
+    /** El último campo cuyo contenido incluye el texto, o -1. */
+    public int ultimoCampoCon(String texto) {
+        return ultimoCampoCon(texto, indice.campoCount() - 1);
+    }
+
+    /** El último campo hasta {@code hastaCampo} inclusive cuyo contenido incluye el texto, o -1. */
+    public int ultimoCampoCon(String texto, int hastaCampo) {
+        for (int i = Math.min(hastaCampo, indice.campoCount() - 1); i >= 0; i--) {
+            if (contiene(i, texto)) return i;
+        }
+        return -1;
+    }
+
+    /** Dónde aparece el texto dentro del contenido del campo, o -1. */
+    public int indiceEnCampo(int campo, String texto) {
+        int ultimo = indice.finContenido(campo) - texto.length();
+        for (int i = indice.inicioContenido(campo); i <= ultimo; i++) {
+            if (raw.startsWith(texto, i)) return i;
+        }
+        return -1;
+    }
+
+    /** El hash del texto sin el contenido de los campos. */
+    public long huella() {
+        return indice.huella();
+    }
+
+    /**
+     * El texto sin el contenido de los campos, que es lo que resume la {@link #huella()}. Sin un
+     * '^' en ningún contenido, dos etiquetas con el mismo esqueleto tienen los mismos comandos.
+     */
+    public String esqueleto() {
+        StringBuilder esqueleto = new StringBuilder(raw.length());
+        int desde = 0;
+        for (int i = 0; i < indice.campoCount(); i++) {
+            esqueleto.append(raw, desde, indice.inicioContenido(i));
+            desde = indice.finContenido(i);
+        }
+        return esqueleto.append(raw, desde, raw.length()).toString();
+    }
+
+    /** Si el {@link #esqueleto()} de esta etiqueta es {@code esqueleto}, sin armarlo. */
+    public boolean tieneEsqueleto(String esqueleto) {
+        int enEsqueleto = 0;
+        int desde = 0;
+        for (int i = 0; i <= indice.campoCount(); i++) {
+            int hasta = i < indice.campoCount() ? indice.inicioContenido(i) : raw.length();
+            int largo = hasta - desde;
+            if (!raw.regionMatches(desde, esqueleto, enEsqueleto, largo)) return false;
+            enEsqueleto += largo;
+            if (i < indice.campoCount()) desde = indice.finContenido(i);
+        }
+        return enEsqueleto == esqueleto.length();
+    }
+
+    /**
+     * Si algún campo tiene un '^' en el contenido. Esos contenidos se pueden confundir con
+     * comandos, así que la huella no alcanza para decir que dos etiquetas tienen el mismo formato.
+     */
+    public boolean comandosEnContenido() {
+        return indice.comandosEnContenido();
+    }
+
+    /** El número que sigue al "Envio:" impreso, o null. */
+    public String envioId() {
+        return envioId;
+    }
+
+    /** El {@code "id"} del JSON que va en el QR, o null. */
+    public String qrId() {
+        return qrId;
+    }
+
+    private boolean contiene(int campo, String texto) {
+        return indiceEnCampo(campo, texto) >= 0;
+    }
+
+    /** Lo mismo que buscaba {@code Envio:\s*(\d+)}, dentro del campo. */
+    private String numeroEnvio(int desde, int hasta) {
+        int idx = raw.indexOf(ROTULO_ENVIO, desde);
+        while (idx >= 0 && idx + ROTULO_ENVIO.length() <= hasta) {
+            int p = saltarEspacios(idx + ROTULO_ENVIO.length(), hasta);
+            int fin = Math.min(finDigitos(p), hasta);
+            if (fin > p) return raw.substring(p, fin);
+            idx = raw.indexOf(ROTULO_ENVIO, idx + 1);
+        }
+        return null;
+    }
+
+    /** Lo mismo que buscaba {@code "id"\s*:\s*"(\d+)"}, dentro del campo. */
+    private String idQr(int desde, int hasta) {
+        int idx = raw.indexOf(CLAVE_ID_QR, desde);
+        while (idx >= 0 && idx + CLAVE_ID_QR.length() <= hasta) {
+            int p = saltarEspacios(idx + CLAVE_ID_QR.length(), hasta);
+            if (p < hasta && raw.charAt(p) == ':') {
+                p = saltarEspacios(p + 1, hasta);
+                if (p < hasta && raw.charAt(p) == '"') {
+                    int fin = Math.min(finDigitos(p + 1), hasta);
+                    if (fin > p + 1 && fin < hasta && raw.charAt(fin) == '"') return raw.substring(p + 1, fin);
+                }
+            }
+            idx = raw.indexOf(CLAVE_ID_QR, idx + 1);
+        }
+        return null;
+    }
+
+    private int saltarEspacios(int i, int hasta) {
+        while (i < hasta && esEspacio(raw.charAt(i))) i++;
+        return i;
+    }
+
+    /** Lo que las expresiones regulares toman por {@code \s}. */
+    private static boolean esEspacio(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private int finDigitos(int i) {
+        while (i < raw.length() && raw.charAt(i) >= '0' && raw.charAt(i) <= '9') i++;
+        return i;
+    }
+
+    private int entero(int desde, int hasta) {
+        return Integer.parseInt(raw, desde, hasta, 10);
+    }
+}
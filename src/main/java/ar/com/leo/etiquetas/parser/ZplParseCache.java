@@ -0,0 +1,243 @@
+package ar.com.leo.etiquetas.parser;
+
+import ar.com.leo.AppLogger;
+import ar.com.leo.etiquetas.model.ZplLabel;
+import ar.com.leo.etiquetas.model.ZplLote;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Recuerda lo que dio parsear cada archivo ZPL, identificado por el SHA-256 de su contenido.
+ *
+ * El operario vuelve a apretar "Procesar" con el mismo archivo cada vez que corrige el Excel de
+ * stock o el de medidas; el ZPL no cambió, así que las etiquetas tampoco. Como la clave es el
+ * contenido y no la ruta, tampoco importa si el archivo se copió o se renombró.
+ *
+ * Las últimas {@code maxEntradas} quedan en memoria. Si se le da una carpeta, además se guardan
+ * ahí y sobreviven a cerrar el programa; lo que no se puede leer de la carpeta se trata como si no
+ * estuviera y se vuelve a parsear.
+ */
+public final class ZplParseCache {
+
+    /**
+     * Va en la cabecera de cada archivo guardado. Hay que subirlo cada vez que cambie lo que el
+     * parser saca de una etiqueta, para que no se usen resultados viejos.
+     */
+    private static final int VERSION = 1;
+    private static final int MAGIA = 0x5A504C43; // "ZPLC"
+    private static final String EXTENSION = ".zplc";
+
+    private final ZplParser parser;
+    private final int maxEntradas;
+    private final Path carpeta;
+    private final Map<String, List<ZplLabel>> memoria;
+
+    /** Solo en memoria. */
+    public ZplParseCache(ZplParser parser, int maxEntradas) {
+        this(parser, maxEntradas, null);
+    }
+
+    /** En memoria y en {@code carpeta}, que se crea si hace falta; null es solo en memoria. */
+    public ZplParseCache(ZplParser parser, int maxEntradas, Path carpeta) {
+        this.parser = parser;
+        this.maxEntradas = maxEntradas;
+        this.carpeta = carpeta;
+        // accessOrder: cada acierto la pasa al final y se descarta la que hace más que no se usa.
+        this.memoria = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<ZplLabel>> eldest) {
+                return size() > ZplParseCache.this.maxEntradas;
+            }
+        };
+    }
+
+    /**
+     * Lo mismo que {@link ZplParser#parseFileParallel(Path)}, pero si el contenido ya se parseó
+     * devuelve ese resultado. El hash y el parseo salen del mismo mapeo del archivo: si alguien
+     * lo reescribe en el medio no puede quedar guardado un resultado con la clave del otro.
+     */
+    public List<ZplLabel> parseFile(Path filePath) throws IOException {
+        try (FileChannel canal = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long tamanio = canal.size();
+            if (tamanio > Integer.MAX_VALUE) {
+                return parser.parseFileParallel(filePath);
+            }
+            MappedByteBuffer bytes = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanio);
+            String clave = sha256(bytes);
+
+            List<ZplLabel> guardadas = enMemoria(clave);
+            if (guardadas != null) {
+                AppLogger.info("ZPL - Caché: " + filePath.getFileName() + " ya estaba parseado ("
+                        + guardadas.size() + " etiquetas, en memoria).");
+                return new ArrayList<>(guardadas);
+            }
+            guardadas = enDisco(clave);
+            if (guardadas != null) {
+                AppLogger.info("ZPL - Caché: " + filePath.getFileName() + " ya estaba parseado ("
+                        + guardadas.size() + " etiquetas, en disco).");
+                recordar(clave, guardadas);
+                return new ArrayList<>(guardadas);
+            }
+
+            AppLogger.info("ZPL - Caché: " + filePath.getFileName() + " no estaba parseado, se parsea.");
+            List<ZplLabel> labels = parser.parseParallel(bytes);
+            List<ZplLabel> copia = List.copyOf(labels);
+            recordar(clave, copia);
+            guardarEnDisco(clave, copia);
+            return labels;
+        }
+    }
+
+    /** Vacía la memoria; lo guardado en la carpeta queda. */
+    public synchronized void clear() {
+        memoria.clear();
+    }
+
+    private synchronized List<ZplLabel> enMemoria(String clave) {
+        return memoria.get(clave);
+    }
+
+    private synchronized void recordar(String clave, List<ZplLabel> labels) {
+        memoria.put(clave, labels);
+    }
+
+    private static String sha256(MappedByteBuffer bytes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(bytes.duplicate());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // Todo JDK trae SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Path archivo(String clave) {
+        return carpeta.resolve(clave + EXTENSION);
+    }
+
+    private List<ZplLabel> enDisco(String clave) {
+        if (carpeta == null) return null;
+        Path archivo = archivo(clave);
+        if (!Files.isRegularFile(archivo)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(archivo)))) {
+            if (in.readInt() != MAGIA || in.readInt() != VERSION) return null;
+            int cantidad = in.readInt();
+            ZplLote lote = new ZplLote((int) Math.min(Files.size(archivo), Integer.MAX_VALUE - 8));
+            List<ZplLabel> labels = new ArrayList<>(Math.min(cantidad, 4096));
+            for (int i = 0; i < cantidad; i++) {
+                int inicio = lote.agregar(leerTexto(in));
+                int largo = lote.tamanio() - inicio;
+                labels.add(new ZplLabel(lote, inicio, largo, leerTexto(in), leerTexto(in), leerTexto(in),
+                        in.readInt(), in.readBoolean(), leerTexto(in)));
+            }
+            // Que se vuelva a usar cuenta como reciente al momento de podar la carpeta.
+            Files.setLastModifiedTime(archivo, FileTime.fromMillis(System.currentTimeMillis()));
+            return List.copyOf(labels);
+        } catch (IOException | RuntimeException e) {
+            AppLogger.warn("ZPL - Caché: no se pudo leer " + archivo.getFileName() + ", se vuelve a parsear: "
+                    + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Escribe a un temporal y lo mueve: si el programa se cierra a mitad de camino no queda un
+     * archivo cortado con el nombre bueno.
+     */
+    private void guardarEnDisco(String clave, List<ZplLabel> labels) {
+        if (carpeta == null) return;
+        Path archivo = archivo(clave);
+        Path temporal = null;
+        try {
+            Files.createDirectories(carpeta);
+            temporal = Files.createTempFile(carpeta, clave, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporal)))) {
+                out.writeInt(MAGIA);
+                out.writeInt(VERSION);
+                out.writeInt(labels.size());
+                for (ZplLabel label : labels) {
+                    escribirTexto(out, label.rawZpl());
+                    escribirTexto(out, label.sku());
+                    escribirTexto(out, label.productDescription());
+                    escribirTexto(out, label.details());
+                    out.writeInt(label.quantity());
+                    out.writeBoolean(label.turbo());
+                    escribirTexto(out, label.orderIds());
+                }
+            }
+            Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            podarCarpeta();
+        } catch (IOException e) {
+            AppLogger.warn("ZPL - Caché: no se pudo guardar en " + carpeta + ": " + e.getMessage());
+            if (temporal != null) {
+                try {
+                    Files.deleteIfExists(temporal);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /** En la carpeta también quedan solo las últimas {@code maxEntradas}, por fecha de uso. */
+    private void podarCarpeta() throws IOException {
+        List<Path> guardados;
+        try (Stream<Path> archivos = Files.list(carpeta)) {
+            guardados = archivos.filter(p -> p.getFileName().toString().endsWith(EXTENSION))
+                    .sorted(Comparator.comparing(ZplParseCache::ultimaModificacion).reversed())
+                    .toList();
+        }
+        for (int i = maxEntradas; i < guardados.size(); i++) {
+            Files.deleteIfExists(guardados.get(i));
+        }
+    }
+
+    private static long ultimaModificacion(Path archivo) {
+        try {
+            return Files.getLastModifiedTime(archivo).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /** Largo en bytes y el texto en UTF-8; -1 es null. writeUTF no sirve: corta a 64 KB. */
+    private static void escribirTexto(DataOutputStream out, String texto) throws IOException {
+        if (texto == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String leerTexto(DataInputStream in) throws IOException {
+        int largo = in.readInt();
+        if (largo < 0) return null;
+        byte[] bytes = in.readNBytes(largo);
+        if (bytes.length < largo) throw new EOFException("archivo cortado");
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
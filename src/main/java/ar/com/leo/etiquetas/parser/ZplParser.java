@@ -1,54 +1,43 @@
 package ar.com.leo.etiquetas.parser;
 
 import ar.com.leo.etiquetas.model.ZplLabel;
-import ar.com.leo.util.ZplHexDecoder;
+import ar.com.leo.etiquetas.model.ZplLote;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
 
 public class ZplParser {
 
-    private static final Pattern LABEL_BLOCK = Pattern.compile("(\\^XA.*?\\^XZ)", Pattern.DOTALL);
-    private static final Pattern SEPARATOR = Pattern.compile("^\\^XA\\s*\\^MCY\\s*\\^XZ$", Pattern.DOTALL);
-    private static final Pattern FD_FIELD = Pattern.compile("\\^FD(.*?)\\^FS", Pattern.DOTALL);
-    private static final Pattern SKU_PATTERN = Pattern.compile("SKU:\\s*(\\S+)");
-    private static final Pattern QUANTITY_PATTERN = Pattern.compile(
-            "\\^A0N,70,70\\^FB160,1,0,C(?:\\^FR)?\\^FD(\\d+)\\^FS");
-    /**
-     * El rótulo con el que ML anuncia el número de la orden: "Pack ID:", o "Venta ID:" cuando la
-     * etiqueta no agrupa varias.
-     */
-    private static final Pattern ROTULO_ORDEN = Pattern.compile("(?:Pack|Venta)\\s*ID:");
-    /** El número en sí. Los pack y order id de ML son de 11 dígitos. */
-    private static final Pattern NUMERO_ORDEN = Pattern.compile("\\d{8,}");
-    /**
-     * Cuántos campos después del rótulo se busca el número.
-     *
-     * Acotarlo es lo que evita quedarse con un número equivocado. En la etiqueta real el rótulo
-     * viene duplicado —ML simula la negrita— y entre él y el número hay un campo con un "20000",
-     * así que el número queda a dos o tres campos. Sin tope, la búsqueda seguiría hasta el
-     * contenido del código de barras, que también es una tirada larga de dígitos: la columna
-     * mostraría un número plausible pero equivocado, y el operario la usa para buscar la venta.
-     */
-    private static final int MAX_CAMPOS_ORDEN = 3;
+    private static final int BUFFER_LECTURA = 64 * 1024;
+    /** Cuántos bloques parsea cada tarea del modo paralelo antes de no partir más. */
+    static final int BLOQUES_POR_TAREA = 256;
+
     /**
-     * El bloque de tipo de envío que imprime ML: "Envío Turbo" frente a "Envío Flex".
-     *
-     * En la descarga por API el dato sale de los tags del shipment, pero por archivo no hay de
-     * dónde sacarlo salvo la etiqueta misma, y sin él una etiqueta turbo no se agrupa en TURBOS.
-     * Se ancla en el "Envío" para no confundirlo con el "ZONA: TURBOS" que la app inyecta y que un
-     * archivo ya procesado trae adentro.
+     * Los SKU se repiten en miles de órdenes, etiquetas y combos: así todos los iguales son el
+     * mismo String y los HashMap que los usan de clave comparan por referencia antes que por
+     * contenido. Es débil para que los SKU que ya nadie usa no queden para siempre.
      */
-    private static final Pattern ENVIO_TURBO = Pattern.compile("Env\\S*o\\s+Turbo", Pattern.CASE_INSENSITIVE);
-
-    private static final Pattern NON_DIGIT_START = Pattern.compile("^\\D+");
-    private static final Pattern NON_DIGIT_END = Pattern.compile("\\D+$");
+    private static final Interner<String> SKUS = Interners.newWeakInterner();
 
     /**
      * Normaliza un SKU:
@@ -56,124 +45,244 @@ public class ZplParser {
      * 2. Toma el texto antes del primer espacio
      * 3. Quita caracteres no numéricos al inicio/final
      * 4. Valida que sea numérico, si no marca "SKU INVALIDO: ..."
+     *
+     * Se llama por cada ítem de cada orden y cada etiqueta, así que se recorre a mano en lugar de
+     * con expresiones regulares. Los dígitos son los ASCII, igual que \d.
      */
     public static String normalizeSku(String raw) {
         if (raw == null) return null;
 
         // 1. Trim
-        String sku = raw.trim();
-        if (sku.isEmpty()) return null;
+        int desde = 0;
+        int hasta = raw.length();
+        while (desde < hasta && raw.charAt(desde) <= ' ') desde++;
+        while (hasta > desde && raw.charAt(hasta - 1) <= ' ') hasta--;
+        if (desde == hasta) return null;
 
         // 2. Tomar antes del primer espacio
-        int spaceIdx = sku.indexOf(' ');
-        if (spaceIdx > 0) {
-            sku = sku.substring(0, spaceIdx);
+        int spaceIdx = raw.indexOf(' ', desde);
+        if (spaceIdx >= 0 && spaceIdx < hasta) {
+            hasta = spaceIdx;
         }
 
         // 3. Quitar caracteres no numéricos al inicio y final
-        sku = NON_DIGIT_START.matcher(sku).replaceFirst("");
-        sku = NON_DIGIT_END.matcher(sku).replaceFirst("");
+        int primerDigito = desde;
+        while (primerDigito < hasta && !esDigito(raw.charAt(primerDigito))) primerDigito++;
+        int finDigitos = hasta;
+        while (finDigitos > primerDigito && !esDigito(raw.charAt(finDigitos - 1))) finDigitos--;
 
-        if (sku.isEmpty()) {
+        // 4. Validar que sea numérico (vacío también es inválido)
+        if (primerDigito == finDigitos) {
             return "SKU INVALIDO: " + raw.trim();
         }
-
-        // 4. Validar que sea numérico
-        if (!sku.matches("\\d+")) {
-            return "SKU INVALIDO: " + raw.trim();
+        for (int i = primerDigito + 1; i < finDigitos - 1; i++) {
+            if (!esDigito(raw.charAt(i))) {
+                return "SKU INVALIDO: " + raw.trim();
+            }
         }
 
-        return sku;
+        return SKUS.intern(raw.substring(primerDigito, finDigitos));
+    }
+
+    private static boolean esDigito(char c) {
+        return c >= '0' && c <= '9';
     }
 
     /**
-     * La tirada larga de dígitos de un campo, o vacío si no la tiene.
+     * Mapea el archivo en memoria en lugar de leerlo: los límites ^XA...^XZ se buscan sobre los
+     * bytes y solo se decodifica cada bloque, así que lo que haya entre etiquetas nunca se copia.
+     * Con los archivos de un mes entero de etiquetas es la diferencia entre pasar el archivo una
+     * vez y pasarlo tres (disco, bytes, caracteres).
      *
-     * El campo tiene que ser el número y nada más: los códigos de barras llevan su contenido en un
-     * ^FD y también traen tiradas largas de dígitos, pero mezcladas con otros caracteres.
+     * Un archivo de más de 2 GB no entra en un solo mapeo y se lee de a pedazos con un Reader.
      */
-    private static String numeroDeOrden(String fieldContent) {
-        String texto = fieldContent.trim();
-        return NUMERO_ORDEN.matcher(texto).matches() ? texto : "";
+    public List<ZplLabel> parseFile(Path filePath) throws IOException {
+        return parseFile(filePath, false);
     }
 
-    public List<ZplLabel> parseFile(Path filePath) throws IOException {
-        String content = Files.readString(filePath, StandardCharsets.UTF_8);
-        return parse(content);
+    /**
+     * Igual que {@link #parseFile(Path)}, pero repartiendo los bloques entre los núcleos. Cada
+     * etiqueta se saca de su propio bloque sin mirar las demás, así que se pueden parsear por
+     * separado; la lista sale en el mismo orden que en el archivo.
+     *
+     * Con menos de dos tareas de {@link #BLOQUES_POR_TAREA} bloques se parsea en el hilo que
+     * llama, con los límites ya buscados: con pocas etiquetas repartir cuesta más de lo que ahorra.
+     */
+    public List<ZplLabel> parseFileParallel(Path filePath) throws IOException {
+        return parseFile(filePath, true);
+    }
+
+    private List<ZplLabel> parseFile(Path filePath, boolean paralelo) throws IOException {
+        List<ZplLabel> labels = new ArrayList<>();
+        try (FileChannel canal = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long tamanio = canal.size();
+            if (tamanio > Integer.MAX_VALUE) {
+                try (Reader reader = Files.newBufferedReader(filePath, StandardCharsets.UTF_8)) {
+                    parse(reader, labels::add);
+                }
+                return labels;
+            }
+            MappedByteBuffer bytes = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanio);
+            if (paralelo) return parseParallel(bytes);
+            parse(bytes, labels::add);
+        }
+        return labels;
     }
 
     public List<ZplLabel> parse(String zplContent) {
         List<ZplLabel> labels = new ArrayList<>();
-        Matcher blockMatcher = LABEL_BLOCK.matcher(zplContent);
+        new ZplTokenizer(labels::add, new ZplLote(zplContent.length())).feed(zplContent);
+        return labels;
+    }
 
-        while (blockMatcher.find()) {
-            String block = blockMatcher.group(1);
+    public List<ZplLabel> parse(Reader reader) throws IOException {
+        List<ZplLabel> labels = new ArrayList<>();
+        parse(reader, labels::add);
+        return labels;
+    }
 
-            if (SEPARATOR.matcher(block.trim()).matches()) {
-                continue;
-            }
+    /**
+     * Lee el ZPL de a pedazos y entrega cada etiqueta apenas se cierra su ^XZ, sin esperar al final
+     * del archivo ni tenerlo entero en memoria.
+     */
+    public void parse(Reader reader, Consumer<ZplLabel> consumidor) throws IOException {
+        ZplTokenizer tokenizer = new ZplTokenizer(consumidor);
+        char[] buffer = new char[BUFFER_LECTURA];
+        int leidos;
+        while ((leidos = reader.read(buffer)) != -1) {
+            tokenizer.feed(buffer, 0, leidos);
+        }
+    }
 
-            // Quitar ^MCY standalone dentro del bloque (algunos labels de ML lo traen,
-            // otros no — normalizamos para evitar comportamiento inconsistente en la impresora)
-            block = block.replaceAll("(?m)^\\^MCY[ \\t]*\\r?\\n", "");
-
-            String decoded = ZplHexDecoder.decode(block);
-            List<String> skus = new ArrayList<>();
-            List<String> descriptions = new ArrayList<>();
-            List<String> detailsList = new ArrayList<>();
-            String previousField = null;
-
-            String orderIds = "";
-            int camposDesdeRotulo = -1;
-
-            Matcher fdMatcher = FD_FIELD.matcher(decoded);
-            while (fdMatcher.find()) {
-                String fieldContent = fdMatcher.group(1);
-
-                if (orderIds.isEmpty()) {
-                    Matcher rotulo = ROTULO_ORDEN.matcher(fieldContent);
-                    if (rotulo.find()) {
-                        // El número puede venir pegado al rótulo, en el mismo campo.
-                        camposDesdeRotulo = 0;
-                        orderIds = numeroDeOrden(fieldContent.substring(rotulo.end()));
-                    } else if (camposDesdeRotulo >= 0 && camposDesdeRotulo < MAX_CAMPOS_ORDEN) {
-                        camposDesdeRotulo++;
-                        orderIds = numeroDeOrden(fieldContent);
-                    }
-                }
+    /**
+     * Parsea ZPL en UTF-8 decodificando solo los bloques ^XA...^XZ. Un byte inválido dentro de un
+     * bloque es un error, igual que al leer el archivo con un Reader; fuera de los bloques no se
+     * mira.
+     *
+     * El lote arranca del tamaño de siempre y crece a medida que aparecen etiquetas: reservarlo
+     * del tamaño del archivo mapeado pedía de entrada tanto heap como disco, aunque el archivo
+     * fuera casi todo basura fuera de los bloques o el consumidor no guardara las etiquetas.
+     */
+    void parse(ByteBuffer bytes, Consumer<ZplLabel> consumidor) throws IOException {
+        LectorDeBloques lector = new LectorDeBloques(consumidor, new ZplLote());
+        ZplBloques bloques = new ZplBloques(bytes);
+        int inicio = bloques.inicio(0);
+        while (inicio >= 0) {
+            int fin = bloques.fin(inicio);
+            // Un bloque sin ^XZ al final del archivo no es una etiqueta.
+            if (fin < 0) break;
+            lector.leer(bytes.slice(inicio, fin - inicio));
+            inicio = bloques.inicio(fin);
+        }
+    }
 
-                Matcher skuMatcher = SKU_PATTERN.matcher(fieldContent);
-                if (skuMatcher.find()) {
-                    skus.add(normalizeSku(skuMatcher.group(1)));
-                    if (previousField != null && !previousField.isEmpty()) {
-                        descriptions.add(previousField);
-                    }
-                    String beforeSku = fieldContent.substring(0, skuMatcher.start()).trim();
-                    if (beforeSku.endsWith("|")) {
-                        beforeSku = beforeSku.substring(0, beforeSku.length() - 1).trim();
-                    }
-                    if (!beforeSku.isEmpty()) {
-                        detailsList.add(beforeSku);
-                    }
-                }
-                previousField = fieldContent.trim();
-            }
+    /**
+     * Primero se buscan todos los límites, que es una pasada rápida sobre los bytes, y después se
+     * decodifican y parsean los bloques en el ForkJoinPool común.
+     */
+    List<ZplLabel> parseParallel(ByteBuffer bytes) throws IOException {
+        int[] limites = limites(bytes);
+        int bloques = limites.length / 2;
+        if (bloques < BLOQUES_POR_TAREA * 2) return leerBloques(bytes, limites, 0, bloques);
+        try {
+            return ForkJoinPool.commonPool().invoke(new ParseoDeBloques(bytes, limites, 0, bloques));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
 
-            String sku = skus.isEmpty() ? null : String.join("\n", skus);
-            String description = descriptions.isEmpty() ? null : String.join("\n", descriptions);
-            String details = detailsList.isEmpty() ? null : String.join("\n", detailsList);
+    /** Inicio y fin de cada bloque, de a pares. */
+    private static int[] limites(ByteBuffer bytes) {
+        int[] limites = new int[64];
+        int cantidad = 0;
+        ZplBloques bloques = new ZplBloques(bytes);
+        int inicio = bloques.inicio(0);
+        while (inicio >= 0) {
+            int fin = bloques.fin(inicio);
+            if (fin < 0) break;
+            if (cantidad + 2 > limites.length) limites = Arrays.copyOf(limites, limites.length * 2);
+            limites[cantidad++] = inicio;
+            limites[cantidad++] = fin;
+            inicio = bloques.inicio(fin);
+        }
+        return Arrays.copyOf(limites, cantidad);
+    }
 
-            int quantity = 1;
-            Matcher qtyMatcher = QUANTITY_PATTERN.matcher(decoded);
-            if (qtyMatcher.find()) {
-                quantity = Integer.parseInt(qtyMatcher.group(1));
+    /** Parsea los bloques {@code desde}..{@code hasta} de {@code limites} en un lote del tamaño justo. */
+    private static List<ZplLabel> leerBloques(ByteBuffer bytes, int[] limites, int desde, int hasta)
+            throws IOException {
+        List<ZplLabel> labels = new ArrayList<>(hasta - desde);
+        if (desde == hasta) return labels;
+        ZplLote lote = new ZplLote(limites[2 * hasta - 1] - limites[2 * desde]);
+        LectorDeBloques lector = new LectorDeBloques(labels::add, lote);
+        for (int i = desde; i < hasta; i++) {
+            int inicio = limites[2 * i];
+            lector.leer(bytes.slice(inicio, limites[2 * i + 1] - inicio));
+        }
+        return labels;
+    }
+
+    /**
+     * Parte el rango de bloques a la mitad hasta que queda chico y lo parsea con su propio
+     * tokenizer. Al juntar, la mitad izquierda va primero: así se conserva el orden del archivo.
+     */
+    private static final class ParseoDeBloques extends RecursiveTask<List<ZplLabel>> {
+
+        private final ByteBuffer bytes;
+        private final int[] limites;
+        private final int desde;
+        private final int hasta;
+
+        ParseoDeBloques(ByteBuffer bytes, int[] limites, int desde, int hasta) {
+            this.bytes = bytes;
+            this.limites = limites;
+            this.desde = desde;
+            this.hasta = hasta;
+        }
+
+        @Override
+        protected List<ZplLabel> compute() {
+            if (hasta - desde <= BLOQUES_POR_TAREA) {
+                try {
+                    // Cada tarea llena su propio lote: uno compartido tendría que sincronizarse.
+                    return leerBloques(bytes, limites, desde, hasta);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
             }
+            int medio = (desde + hasta) >>> 1;
+            ParseoDeBloques derecha = new ParseoDeBloques(bytes, limites, medio, hasta);
+            derecha.fork();
+            List<ZplLabel> labels = new ParseoDeBloques(bytes, limites, desde, medio).compute();
+            labels.addAll(derecha.join());
+            return labels;
+        }
+    }
 
-            boolean turbo = ENVIO_TURBO.matcher(decoded).find();
+    /** Decodifica bloques sueltos y se los pasa a un tokenizer, reusando el decoder y el buffer. */
+    private static final class LectorDeBloques {
 
-            labels.add(new ZplLabel(block, sku, description, details, quantity, turbo, orderIds));
+        private final ZplTokenizer tokenizer;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        private final CharBuffer caracteres = CharBuffer.allocate(BUFFER_LECTURA);
+
+        LectorDeBloques(Consumer<ZplLabel> consumidor, ZplLote lote) {
+            this.tokenizer = new ZplTokenizer(consumidor, lote);
         }
 
-        return labels;
+        void leer(ByteBuffer bloque) throws IOException {
+            decoder.reset();
+            while (true) {
+                CoderResult resultado = decoder.decode(bloque, caracteres, true);
+                if (resultado.isUnderflow()) resultado = decoder.flush(caracteres);
+                if (resultado.isError()) resultado.throwException();
+                caracteres.flip();
+                tokenizer.feed(caracteres.array(), 0, caracteres.limit());
+                caracteres.clear();
+                if (resultado.isUnderflow()) return;
+            }
+        }
     }
 }
@@ -0,0 +1,195 @@
+package ar.com.leo.etiquetas.parser;
+
+import ar.com.leo.etiquetas.model.ZplIndice;
+import ar.com.leo.etiquetas.model.ZplLabel;
+import ar.com.leo.etiquetas.model.ZplLote;
+
+import java.util.function.Consumer;
+
+/**
+ * Recorre el ZPL una sola vez, carácter por carácter, y entrega cada etiqueta apenas cierra su
+ * ^XZ. Mientras copia el bloque va cortando los campos ^FD...^FS y se los pasa a un
+ * {@link ZplCampos}, que saca de ahí el SKU, la cantidad, la orden y el turbo.
+ *
+ * No necesita el archivo entero en memoria: se le puede dar de a pedazos —lo que devuelva un
+ * Reader, o un bloque suelto— y el estado queda a la espera del siguiente. Lo único que retiene
+ * es el bloque en curso.
+ *
+ * El texto de cada etiqueta se copia al {@link ZplLote} del tokenizer, que comparten todas las
+ * etiquetas que salen de él.
+ *
+ * Reproduce lo que hacía el parser por expresiones regulares, incluidas sus rarezas: un bloque
+ * va del primer ^XA al ^XZ siguiente aunque haya otro ^XA en el medio, y un campo va del ^FD al
+ * primer ^FS aunque aparezca otro ^FD adentro.
+ */
+final class ZplTokenizer {
+
+    private final Consumer<ZplLabel> salida;
+    private final ZplLote lote;
+    private final StringBuilder bloque = new StringBuilder(4096);
+    private final ZplCampos campos = new ZplCampos();
+
+    private boolean enBloque;
+    // Fuera de un bloque solo se busca el ^XA, así que alcanza con los dos caracteres anteriores.
+    private char anterior1;
+    private char anterior2;
+
+    /** Dónde empieza el contenido del ^FD abierto, o -1 si no hay ninguno. */
+    private int inicioCampo = -1;
+    /** Dónde empieza la línea en curso, para reconocer las líneas ^MCY sueltas. */
+    private int inicioLinea;
+    /** El inicio de la línea anterior: un \r\n cierra la línea que arrancó antes del \r. */
+    private int inicioLineaAnterior;
+    private int lineasMcyQuitadas;
+
+    ZplTokenizer(Consumer<ZplLabel> salida) {
+        this(salida, new ZplLote());
+    }
+
+    ZplTokenizer(Consumer<ZplLabel> salida, ZplLote lote) {
+        this.salida = salida;
+        this.lote = lote;
+    }
+
+    void feed(CharSequence texto) {
+        for (int i = 0, n = texto.length(); i < n; i++) {
+            feed(texto.charAt(i));
+        }
+    }
+
+    void feed(char[] buffer, int desde, int cantidad) {
+        for (int i = desde, fin = desde + cantidad; i < fin; i++) {
+            feed(buffer[i]);
+        }
+    }
+
+    void feed(char c) {
+        if (!enBloque) {
+            if (c == 'A' && anterior1 == 'X' && anterior2 == '^') {
+                abrirBloque();
+            } else {
+                anterior2 = anterior1;
+                anterior1 = c;
+            }
+            return;
+        }
+
+        bloque.append(c);
+        int n = bloque.length();
+
+        if (c == '\n') {
+            quitarLineaMcy(n);
+            return;
+        }
+        if (esFinDeLinea(c)) {
+            inicioLineaAnterior = inicioLinea;
+            inicioLinea = n;
+            return;
+        }
+
+        if (n < 3 || bloque.charAt(n - 3) != '^') return;
+        char comando = bloque.charAt(n - 2);
+        if (comando == 'X' && c == 'Z') {
+            cerrarBloque();
+        } else if (comando == 'F') {
+            if (c == 'D' && inicioCampo < 0) {
+                inicioCampo = n;
+            } else if (c == 'S' && inicioCampo >= 0) {
+                campos.campo(bloque, inicioCampo - 3, inicioCampo, n - 3);
+                inicioCampo = -1;
+            }
+        }
+    }
+
+    private void abrirBloque() {
+        enBloque = true;
+        bloque.setLength(0);
+        bloque.append("^XA");
+        inicioCampo = -1;
+        inicioLinea = 0;
+        inicioLineaAnterior = 0;
+        lineasMcyQuitadas = 0;
+        campos.reiniciar();
+    }
+
+    private void cerrarBloque() {
+        enBloque = false;
+        anterior1 = 0;
+        anterior2 = 0;
+        if (esSeparador()) return;
+        int inicio = lote.agregar(bloque);
+        salida.accept(campos.etiqueta(lote, inicio, lote.tamanio() - inicio, ZplIndice.de(bloque)));
+    }
+
+    /**
+     * Los terminadores que, además del \n, reconoce el modo multilínea de las expresiones
+     * regulares, que es con lo que se quitaban antes las líneas ^MCY.
+     */
+    private static boolean esFinDeLinea(char c) {
+        return c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * Algunos labels de ML traen un ^MCY suelto en su propia línea y otros no. Se quita para que la
+     * impresora no se comporte distinto según de dónde vino la etiqueta.
+     *
+     * Se mira recién al llegar el \n, que es cuando la línea está completa: tiene que ser ^MCY,
+     * espacios o tabs, y un \r opcional antes del \n.
+     */
+    private void quitarLineaMcy(int n) {
+        boolean conCr = n >= 2 && bloque.charAt(n - 2) == '\r';
+        int inicio = conCr ? inicioLineaAnterior : inicioLinea;
+        if (esLineaMcy(inicio, conCr ? n - 2 : n - 1)) {
+            bloque.setLength(inicio);
+            lineasMcyQuitadas++;
+            inicioLineaAnterior = inicio;
+            inicioLinea = inicio;
+            return;
+        }
+        inicioLineaAnterior = inicioLinea;
+        inicioLinea = n;
+    }
+
+    private boolean esLineaMcy(int inicio, int fin) {
+        if (fin - inicio < 4 || !empiezaCon(inicio, "^MCY")) return false;
+        for (int i = inicio + 4; i < fin; i++) {
+            char c = bloque.charAt(i);
+            if (c != ' ' && c != '\t') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Los separadores entre tandas (^XA ^MCY ^XZ, sin nada más) no son etiquetas. Si el ^MCY venía
+     * en su propia línea ya se quitó al copiar el bloque, y lo que queda es un ^XA ^XZ vacío.
+     */
+    private boolean esSeparador() {
+        if (campos.hayCampos()) return false;
+        int i = saltarEspacios(3);
+        if (lineasMcyQuitadas == 0) {
+            if (!empiezaCon(i, "^MCY")) return false;
+            i = saltarEspacios(i + 4);
+        } else if (lineasMcyQuitadas > 1) {
+            return false;
+        }
+        return i == bloque.length() - 3;
+    }
+
+    private int saltarEspacios(int i) {
+        while (i < bloque.length() && esEspacio(bloque.charAt(i))) i++;
+        return i;
+    }
+
+    /** Lo que las expresiones regulares toman por {@code \s}. */
+    private static boolean esEspacio(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private boolean empiezaCon(int i, String prefijo) {
+        if (i + prefijo.length() > bloque.length()) return false;
+        for (int k = 0; k < prefijo.length(); k++) {
+            if (bloque.charAt(i + k) != prefijo.charAt(k)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,80 @@
+package ar.com.leo.etiquetas.printer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Lo que contesta una Zebra al {@code ~HS} (host status): tres renglones entre STX y ETX con
+ * campos separados por comas. Se usan los que dicen si puede seguir recibiendo etiquetas y cuántas
+ * tiene todavía por imprimir.
+ *
+ * <pre>
+ * 1: aaa,b,c,dddd,eee,f,...   b papel agotado, c en pausa, eee formatos en el buffer, f buffer lleno
+ * 2: mmm,n,o,p,...,uuuuuuuu   o cabezal abierto, p ribbon agotado, u etiquetas que faltan del lote
+ * 3: xxxx,y                   (no se usa)
+ * </pre>
+ */
+public record ZebraEstado(boolean papelAgotado, boolean enPausa, int formatosEnBuffer, boolean bufferLleno,
+                          boolean cabezalAbierto, boolean ribbonAgotado, int etiquetasRestantes) {
+
+    private static final char STX = 0x02;
+    private static final char ETX = 0x03;
+
+    /** El texto de la respuesta, con los STX y ETX. */
+    public static ZebraEstado leer(CharSequence respuesta) {
+        List<String[]> renglones = new ArrayList<>(3);
+        int desde = 0;
+        String texto = respuesta.toString();
+        while ((desde = texto.indexOf(STX, desde)) >= 0) {
+            int hasta = texto.indexOf(ETX, desde);
+            if (hasta < 0) break;
+            renglones.add(texto.substring(desde + 1, hasta).split(","));
+            desde = hasta + 1;
+        }
+        if (renglones.size() < 2 || renglones.get(0).length < 6 || renglones.get(1).length < 4) {
+            throw new IllegalArgumentException("Respuesta de ~HS que no se entiende: "
+                    + texto.replace(STX, '[').replace(ETX, ']').strip());
+        }
+        String[] uno = renglones.get(0);
+        String[] dos = renglones.get(1);
+        return new ZebraEstado(
+                bandera(uno[1]),
+                bandera(uno[2]),
+                Integer.parseInt(uno[4].trim()),
+                bandera(uno[5]),
+                bandera(dos[2]),
+                bandera(dos[3]),
+                dos.length > 8 ? Integer.parseInt(dos[8].trim()) : 0);
+    }
+
+    /**
+     * Si se le pueden seguir mandando etiquetas sin que las encole a ciegas o las pierda. Una
+     * térmica directa no usa ribbon y siempre lo informa en 0.
+     */
+    public boolean puedeRecibir() {
+        return !papelAgotado && !enPausa && !bufferLleno && !cabezalAbierto && !ribbonAgotado;
+    }
+
+    /** Por qué no puede recibir, para mostrarlo; "Lista" si puede. */
+    public String motivo() {
+        StringJoiner motivos = new StringJoiner(", ");
+        if (papelAgotado) motivos.add("sin papel");
+        if (ribbonAgotado) motivos.add("sin ribbon");
+        if (cabezalAbierto) motivos.add("cabezal abierto");
+        if (bufferLleno) motivos.add("buffer lleno");
+        if (enPausa) motivos.add("en pausa");
+        String texto = motivos.toString();
+        return texto.isEmpty() ? "Lista" : Character.toUpperCase(texto.charAt(0)) + texto.substring(1);
+    }
+
+    /** El motivo y, si tiene, cuántas etiquetas le quedan en el buffer sin imprimir. */
+    public String resumen() {
+        String texto = motivo();
+        return formatosEnBuffer > 0 ? texto + " (" + formatosEnBuffer + " etiquetas en el buffer)" : texto;
+    }
+
+    private static boolean bandera(String campo) {
+        return campo.trim().equals("1");
+    }
+}
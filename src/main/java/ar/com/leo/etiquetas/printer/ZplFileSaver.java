@@ -13,8 +13,9 @@ public class ZplFileSaver {
     public void save(List<ZplLabel> sortedLabels, Path outputPath) throws IOException {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < sortedLabels.size(); i++) {
-            sb.append(sortedLabels.get(i).rawZpl());
-            if (!sortedLabels.get(i).rawZpl().endsWith("\n")) {
+            String zpl = sortedLabels.get(i).rawZpl();
+            sb.append(zpl);
+            if (!zpl.endsWith("\n")) {
                 sb.append("\n");
             }
         }
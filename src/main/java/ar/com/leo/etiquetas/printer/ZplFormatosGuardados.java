@@ -0,0 +1,157 @@
+package ar.com.leo.etiquetas.printer;
+
+import ar.com.leo.etiquetas.model.ZplLabel;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lo que {@link ar.com.leo.etiquetas.injector.ZplHeaderInjector} le agrega a cada etiqueta —el
+ * #N, la ZONA y el COD.EXT., cada uno repetido para que salga en negrita— como formatos guardados
+ * en la impresora. Los campos van una vez por envío en un {@code ^DF}, y cada etiqueta los trae
+ * con {@code ^XF} y manda solo el texto de cada uno con {@code ^FN}. Son unos 200 bytes menos por
+ * etiqueta, que en una red lenta se notan en las etiquetas por segundo.
+ *
+ * La posición de la ZONA y del COD.EXT. depende del formato de etiqueta de ML, así que hay un
+ * formato guardado por cada combinación de posiciones del lote, hasta {@link #MAX_FORMATOS}. Lo
+ * que no se reconoce —una etiqueta sin inyectar, un carro, un formato de más— sale entero, igual
+ * que antes. Se reconoce exactamente lo que escribe el inyector: si eso cambia, las etiquetas
+ * salen enteras hasta que se actualice acá.
+ */
+public final class ZplFormatosGuardados {
+
+    /** Cuántos formatos distintos se guardan por envío. */
+    static final int MAX_FORMATOS = 8;
+    /** En la RAM de la impresora: se pierden al apagarla, por eso se mandan en cada envío. */
+    private static final String PREFIJO = "R:ETQ";
+
+    private static final Pattern POSICION = Pattern.compile("\\^LH0,0\n"
+            + "\\^FO45,30\\^A0N,35,35\\^FD(#\\d+)\\^FS\n"
+            + "\\^FO46,30\\^A0N,35,35\\^FD\\1\\^FS\n"
+            + "\\^FO45,31\\^A0N,35,35\\^FD\\1\\^FS\n");
+    private static final Pattern ZONA = Pattern.compile("\n\\^LH0,0\n"
+            + "\\^FO(\\d+),(\\d+)\\^A0N,(\\d+),\\3\\^FD(ZONA: [^^~\n]*)\\^FS\n"
+            + "\\^FO(\\d+),\\2\\^A0N,\\3,\\3\\^FD\\4\\^FS\n"
+            + "\\^LH\\d+,\\d+");
+    private static final Pattern COD_EXT = Pattern.compile("\n"
+            + "\\^FO(\\d+),(\\d+)\\^A0N,(\\d+),\\3\\^FD(COD\\.EXT\\.: [^^~\n]*)\\^FS\n"
+            + "\\^FO(\\d+),\\2\\^A0N,\\3,\\3\\^FD\\4\\^FS");
+    private static final Pattern LH = Pattern.compile("\\^LH(\\d+),(\\d+)");
+
+    /**
+     * Una etiqueta compactada.
+     *
+     * @param formato    el nombre del formato que trae con {@code ^XF}
+     * @param definicion el {@code ^DF} que lo guarda, si es la primera etiqueta del envío que lo
+     *                   usa; {@code null} si ya se mandó
+     * @param zpl        la etiqueta con los campos del inyector reemplazados por {@code ^FN}
+     */
+    public record Compactada(String formato, String definicion, String zpl) {
+    }
+
+    /**
+     * Compacta las etiquetas de un envío de a una, a medida que salen: cada formato se define la
+     * primera vez que aparece, sin recorrer antes el lote.
+     */
+    public static final class Compactador {
+        private final Map<String, String> nombrePorCampos = new LinkedHashMap<>();
+
+        /** La etiqueta compactada, o {@code null} si no se reconoce o ya no hay lugar para su formato. */
+        public Compactada compactar(ZplLabel label) {
+            String zpl = label.rawZpl();
+            Matcher posicion = POSICION.matcher(zpl);
+            if (!posicion.find()) return null;
+            Matcher zona = campoDoble(ZONA.matcher(zpl));
+            Matcher codExt = campoDoble(COD_EXT.matcher(zpl));
+
+            StringBuilder campos = new StringBuilder("^LH0,0\n"
+                    + "^FO45,30^A0N,35,35^FN1^FS\n"
+                    + "^FO46,30^A0N,35,35^FN1^FS\n"
+                    + "^FO45,31^A0N,35,35^FN1^FS\n");
+            if (zona != null) agregarCampoDoble(campos, zona, 2);
+            if (codExt != null) {
+                // Va con el ^LH de ML que rige donde el inyector lo puso.
+                int[] lh = {0, 0};
+                Matcher m = LH.matcher(zpl).region(0, codExt.start());
+                while (m.find()) lh = new int[]{Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2))};
+                campos.append("^LH").append(lh[0]).append(',').append(lh[1]).append('\n');
+                agregarCampoDoble(campos, codExt, 3);
+            }
+            String nombre = nombrePorCampos.get(campos.toString());
+            String definicion = null;
+            if (nombre == null) {
+                if (nombrePorCampos.size() == MAX_FORMATOS) return null;
+                nombre = PREFIJO + (nombrePorCampos.size() + 1) + ".ZPL";
+                nombrePorCampos.put(campos.toString(), nombre);
+                definicion = "^XA\n^DF" + nombre + "^FS\n" + campos + "^XZ\n";
+            }
+
+            StringBuilder recuperado = new StringBuilder("^XF").append(nombre).append("^FS\n")
+                    .append("^FN1^FD").append(posicion.group(1)).append("^FS\n");
+            if (zona != null) recuperado.append("^FN2^FD").append(zona.group(4)).append("^FS\n");
+            if (codExt != null) recuperado.append("^FN3^FD").append(codExt.group(4)).append("^FS\n");
+            // Lo que el inyector pone después del #N —embalaje, MEDIR— espera el ^LH0,0.
+            recuperado.append("^LH0,0\n");
+
+            StringBuilder compacta = new StringBuilder(zpl.length());
+            int desde = 0;
+            for (Matcher tramo : enOrden(posicion, zona, codExt)) {
+                compacta.append(zpl, desde, tramo.start());
+                if (tramo == posicion) compacta.append(recuperado);
+                desde = tramo.end();
+            }
+            compacta.append(zpl, desde, zpl.length());
+            return new Compactada(nombre, definicion, compacta.toString());
+        }
+
+        /** Los formatos definidos hasta ahora, en el orden en que aparecieron. */
+        public List<String> formatos() {
+            return List.copyOf(nombrePorCampos.values());
+        }
+    }
+
+    private ZplFormatosGuardados() {
+    }
+
+    /** Pide el listado de los formatos guardados, para saber si la impresora los aceptó. */
+    public static String consultaDirectorio() {
+        return "^XA^HW" + PREFIJO + "*.ZPL^XZ\n";
+    }
+
+    /** Si el listado que contestó la impresora al {@code ^HW} tiene todos los formatos. */
+    public static boolean estanTodos(CharSequence listado, List<String> formatos) {
+        String texto = listado.toString().toUpperCase(Locale.ROOT);
+        for (String formato : formatos) {
+            // Según el firmware el listado trae o no la unidad delante del nombre.
+            if (!texto.contains(formato.substring(formato.indexOf(':') + 1))) return false;
+        }
+        return !formatos.isEmpty();
+    }
+
+    /** El campo, si está y la copia de al lado está corrida un punto como la pone el inyector. */
+    private static Matcher campoDoble(Matcher campo) {
+        if (!campo.find()) return null;
+        return Integer.parseInt(campo.group(5)) == Integer.parseInt(campo.group(1)) + 1 ? campo : null;
+    }
+
+    private static void agregarCampoDoble(StringBuilder campos, Matcher campo, int numero) {
+        int x = Integer.parseInt(campo.group(1));
+        String resto = "," + campo.group(2) + "^A0N," + campo.group(3) + "," + campo.group(3) + "^FN" + numero + "^FS\n";
+        campos.append("^FO").append(x).append(resto)
+                .append("^FO").append(x + 1).append(resto);
+    }
+
+    private static List<Matcher> enOrden(Matcher... tramos) {
+        List<Matcher> presentes = new ArrayList<>(tramos.length);
+        for (Matcher tramo : tramos) {
+            if (tramo != null) presentes.add(tramo);
+        }
+        presentes.sort((a, b) -> Integer.compare(a.start(), b.start()));
+        return presentes;
+    }
+}
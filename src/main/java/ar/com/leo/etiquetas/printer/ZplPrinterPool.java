@@ -0,0 +1,260 @@
+package ar.com.leo.etiquetas.printer;
+
+import ar.com.leo.etiquetas.model.SortedLabelGroup;
+import ar.com.leo.etiquetas.model.ZplLabel;
+
+import javax.print.PrintService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Varias Zebras imprimiendo un mismo lote a la vez. El lote se reparte en tramos, uno por
+ * impresora —por zonas enteras o en partes iguales—, y cada tramo conserva el orden en que venían
+ * las etiquetas. En la hora pico el tiempo de impresión baja con la cantidad de impresoras.
+ *
+ * Cada impresora tiene su propia cola y un solo hilo: los trabajos de una misma impresora salen
+ * uno detrás del otro y en el orden en que se mandaron, y una impresora lenta o con error no
+ * frena a las demás. También lleva la cuenta de lo que imprimió cada una y cuánto tardó.
+ *
+ * Con un {@link ZplSpool} cada tramo queda anotado antes de salir, y lo que no llegó a salir se
+ * puede {@link #reanudar reanudar} después, aunque la app se haya cerrado en el medio.
+ */
+public final class ZplPrinterPool implements AutoCloseable {
+
+    /** Una impresora del pool y cómo se le mandan las etiquetas. */
+    public interface Destino {
+        String nombre();
+
+        /** Avisa a {@code progreso} cuántas van saliendo; ver {@link ZplSocketSender.Progreso}. */
+        void imprimir(List<ZplLabel> labels, ZplSocketSender.Progreso progreso) throws Exception;
+
+        static Destino de(PrintService printService, ZplPrinterService printerService) {
+            return new Destino() {
+                @Override
+                public String nombre() {
+                    return printService.getName();
+                }
+
+                @Override
+                public void imprimir(List<ZplLabel> labels, ZplSocketSender.Progreso progreso) throws Exception {
+                    printerService.printViaPrintService(labels, printService, progreso);
+                }
+            };
+        }
+
+        static Destino porSocket(String host, int port, ZplPrinterService printerService) {
+            return porSocket(host, port, printerService, ZplSocketSender.Monitor.NINGUNO);
+        }
+
+        /** @param monitor recibe el estado de la impresora si el envío tiene control de flujo */
+        static Destino porSocket(String host, int port, ZplPrinterService printerService,
+                                 ZplSocketSender.Monitor monitor) {
+            return new Destino() {
+                @Override
+                public String nombre() {
+                    return host + ":" + port;
+                }
+
+                @Override
+                public void imprimir(List<ZplLabel> labels, ZplSocketSender.Progreso progreso) throws Exception {
+                    printerService.printViaSocket(labels, host, port, progreso, monitor);
+                }
+            };
+        }
+    }
+
+    /** Cómo le fue a una impresora con un tramo; {@code error} es null si salió bien. */
+    public record Resultado(String impresora, int etiquetas, Duration duracion, Exception error) {
+
+        public boolean ok() {
+            return error == null;
+        }
+    }
+
+    /** Lo que lleva impreso una impresora desde que se armó el pool. */
+    public record Estadisticas(String impresora, long trabajos, long etiquetas, long errores, int enCola,
+                               Duration ocupada) {
+
+        public double etiquetasPorSegundo() {
+            long nanos = ocupada.toNanos();
+            return nanos > 0 ? etiquetas * 1e9 / nanos : 0;
+        }
+    }
+
+    private final List<Cola> colas;
+    private final ZplSpool spool;
+
+    public ZplPrinterPool(List<Destino> destinos) {
+        this(destinos, new ZplSpool(null));
+    }
+
+    /** @param spool dónde se anota lo que sale, para poder reanudar si algo se cae */
+    public ZplPrinterPool(List<Destino> destinos, ZplSpool spool) {
+        if (destinos.isEmpty()) throw new IllegalArgumentException("El pool necesita al menos una impresora.");
+        this.spool = spool;
+        List<Cola> colas = new ArrayList<>(destinos.size());
+        for (Destino destino : destinos) colas.add(new Cola(destino));
+        this.colas = List.copyOf(colas);
+    }
+
+    public int size() {
+        return colas.size();
+    }
+
+    /**
+     * Las etiquetas en {@code impresoras} tramos seguidos, que difieren a lo sumo en una etiqueta.
+     * Pegando los tramos en orden queda la lista original.
+     */
+    public static List<List<ZplLabel>> enTramos(List<ZplLabel> labels, int impresoras) {
+        List<List<ZplLabel>> tramos = new ArrayList<>(impresoras);
+        int desde = 0;
+        for (int i = 0; i < impresoras; i++) {
+            int hasta = desde + labels.size() / impresoras + (i < labels.size() % impresoras ? 1 : 0);
+            tramos.add(labels.subList(desde, hasta));
+            desde = hasta;
+        }
+        return tramos;
+    }
+
+    /**
+     * Las zonas de los grupos repartidas entre {@code impresoras}, sin partir ninguna: cada zona,
+     * de la más grande a la más chica, va a la impresora que tiene menos etiquetas hasta ahí. En
+     * cada tramo las zonas quedan en el orden de los grupos. Si hay menos zonas que impresoras,
+     * alguna queda sin tramo.
+     */
+    public static List<List<ZplLabel>> porZonas(List<SortedLabelGroup> groups, int impresoras) {
+        Map<String, Integer> etiquetasPorZona = new LinkedHashMap<>();
+        for (SortedLabelGroup group : groups) {
+            etiquetasPorZona.merge(group.zone(), group.labels().size(), Integer::sum);
+        }
+        List<String> deMayorAMenor = new ArrayList<>(etiquetasPorZona.keySet());
+        deMayorAMenor.sort(Comparator.comparing(etiquetasPorZona::get).reversed());
+
+        int[] carga = new int[impresoras];
+        Map<String, Integer> impresoraDeZona = new LinkedHashMap<>();
+        for (String zona : deMayorAMenor) {
+            int menosCargada = 0;
+            for (int i = 1; i < impresoras; i++) {
+                if (carga[i] < carga[menosCargada]) menosCargada = i;
+            }
+            impresoraDeZona.put(zona, menosCargada);
+            carga[menosCargada] += etiquetasPorZona.get(zona);
+        }
+
+        List<List<ZplLabel>> tramos = new ArrayList<>(impresoras);
+        for (int i = 0; i < impresoras; i++) tramos.add(new ArrayList<>(carga[i]));
+        for (SortedLabelGroup group : groups) {
+            tramos.get(impresoraDeZona.get(group.zone())).addAll(group.labels());
+        }
+        return tramos;
+    }
+
+    /** Pone el tramo en la cola de la impresora. El futuro nunca falla: el error va en el resultado. */
+    public CompletableFuture<Resultado> enviar(int impresora, List<ZplLabel> labels) {
+        return colas.get(impresora).enviar(labels, null);
+    }
+
+    /** Pone en la cola de la impresora las etiquetas que le faltaron a un trabajo que no terminó. */
+    public CompletableFuture<Resultado> reanudar(int impresora, ZplSpool.Pendiente pendiente) {
+        return colas.get(impresora).enviar(pendiente.faltan(), pendiente);
+    }
+
+    /**
+     * Manda cada tramo a su impresora —el primero a la primera, y así— y espera a que terminen
+     * todas. Los tramos vacíos no se mandan.
+     */
+    public List<Resultado> imprimir(List<List<ZplLabel>> tramos) {
+        if (tramos.size() > colas.size()) {
+            throw new IllegalArgumentException(tramos.size() + " tramos para " + colas.size() + " impresoras.");
+        }
+        List<CompletableFuture<Resultado>> enCurso = new ArrayList<>(tramos.size());
+        for (int i = 0; i < tramos.size(); i++) enCurso.add(enviar(i, tramos.get(i)));
+        return enCurso.stream().map(CompletableFuture::join).toList();
+    }
+
+    public List<Estadisticas> estadisticas() {
+        return colas.stream().map(Cola::estadisticas).toList();
+    }
+
+    /** Deja de aceptar trabajos; los que ya estaban en cola se terminan de imprimir. */
+    @Override
+    public void close() {
+        colas.forEach(cola -> cola.executor.shutdown());
+    }
+
+    /** La cola de una impresora: un hilo propio y lo que lleva hecho. */
+    private final class Cola {
+        private final Destino destino;
+        private final ExecutorService executor;
+        private final LongAdder trabajos = new LongAdder();
+        private final LongAdder etiquetas = new LongAdder();
+        private final LongAdder errores = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final AtomicInteger enCola = new AtomicInteger();
+
+        Cola(Destino destino) {
+            this.destino = destino;
+            this.executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "impresora-" + destino.nombre());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        /** @param pendiente el trabajo que se sigue, o null si es uno nuevo */
+        CompletableFuture<Resultado> enviar(List<ZplLabel> labels, ZplSpool.Pendiente pendiente) {
+            if (labels.isEmpty()) {
+                return CompletableFuture.completedFuture(new Resultado(destino.nombre(), 0, Duration.ZERO, null));
+            }
+            enCola.incrementAndGet();
+            try {
+                return encolar(labels, pendiente);
+            } catch (RejectedExecutionException e) {
+                // El pool ya se cerró: no llegó a la impresora ni al spool, así que no cuenta como error suyo.
+                enCola.decrementAndGet();
+                return CompletableFuture.completedFuture(new Resultado(destino.nombre(), labels.size(), Duration.ZERO,
+                        new RejectedExecutionException("El pool de impresoras ya se cerró: el tramo no salió por "
+                                + destino.nombre() + ".", e)));
+            }
+        }
+
+        private CompletableFuture<Resultado> encolar(List<ZplLabel> labels, ZplSpool.Pendiente pendiente) {
+            return CompletableFuture.supplyAsync(() -> {
+                long inicio = System.nanoTime();
+                Exception error = null;
+                ZplSpool.Trabajo trabajo = pendiente != null ? spool.reanudar(pendiente)
+                        : spool.abrir(destino.nombre(), labels);
+                try {
+                    destino.imprimir(labels, trabajo);
+                    etiquetas.add(labels.size());
+                    trabajo.terminar();
+                } catch (Exception e) {
+                    errores.increment();
+                    error = e;
+                    trabajo.abandonar();
+                } finally {
+                    enCola.decrementAndGet();
+                }
+                long duracion = System.nanoTime() - inicio;
+                trabajos.increment();
+                nanos.add(duracion);
+                return new Resultado(destino.nombre(), labels.size(), Duration.ofNanos(duracion), error);
+            }, executor);
+        }
+
+        Estadisticas estadisticas() {
+            return new Estadisticas(destino.nombre(), trabajos.sum(), etiquetas.sum(), errores.sum(), enCola.get(),
+                    Duration.ofNanos(nanos.sum()));
+        }
+    }
+}
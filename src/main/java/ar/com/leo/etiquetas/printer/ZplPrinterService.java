@@ -5,27 +5,50 @@ import ar.com.leo.etiquetas.model.ZplLabel;
 import javax.print.*;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.Socket;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 public class ZplPrinterService {
 
     private static final int DEFAULT_ZPL_PORT = 9100;
+
+    private final ZplSocketSender socketSender;
+
+    public ZplPrinterService() {
+        this(new ZplSocketSender());
+    }
+
+    public ZplPrinterService(ZplSocketSender socketSender) {
+        this.socketSender = socketSender;
+    }
+
+    /** Las etiquetas salen hacia la impresora a medida que se copian; ver {@link ZplSocketSender}. */
+    public void printViaSocket(List<ZplLabel> labels, String host, int port, ZplSocketSender.Progreso progreso)
+            throws IOException {
+        socketSender.enviar(labels, host, port, progreso);
+    }
+
+    /** Con control de flujo en el {@link ZplSocketSender}, {@code monitor} recibe el estado de la impresora. */
+    public void printViaSocket(List<ZplLabel> labels, String host, int port, ZplSocketSender.Progreso progreso,
+                               ZplSocketSender.Monitor monitor) throws IOException {
+        socketSender.enviar(labels, host, port, progreso, monitor);
+    }
+
     public void printViaSocket(List<ZplLabel> labels, String host, int port) throws IOException {
-        String zplData = buildZplString(labels);
-        try (Socket socket = new Socket(host, port);
-             OutputStream out = socket.getOutputStream()) {
-            out.write(zplData.getBytes(StandardCharsets.UTF_8));
-            out.flush();
-        }
+        printViaSocket(labels, host, port, ZplSocketSender.Progreso.NINGUNO);
     }
 
     public void printViaSocket(List<ZplLabel> labels, String host) throws IOException {
         printViaSocket(labels, host, DEFAULT_ZPL_PORT);
     }
 
+    /** Como {@link #printViaPrintService(List, PrintService)}, avisando al final que salieron todas. */
+    public void printViaPrintService(List<ZplLabel> labels, PrintService printService,
+                                     ZplSocketSender.Progreso progreso) throws PrintException {
+        printViaPrintService(labels, printService);
+        progreso.enviada(labels.size(), labels.size());
+    }
+
     public void printViaPrintService(List<ZplLabel> labels, PrintService printService) throws PrintException {
         String zplData = buildZplString(labels);
         DocPrintJob job = printService.createPrintJob();
@@ -39,8 +62,9 @@ public class ZplPrinterService {
     private String buildZplString(List<ZplLabel> labels) {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < labels.size(); i++) {
-            sb.append(labels.get(i).rawZpl());
-            if (!labels.get(i).rawZpl().endsWith("\n")) {
+            String zpl = labels.get(i).rawZpl();
+            sb.append(zpl);
+            if (!zpl.endsWith("\n")) {
                 sb.append("\n");
             }
         }
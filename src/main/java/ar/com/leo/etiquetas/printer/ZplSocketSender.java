@@ -0,0 +1,449 @@
+package ar.com.leo.etiquetas.printer;
+
+import ar.com.leo.AppLogger;
+import ar.com.leo.etiquetas.model.ZplLabel;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Manda las etiquetas a una Zebra por el puerto raw (9100) a medida que las va copiando, de a
+ * tramos del tamaño del buffer. La primera etiqueta sale sola, apenas se conecta, para que la
+ * impresora arranque sin esperar a que se arme el resto del lote.
+ *
+ * El ZPL se copia tal cual está en el lote, que ya son bytes UTF-8: no se arma ningún String ni
+ * arreglo con todo el lote. El buffer es directo y se reusa de un envío al otro.
+ *
+ * El canal no bloquea y la espera de cada paso tiene un límite, así que una impresora apagada o
+ * trabada da un {@link SocketTimeoutException} en lugar de dejar el hilo colgado.
+ *
+ * Con {@link Opciones#conControlDeFlujo control de flujo}, antes de cada tramo se le pregunta a la
+ * impresora su estado con {@code ~HS}. Si tiene el buffer lleno, el cabezal abierto, se quedó sin
+ * papel o está en pausa, se espera y se vuelve a preguntar hasta que pueda recibir, y el envío
+ * sigue solo. Si pasa la espera máxima se corta como cualquier otro error, y lo que faltaba queda
+ * para reanudar. Sin esto la Zebra acepta por TCP lo que le manden aunque no lo pueda imprimir, y
+ * un corte a mitad de lote se lleva todo lo que estaba encolado.
+ *
+ * Con {@link Opciones#conFormatosGuardados formatos guardados}, lo que el inyector agrega a cada
+ * etiqueta se guarda una vez en la impresora y cada etiqueta manda solo sus datos; ver
+ * {@link ZplFormatosGuardados}. Se compacta de a una etiqueta mientras se copia, y cada formato se
+ * define antes de la primera que lo usa. Con el primero se pide el listado con {@code ^HW}, sin
+ * esperarlo: las etiquetas siguen saliendo enteras hasta que llega, y desde ahí salen compactadas.
+ * Si la impresora no contesta o no los tiene, todo el envío va entero. Si contestó sin ellos no se
+ * le vuelve a probar; si no contestó, se prueba en el envío siguiente; si los tenía, en los
+ * envíos siguientes no se pregunta más.
+ */
+public final class ZplSocketSender {
+
+    /**
+     * @param conexion  cuánto esperar a que la impresora acepte la conexión
+     * @param escritura cuánto esperar a que la impresora reciba un tramo; si deja de leer más que
+     *                  esto se corta el envío
+     * @param buffer    el tamaño de cada tramo, en bytes
+     * @param consultaEstado cada cuánto volver a preguntar el estado mientras la impresora no
+     *                  puede recibir; null para mandar sin preguntar
+     * @param esperaMaxima cuánto esperar, como mucho, a que la impresora pueda recibir; pasado
+     *                  eso se corta el envío y lo que falta queda pendiente
+     * @param formatosGuardados si se guarda lo inyectado en la impresora con {@code ^DF}
+     */
+    public record Opciones(Duration conexion, Duration escritura, boolean tcpNoDelay, boolean keepAlive, int buffer,
+                           Duration consultaEstado, Duration esperaMaxima, boolean formatosGuardados) {
+
+        public static final Opciones DEFAULT = new Opciones(Duration.ofSeconds(5), Duration.ofSeconds(30),
+                true, true, 64 * 1024);
+
+        public Opciones {
+            if (buffer < 1024) throw new IllegalArgumentException("El buffer tiene que ser de 1 KB o más: " + buffer);
+            if (consultaEstado != null && esperaMaxima == null) {
+                throw new IllegalArgumentException("El control de flujo necesita una espera máxima.");
+            }
+        }
+
+        public Opciones(Duration conexion, Duration escritura, boolean tcpNoDelay, boolean keepAlive, int buffer) {
+            this(conexion, escritura, tcpNoDelay, keepAlive, buffer, null, null, false);
+        }
+
+        /**
+         * Las mismas opciones, preguntando el estado antes de cada tramo y esperando hasta
+         * {@code esperaMaxima} a que la impresora pueda recibir.
+         */
+        public Opciones conControlDeFlujo(Duration consultaEstado, Duration esperaMaxima) {
+            return new Opciones(conexion, escritura, tcpNoDelay, keepAlive, buffer, consultaEstado, esperaMaxima,
+                    formatosGuardados);
+        }
+
+        /** Las mismas opciones, guardando lo inyectado en la impresora. */
+        public Opciones conFormatosGuardados() {
+            return new Opciones(conexion, escritura, tcpNoDelay, keepAlive, buffer, consultaEstado, esperaMaxima, true);
+        }
+    }
+
+    /**
+     * Cuántas etiquetas del envío ya salieron, desde el hilo que envía. Por socket, sin control de
+     * flujo, se avisa cada una apenas se termina de escribir en el canal; con control de flujo,
+     * cuando la impresora dice que ya no la tiene en el buffer. Por javax.print, todas juntas cuando
+     * el sistema acepta el trabajo.
+     */
+    @FunctionalInterface
+    public interface Progreso {
+        Progreso NINGUNO = (enviadas, total) -> {
+        };
+
+        void enviada(int enviadas, int total);
+    }
+
+    /**
+     * El estado de la impresora cada vez que cambia, desde el hilo que envía. Solo se usa con
+     * control de flujo; el primer aviso es el estado con que se la encontró.
+     */
+    @FunctionalInterface
+    public interface Monitor {
+        Monitor NINGUNO = estado -> {
+        };
+
+        void estado(ZebraEstado estado);
+    }
+
+    private static final byte[] CONSULTA_ESTADO = "~HS".getBytes(StandardCharsets.US_ASCII);
+    private static final char STX = 0x02;
+    private static final char ETX = 0x03;
+    /** Cuánto esperar el listado del ^HW: una impresora que no lo entiende no contesta nada. */
+    private static final Duration ESPERA_LISTADO = Duration.ofSeconds(3);
+
+    private final Opciones opciones;
+    private final AtomicReference<ByteBuffer> libre = new AtomicReference<>();
+    /** Por "host:puerto", si la impresora guardó los formatos la última vez que se probó. */
+    private final Map<String, Boolean> guardaFormatos = new ConcurrentHashMap<>();
+
+    public ZplSocketSender() {
+        this(Opciones.DEFAULT);
+    }
+
+    public ZplSocketSender(Opciones opciones) {
+        this.opciones = opciones;
+    }
+
+    public void enviar(List<ZplLabel> labels, String host, int port, Progreso progreso) throws IOException {
+        enviar(labels, host, port, progreso, Monitor.NINGUNO);
+    }
+
+    /** @param monitor a quién avisarle el estado de la impresora, si hay control de flujo */
+    public void enviar(List<ZplLabel> labels, String host, int port, Progreso progreso, Monitor monitor)
+            throws IOException {
+        InetSocketAddress direccion = new InetSocketAddress(host, port);
+        if (direccion.isUnresolved()) throw new UnknownHostException(host);
+
+        ByteBuffer buffer = tomarBuffer();
+        try (Selector selector = Selector.open();
+             SocketChannel canal = SocketChannel.open()) {
+            canal.configureBlocking(false);
+            canal.setOption(StandardSocketOptions.TCP_NODELAY, opciones.tcpNoDelay());
+            canal.setOption(StandardSocketOptions.SO_KEEPALIVE, opciones.keepAlive());
+            Envio envio = new Envio(canal, canal.register(selector, 0), selector, buffer, labels.size(), progreso,
+                    monitor, host + ":" + port);
+            envio.conectar(direccion);
+            for (ZplLabel label : labels) {
+                // La primera sale entera y sola: no espera a que se defina ni se confirme ningún formato.
+                ZplFormatosGuardados.Compactada compacta = envio.copiadas > 0 ? envio.compactar(label) : null;
+                if (compacta != null) {
+                    envio.copiar(compacta.zpl());
+                } else {
+                    int largo = label.largoZpl();
+                    int desde = 0;
+                    while (desde < largo) {
+                        if (!buffer.hasRemaining()) envio.vaciar();
+                        desde += label.copiarZpl(desde, buffer);
+                    }
+                }
+                if (!label.terminaEnSaltoDeLinea()) {
+                    if (!buffer.hasRemaining()) envio.vaciar();
+                    buffer.put((byte) '\n');
+                }
+                envio.copiada();
+                if (envio.copiadas == 1) envio.vaciar();
+            }
+            envio.vaciar();
+        } finally {
+            buffer.clear();
+            libre.set(buffer);
+        }
+    }
+
+    /**
+     * Un envío en curso: el canal, el buffer, cuántas etiquetas se copiaron y se avisaron, y lo
+     * que va contestando la impresora.
+     */
+    private final class Envio {
+        private final SocketChannel canal;
+        private final SelectionKey key;
+        private final Selector selector;
+        private final ByteBuffer buffer;
+        private final int total;
+        private final Progreso progreso;
+        private final Monitor monitor;
+        private final String impresora;
+        private int copiadas;
+        private int avisadas;
+        private ZebraEstado ultimoEstado;
+        /**
+         * Con control de flujo, el número de formato ({@code ^XA...^XZ}) de cada etiqueta copiada,
+         * contando las definiciones y el {@code ^HW}: es lo que la impresora cuenta en su buffer.
+         */
+        private final int[] formatoDeEtiqueta;
+        private int formatosCopiados;
+        /** Los formatos que ya se escribieron enteros en el canal. */
+        private int formatosEscritos;
+
+        /** {@code null} si no se usan formatos guardados o la impresora no los acepta. */
+        private ZplFormatosGuardados.Compactador compactador;
+        /** Si ya se sabe que la impresora guarda los formatos y se le pueden mandar compactadas. */
+        private boolean confirmados;
+        /** El formato por el que se preguntó con {@code ^HW}, mientras no llega el listado. */
+        private String consultado;
+        private long listadoHasta;
+        private String listado;
+
+        /** Lo que contesta la impresora, separado en los bloques entre STX y ETX. */
+        private final ByteBuffer lectura = ByteBuffer.allocate(256);
+        private final StringBuilder bloque = new StringBuilder();
+        private final ArrayDeque<String> renglonesEstado = new ArrayDeque<>();
+
+        Envio(SocketChannel canal, SelectionKey key, Selector selector, ByteBuffer buffer, int total,
+              Progreso progreso, Monitor monitor, String impresora) {
+            this.canal = canal;
+            this.key = key;
+            this.selector = selector;
+            this.buffer = buffer;
+            this.total = total;
+            this.progreso = progreso;
+            this.monitor = monitor;
+            this.impresora = impresora;
+            this.formatoDeEtiqueta = opciones.consultaEstado() != null ? new int[total] : null;
+            Boolean guarda = guardaFormatos.get(impresora);
+            if (opciones.formatosGuardados() && !Boolean.FALSE.equals(guarda)) {
+                compactador = new ZplFormatosGuardados.Compactador();
+                confirmados = Boolean.TRUE.equals(guarda);
+            }
+        }
+
+        void conectar(InetSocketAddress direccion) throws IOException {
+            if (canal.connect(direccion)) return;
+            key.interestOps(SelectionKey.OP_CONNECT);
+            long hasta = System.nanoTime() + opciones.conexion().toNanos();
+            while (!canal.finishConnect()) {
+                esperar(selector, hasta, "La impresora " + direccion + " no aceptó la conexión en "
+                        + opciones.conexion().toMillis() + " ms");
+            }
+        }
+
+        /** Una etiqueta más quedó entera en el buffer. */
+        void copiada() {
+            formatosCopiados++;
+            if (formatoDeEtiqueta != null) formatoDeEtiqueta[copiadas] = formatosCopiados;
+            copiadas++;
+        }
+
+        /**
+         * Escribe lo que hay en el buffer y avisa, una por una, las etiquetas que salieron. Sin
+         * control de flujo salieron las que se terminaron de escribir; con control de flujo, las
+         * que la impresora ya sacó de su buffer según el {@code ~HS}.
+         */
+        void vaciar() throws IOException {
+            if (opciones.consultaEstado() != null) {
+                esperarQuePuedaRecibir();
+                avisarImpresas();
+            }
+            buffer.flip();
+            escribir(buffer);
+            buffer.clear();
+            formatosEscritos = formatosCopiados;
+            if (opciones.consultaEstado() == null) {
+                while (avisadas < copiadas) progreso.enviada(++avisadas, total);
+            }
+        }
+
+        /**
+         * El {@code ~HS} se atiende apenas llega, así que cuando contesta ya recibió todo lo escrito
+         * antes: de eso, lo que no está en el buffer ya se imprimió, salvo el formato que todavía
+         * tiene etiquetas por imprimir.
+         */
+        private void avisarImpresas() {
+            int procesados = formatosEscritos - ultimoEstado.formatosEnBuffer()
+                    - (ultimoEstado.etiquetasRestantes() > 0 ? 1 : 0);
+            while (avisadas < copiadas && formatoDeEtiqueta[avisadas] <= procesados) {
+                progreso.enviada(++avisadas, total);
+            }
+        }
+
+        private void escribir(ByteBuffer datos) throws IOException {
+            key.interestOps(SelectionKey.OP_WRITE);
+            long hasta = System.nanoTime() + opciones.escritura().toNanos();
+            while (datos.hasRemaining()) {
+                if (canal.write(datos) > 0) {
+                    hasta = System.nanoTime() + opciones.escritura().toNanos();
+                } else {
+                    esperar(selector, hasta, "La impresora dejó de recibir datos por más de "
+                            + opciones.escritura().toMillis() + " ms");
+                }
+            }
+        }
+
+        /** Pregunta el estado hasta que la impresora pueda recibir, avisando cada cambio. */
+        private void esperarQuePuedaRecibir() throws IOException {
+            long hasta = System.nanoTime() + opciones.esperaMaxima().toNanos();
+            while (true) {
+                ZebraEstado estado = consultarEstado();
+                if (!estado.equals(ultimoEstado)) monitor.estado(estado);
+                ultimoEstado = estado;
+                if (estado.puedeRecibir()) return;
+                if (System.nanoTime() - hasta >= 0) {
+                    throw new SocketTimeoutException("La impresora no pudo recibir etiquetas en "
+                            + opciones.esperaMaxima().toMillis() + " ms (" + estado.resumen() + ").");
+                }
+                try {
+                    Thread.sleep(opciones.consultaEstado());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Se canceló la impresión esperando a la impresora ("
+                            + estado.motivo() + ").");
+                }
+            }
+        }
+
+        /** Manda {@code ~HS} y espera los tres renglones de la respuesta. */
+        private ZebraEstado consultarEstado() throws IOException {
+            escribir(ByteBuffer.wrap(CONSULTA_ESTADO));
+            key.interestOps(SelectionKey.OP_READ);
+            long hasta = System.nanoTime() + opciones.escritura().toNanos();
+            while (true) {
+                if (!leerLoQueLlego()) throw new EOFException("La impresora cerró la conexión sin contestar.");
+                if (renglonesEstado.size() >= 3) break;
+                esperar(selector, hasta, "La impresora no contestó el estado en " + opciones.escritura().toMillis()
+                        + " ms");
+            }
+            StringBuilder respuesta = new StringBuilder();
+            for (int i = 0; i < 3; i++) respuesta.append(STX).append(renglonesEstado.poll()).append(ETX);
+            try {
+                return ZebraEstado.leer(respuesta);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        /**
+         * La etiqueta compactada si ya se sabe que la impresora tiene su formato, o {@code null} para
+         * mandarla entera. Cada formato se define antes de la primera etiqueta que lo usa; con el
+         * primero se pregunta con {@code ^HW} si quedó guardado, y mientras no llega el listado las
+         * etiquetas siguen saliendo enteras.
+         */
+        ZplFormatosGuardados.Compactada compactar(ZplLabel label) throws IOException {
+            if (consultado != null) revisarListado();
+            if (compactador == null) return null;
+            ZplFormatosGuardados.Compactada compacta = compactador.compactar(label);
+            if (compacta == null) return null;
+            if (compacta.definicion() != null) {
+                copiar(compacta.definicion());
+                formatosCopiados++;
+                if (!confirmados && consultado == null) {
+                    copiar(ZplFormatosGuardados.consultaDirectorio());
+                    formatosCopiados++;
+                    consultado = compacta.formato();
+                    Duration espera = opciones.escritura().compareTo(ESPERA_LISTADO) < 0
+                            ? opciones.escritura() : ESPERA_LISTADO;
+                    listadoHasta = System.nanoTime() + espera.toNanos();
+                    vaciar();
+                }
+            }
+            return confirmados ? compacta : null;
+        }
+
+        /** Si llegó el listado del {@code ^HW}, o si ya no se lo espera, decide cómo siguen las etiquetas. */
+        private void revisarListado() throws IOException {
+            leerLoQueLlego();
+            if (listado != null) {
+                boolean guarda = ZplFormatosGuardados.estanTodos(listado, List.of(consultado));
+                guardaFormatos.put(impresora, guarda);
+                consultado = null;
+                confirmados = guarda;
+                if (guarda) return;
+                compactador = null;
+                AppLogger.warn("IMPRESION - " + impresora + " no guarda formatos (^DF/^XF): se le manda el ZPL entero.");
+            } else if (System.nanoTime() - listadoHasta >= 0) {
+                // Puede que no entienda el ^HW o que esté ocupada: se vuelve a probar en el próximo envío.
+                consultado = null;
+                compactador = null;
+                AppLogger.warn("IMPRESION - " + impresora + " no contestó el listado de formatos (^HW): "
+                        + "se le manda el ZPL entero.");
+            }
+        }
+
+        /** Copia texto al buffer, vaciándolo cuando se llena. */
+        void copiar(String zpl) throws IOException {
+            byte[] bytes = zpl.getBytes(StandardCharsets.UTF_8);
+            int desde = 0;
+            while (desde < bytes.length) {
+                if (!buffer.hasRemaining()) vaciar();
+                int tramo = Math.min(buffer.remaining(), bytes.length - desde);
+                buffer.put(bytes, desde, tramo);
+                desde += tramo;
+            }
+        }
+
+        /**
+         * Lee sin esperar lo que haya llegado y reparte los bloques completos: el listado del
+         * {@code ^HW} —el único que trae "DIR"— o un renglón del {@code ~HS}. Un listado que ya no se
+         * espera se descarta. Devuelve {@code false} si la impresora cerró la conexión.
+         */
+        private boolean leerLoQueLlego() throws IOException {
+            int leidos;
+            while ((leidos = canal.read(lectura)) > 0) {
+                lectura.flip();
+                while (lectura.hasRemaining()) {
+                    char c = (char) (lectura.get() & 0xFF);
+                    if (c == STX) {
+                        bloque.setLength(0);
+                    } else if (c != ETX) {
+                        bloque.append(c);
+                    } else if (bloque.indexOf("DIR") >= 0) {
+                        if (consultado != null) listado = bloque.toString();
+                    } else {
+                        renglonesEstado.add(bloque.toString());
+                    }
+                }
+                lectura.clear();
+            }
+            return leidos == 0;
+        }
+    }
+
+    private static void esperar(Selector selector, long hasta, String mensaje) throws IOException {
+        long faltan = hasta - System.nanoTime();
+        // select(0) espera para siempre: con menos de un milisegundo ya se venció.
+        if (faltan < 1_000_000 || selector.select(faltan / 1_000_000) == 0 && System.nanoTime() >= hasta) {
+            throw new SocketTimeoutException(mensaje + ".");
+        }
+        selector.selectedKeys().clear();
+    }
+
+    private ByteBuffer tomarBuffer() {
+        ByteBuffer buffer = libre.getAndSet(null);
+        if (buffer != null && buffer.capacity() == opciones.buffer()) return buffer;
+        return ByteBuffer.allocateDirect(opciones.buffer());
+    }
+}
@@ -0,0 +1,310 @@
+package ar.com.leo.etiquetas.printer;
+
+import ar.com.leo.AppLogger;
+import ar.com.leo.etiquetas.model.ZplLabel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * El registro de lo que se mandó a imprimir, en un archivo junto al jar al que solo se le agregan
+ * líneas. Antes de mandar un tramo se anotan todas sus etiquetas; después, a medida que salen,
+ * cuántas van; y al final, que terminó. Si la app o la impresora se caen a mitad de un lote, al
+ * volver a abrir quedan los {@link Pendiente trabajos sin terminar} con las etiquetas que faltan,
+ * y se sigue desde la primera que no salió en lugar de reimprimir la zona entera.
+ *
+ * Qué quiere decir que una etiqueta salió depende del camino:
+ * <ul>
+ *   <li>Por socket con control de flujo, que la impresora ya la sacó de su buffer según el
+ *   {@code ~HS}: lo que esté en camino o esperando en la impresora al caerse se reimprime al
+ *   reanudar, y como mucho sale repetida alguna que sí llegó a imprimirse.</li>
+ *   <li>Por socket sin control de flujo, que se terminó de escribir en el canal. Eso es cuando el
+ *   sistema la aceptó, no cuando llegó: lo que estaba en el buffer del sistema, en la red o en el
+ *   de la impresora al apagarse se pierde y al reanudar no se vuelve a mandar.</li>
+ *   <li>Por javax.print el tramo entero se anota cuando el sistema lo aceptó: lo que pase después
+ *   en la cola de Windows ya no se ve.</li>
+ * </ul>
+ *
+ * Una línea cortada por la caída —la última, sin salto de línea— se descarta. Las líneas de las
+ * etiquetas se fuerzan a disco antes de mandar nada, así que un trabajo que figura en el registro
+ * siempre tiene todas sus etiquetas. Si no se puede escribir se avisa y se imprime igual: el
+ * registro ayuda a reanudar, pero no puede frenar la impresión.
+ *
+ * Lo usan a la vez los hilos de todas las impresoras del pool.
+ */
+public final class ZplSpool {
+
+    private static final String INICIO = "I";
+    private static final String ETIQUETA = "E";
+    private static final String ENVIADAS = "S";
+    private static final String FIN = "F";
+
+    /**
+     * Un trabajo que no terminó: {@code enviadas} de {@code total} etiquetas ya salieron y
+     * {@code faltan} son las que siguen, en orden.
+     */
+    public record Pendiente(String id, String impresora, int total, int enviadas, List<ZplLabel> faltan) {
+    }
+
+    private final Path archivo;
+    private final AtomicInteger siguiente = new AtomicInteger();
+    /** Abierto mientras haya trabajos en curso, para no abrir el archivo en cada etiqueta. */
+    private FileChannel canal;
+    private int abiertos;
+
+    /** @param archivo dónde va el registro; null para no registrar nada */
+    public ZplSpool(Path archivo) {
+        this.archivo = archivo;
+    }
+
+    /** Anota las etiquetas de un tramo antes de mandarlo. */
+    public Trabajo abrir(String impresora, List<ZplLabel> labels) {
+        String id = Long.toString(System.currentTimeMillis(), 36) + "-" + siguiente.incrementAndGet();
+        StringBuilder lineas = new StringBuilder();
+        linea(lineas, INICIO, id, texto(impresora), Integer.toString(labels.size()));
+        for (int i = 0; i < labels.size(); i++) {
+            ZplLabel label = labels.get(i);
+            linea(lineas, ETIQUETA, id, Integer.toString(i), texto(label.sku() != null ? label.sku() : ""),
+                    texto(label.rawZpl()));
+        }
+        synchronized (this) {
+            boolean anotado = escribir(lineas, true);
+            abiertos++;
+            return new Trabajo(anotado ? id : null, 0);
+        }
+    }
+
+    /** Sigue un trabajo pendiente: lo que salga ahora se suma a lo que ya había salido. */
+    public synchronized Trabajo reanudar(Pendiente pendiente) {
+        abiertos++;
+        return new Trabajo(pendiente.id(), pendiente.enviadas());
+    }
+
+    /** Da por terminado un pendiente que no se va a reanudar. */
+    public synchronized void descartar(Pendiente pendiente) {
+        StringBuilder lineas = new StringBuilder();
+        linea(lineas, FIN, pendiente.id());
+        escribir(lineas, true);
+        if (abiertos == 0) soltarArchivo();
+    }
+
+    /** Los trabajos sin terminar, en el orden en que se abrieron. */
+    public synchronized List<Pendiente> pendientes() {
+        if (archivo == null || !Files.isRegularFile(archivo)) return List.of();
+        Map<String, Leido> trabajos = leer();
+        return trabajos != null ? pendientes(trabajos) : List.of();
+    }
+
+    private static List<Pendiente> pendientes(Map<String, Leido> trabajos) {
+        List<Pendiente> pendientes = new ArrayList<>();
+        for (var entry : trabajos.entrySet()) {
+            Leido leido = entry.getValue();
+            if (leido.terminado || leido.labels.size() != leido.total || leido.enviadas >= leido.total) continue;
+            pendientes.add(new Pendiente(entry.getKey(), leido.impresora, leido.total, leido.enviadas,
+                    List.copyOf(leido.labels.subList(leido.enviadas, leido.total))));
+        }
+        return pendientes;
+    }
+
+    /**
+     * Reescribe el registro dejando solo los trabajos sin terminar. Se llama sola cuando no queda
+     * ningún trabajo abierto, para que el archivo no crezca con cada lote; con trabajos en curso
+     * no hace nada. Si el registro no se pudo leer tampoco: reescribirlo con lo que se entendió
+     * borraría los pendientes que tiene.
+     */
+    public synchronized void compactar() {
+        // Con trabajos en curso el archivo está abierto y todavía crece.
+        if (abiertos > 0 || archivo == null || !Files.isRegularFile(archivo)) return;
+        Map<String, Leido> trabajos = leer();
+        if (trabajos == null) return;
+        List<Pendiente> pendientes = pendientes(trabajos);
+        StringBuilder lineas = new StringBuilder();
+        for (Pendiente pendiente : pendientes) {
+            linea(lineas, INICIO, pendiente.id(), texto(pendiente.impresora()), Integer.toString(pendiente.total()));
+            // Las que ya salieron no se vuelven a necesitar, pero el índice de las que faltan se mantiene.
+            for (int i = 0; i < pendiente.enviadas(); i++) {
+                linea(lineas, ETIQUETA, pendiente.id(), Integer.toString(i), "", "");
+            }
+            for (int i = 0; i < pendiente.faltan().size(); i++) {
+                ZplLabel label = pendiente.faltan().get(i);
+                linea(lineas, ETIQUETA, pendiente.id(), Integer.toString(pendiente.enviadas() + i),
+                        texto(label.sku()), texto(label.rawZpl()));
+            }
+            linea(lineas, ENVIADAS, pendiente.id(), Integer.toString(pendiente.enviadas()));
+        }
+        Path temporal = null;
+        try {
+            temporal = Files.createTempFile(archivo.toAbsolutePath().getParent(), archivo.getFileName().toString(), ".tmp");
+            Files.writeString(temporal, lineas, StandardCharsets.UTF_8);
+            Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            AppLogger.warn("IMPRESION - No se pudo compactar el registro " + archivo.getFileName() + ": " + e.getMessage());
+            try {
+                if (temporal != null) Files.deleteIfExists(temporal);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Un tramo en curso. Es el {@link ZplSocketSender.Progreso} del envío: cada aviso anota cuántas
+     * etiquetas del tramo ya salieron.
+     */
+    public final class Trabajo implements ZplSocketSender.Progreso {
+        /** Null si no se pudo anotar: se imprime igual, sin registro. */
+        private final String id;
+        private final int yaEnviadas;
+        private boolean cerrado;
+
+        private Trabajo(String id, int yaEnviadas) {
+            this.id = id;
+            this.yaEnviadas = yaEnviadas;
+        }
+
+        @Override
+        public void enviada(int enviadas, int total) {
+            if (id == null) return;
+            StringBuilder lineas = new StringBuilder();
+            linea(lineas, ENVIADAS, id, Integer.toString(yaEnviadas + enviadas));
+            synchronized (ZplSpool.this) {
+                escribir(lineas, false);
+            }
+        }
+
+        /** El tramo salió entero. */
+        public void terminar() {
+            StringBuilder lineas = new StringBuilder();
+            if (id != null) linea(lineas, FIN, id);
+            cerrar(lineas);
+        }
+
+        /** El tramo no terminó de salir: queda pendiente para reanudarlo. */
+        public void abandonar() {
+            cerrar(new StringBuilder());
+        }
+
+        private void cerrar(StringBuilder lineas) {
+            synchronized (ZplSpool.this) {
+                if (cerrado) return;
+                cerrado = true;
+                if (!lineas.isEmpty()) escribir(lineas, true);
+                if (--abiertos == 0) {
+                    soltarArchivo();
+                    compactar();
+                }
+            }
+        }
+    }
+
+    /** Lo leído del registro para un trabajo. */
+    private static final class Leido {
+        private String impresora = "";
+        private int total;
+        private int enviadas;
+        private boolean terminado;
+        private final List<ZplLabel> labels = new ArrayList<>();
+    }
+
+    /** Los trabajos del registro, o null si no se pudo leer: no es lo mismo que un registro vacío. */
+    private Map<String, Leido> leer() {
+        String contenido;
+        try {
+            contenido = Files.readString(archivo, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            AppLogger.warn("IMPRESION - No se pudo leer el registro " + archivo.getFileName() + ": " + e.getMessage());
+            return null;
+        }
+        Map<String, Leido> trabajos = new LinkedHashMap<>();
+        int desde = 0;
+        int fin;
+        // Lo que queda después del último salto de línea es una línea cortada por la caída.
+        while ((fin = contenido.indexOf('\n', desde)) >= 0) {
+            String[] campos = contenido.substring(desde, fin).split("\t", -1);
+            desde = fin + 1;
+            try {
+                aplicar(trabajos, campos);
+            } catch (RuntimeException e) {
+                AppLogger.warn("IMPRESION - Línea del registro que no se entiende: " + String.join(" ", campos));
+            }
+        }
+        return trabajos;
+    }
+
+    private static void aplicar(Map<String, Leido> trabajos, String[] campos) {
+        switch (campos[0]) {
+            case INICIO -> {
+                Leido leido = new Leido();
+                leido.impresora = deTexto(campos[2]);
+                leido.total = Integer.parseInt(campos[3]);
+                trabajos.put(campos[1], leido);
+            }
+            case ETIQUETA -> {
+                Leido leido = trabajos.get(campos[1]);
+                if (leido == null || Integer.parseInt(campos[2]) != leido.labels.size()) return;
+                leido.labels.add(new ZplLabel(deTexto(campos[4]), deTexto(campos[3]), "", ""));
+            }
+            case ENVIADAS -> {
+                Leido leido = trabajos.get(campos[1]);
+                if (leido != null) leido.enviadas = Math.max(leido.enviadas, Integer.parseInt(campos[2]));
+            }
+            case FIN -> {
+                Leido leido = trabajos.get(campos[1]);
+                if (leido != null) leido.terminado = true;
+            }
+            default -> throw new IllegalArgumentException(campos[0]);
+        }
+    }
+
+    /** Devuelve false si no se pudo escribir. */
+    private boolean escribir(CharSequence lineas, boolean forzar) {
+        if (archivo == null) return false;
+        try {
+            if (canal == null) {
+                canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+            }
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(lineas.toString());
+            while (bytes.hasRemaining()) canal.write(bytes);
+            if (forzar) canal.force(false);
+            return true;
+        } catch (IOException e) {
+            AppLogger.warn("IMPRESION - No se pudo escribir el registro " + archivo.getFileName() + ": " + e.getMessage());
+            soltarArchivo();
+            return false;
+        }
+    }
+
+    private void soltarArchivo() {
+        if (canal == null) return;
+        try {
+            canal.close();
+        } catch (IOException ignored) {
+        }
+        canal = null;
+    }
+
+    private static void linea(StringBuilder lineas, String... campos) {
+        lineas.append(String.join("\t", campos)).append('\n');
+    }
+
+    /** El texto libre va en Base64: el ZPL tiene saltos de línea y el nombre puede tener tabs. */
+    private static String texto(String texto) {
+        return Base64.getEncoder().encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String deTexto(String base64) {
+        return new String(Base64.getDecoder().decode(base64), StandardCharsets.UTF_8);
+    }
+}
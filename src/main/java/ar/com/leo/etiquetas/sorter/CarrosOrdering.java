@@ -1,6 +1,6 @@
 package ar.com.leo.etiquetas.sorter;
 
-import java.util.Arrays;
+import ar.com.leo.etiquetas.model.ZplLabel;
 
 /**
  * Lógica de sub-ordenamiento de carros por cantidad de SKUs distintos.
@@ -13,12 +13,7 @@ public final class CarrosOrdering {
 
     /** Cuenta códigos SKU distintos no-blancos separados por '\n'. */
     public static int distinctSkuCount(String skuMultiline) {
-        if (skuMultiline == null || skuMultiline.isBlank()) return 0;
-        return (int) Arrays.stream(skuMultiline.split("\n"))
-                .map(String::trim)
-                .filter(s -> !s.isEmpty())
-                .distinct()
-                .count();
+        return ZplLabel.distinctSkus(skuMultiline).size();
     }
 
     /**
@@ -27,6 +22,12 @@ public final class CarrosOrdering {
      */
     public static int bucket(String zone, String skuMultiline) {
         if (!"CARROS".equals(zone)) return 0;
-        return distinctSkuCount(skuMultiline) <= 2 ? 0 : 1;
+        return bucket(zone, distinctSkuCount(skuMultiline));
+    }
+
+    /** Lo mismo, con la cantidad de SKU distintos ya contada ({@link ZplLabel#distinctSkuCount()}). */
+    public static int bucket(String zone, int distinctSkus) {
+        if (!"CARROS".equals(zone)) return 0;
+        return distinctSkus <= 2 ? 0 : 1;
     }
 }
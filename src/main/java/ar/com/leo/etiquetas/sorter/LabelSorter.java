@@ -6,107 +6,379 @@ import ar.com.leo.etiquetas.model.SortedLabelGroup;
 import ar.com.leo.etiquetas.model.ZplLabel;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class LabelSorter {
 
     private static final String UNKNOWN = "???";
 
-    private int zoneGroupPriority(String zone) {
-        String z = zone.toUpperCase();
-        if (z.startsWith("J")) return 0;
-        if (z.startsWith("TURBOS")) return 4;
-        if (z.startsWith("T")) return 1;
-        if (z.startsWith("COMBOS")) return 2;
-        if (z.startsWith("CARROS")) return 3;
-        if (z.startsWith("RETIROS")) return 5;
-        return Integer.MAX_VALUE;
-    }
+    /** Prioridad de zona, zona, bucket de CARROS y SKU numérico, en ese orden. */
+    private static final Comparator<ClaveOrden> ORDEN = Comparator
+            .comparingInt(ClaveOrden::prioridad)
+            .thenComparing(ClaveOrden::zonaMayusculas)
+            .thenComparingInt(ClaveOrden::bucketCarros)
+            .thenComparingLong(ClaveOrden::skuNumerico);
 
-    public SortResult sort(List<ZplLabel> labels, Map<String, String> skuToZone) {
-        Map<String, List<ZplLabel>> grouped = labels.stream()
-                .collect(Collectors.groupingBy(
-                        l -> resolveZoneForLabel(l, skuToZone) + "|" + (l.sku() != null ? l.sku() : ""),
-                        LinkedHashMap::new,
-                        Collectors.toList()));
-
-        List<SortedLabelGroup> groups = grouped.entrySet().stream()
-                .map(entry -> {
-                    String[] parts = entry.getKey().split("\\|", 2);
-                    String zone = parts[0];
-                    String sku = parts.length > 1 ? parts[1] : "";
-                    String desc = entry.getValue().stream()
-                            .map(ZplLabel::productDescription)
-                            .filter(Objects::nonNull)
-                            .findFirst()
-                            .orElse("");
-                    String details = entry.getValue().stream()
-                            .map(ZplLabel::details)
-                            .filter(Objects::nonNull)
-                            .findFirst()
-                            .orElse("");
-                    return new SortedLabelGroup(zone, sku, desc, details, entry.getValue());
-                })
-                .sorted(Comparator
-                        .<SortedLabelGroup>comparingInt(g -> zoneGroupPriority(g.zone()))
-                        .thenComparing(g -> g.zone().toUpperCase())
-                        .thenComparingInt(g -> CarrosOrdering.bucket(g.zone(), g.sku()))
-                        .thenComparing(g -> {
-                            try {
-                                return Long.parseLong(g.sku());
-                            } catch (NumberFormatException e) {
-                                return Long.MAX_VALUE;
-                            }
-                        }))
-                .toList();
-
-        LabelStatistics stats = buildStatistics(labels, skuToZone);
-        return new SortResult(groups, stats);
-    }
+    /** Cuántos grupos tiene cada tramo del acumulado al llenarlo; se parte al llegar al doble. */
+    private static final int GRUPOS_POR_TRAMO = 64;
 
-    private String resolveZoneForLabel(ZplLabel label, Map<String, String> skuToZone) {
-        if (label.turbo()) return "TURBOS";
-        return resolveZone(label.sku(), skuToZone);
+    private final ZonePriorities zonePriorities;
+    /** Lo que armó el último {@link #merge}, para seguir sumándole. */
+    private Acumulado ultimo;
+    private long comparaciones;
+
+    public LabelSorter() {
+        this(ZonePriorities.DEFAULT);
     }
 
-    private String resolveZone(String sku, Map<String, String> skuToZone) {
-        if (sku == null || sku.isEmpty()) {
-            return UNKNOWN;
-        }
-        if (sku.contains("\n")) {
-            // CARROS solo si hay 2+ SKUs distintos
-            long distinct = Arrays.stream(sku.split("\n"))
-                    .filter(s -> !s.isBlank())
-                    .distinct()
-                    .count();
-            if (distinct > 1) return "CARROS";
-            // Si todos son el mismo SKU, resolver como SKU individual
-            String singleSku = sku.split("\n")[0].trim();
-            return skuToZone.getOrDefault(singleSku, UNKNOWN);
-        }
-        return skuToZone.getOrDefault(sku, UNKNOWN);
+    public LabelSorter(ZonePriorities zonePriorities) {
+        this.zonePriorities = zonePriorities;
     }
 
-    private LabelStatistics buildStatistics(List<ZplLabel> labels, Map<String, String> skuToZone) {
-        int total = labels.size();
+    /**
+     * Agrupa por zona y SKU, ordena los grupos y cuenta las estadísticas, todo en una pasada: la
+     * zona de cada etiqueta se resuelve una sola vez y sirve para las dos cosas.
+     */
+    public SortResult sort(List<ZplLabel> labels, Map<String, String> skuToZone) {
+        Map<ClaveGrupo, List<ZplLabel>> grouped = new LinkedHashMap<>();
         Map<String, Integer> countByZone = new LinkedHashMap<>();
         Set<String> uniqueSkus = new HashSet<>();
         int unmapped = 0;
-
         for (ZplLabel label : labels) {
             String zone = resolveZoneForLabel(label, skuToZone);
+            ClaveGrupo clave = new ClaveGrupo(zone, label.sku() != null ? label.sku() : "");
+            List<ZplLabel> grupo = grouped.get(clave);
+            if (grupo == null) {
+                grupo = new ArrayList<>();
+                grouped.put(clave, grupo);
+                // Las etiquetas de un grupo comparten el SKU: sus SKU se suman con la primera.
+                uniqueSkus.addAll(label.skus());
+            }
+            grupo.add(label);
             countByZone.merge(zone, 1, Integer::sum);
-            if (label.sku() != null) {
-                for (String s : label.sku().split("\n")) {
-                    String trimmed = s.trim();
-                    if (!trimmed.isEmpty()) uniqueSkus.add(trimmed);
+            if (zone.equals(UNKNOWN)) unmapped++;
+        }
+
+        // Lo que mira el orden se calcula una vez por grupo y no en cada comparación: con miles de
+        // grupos el sort compara decenas de miles de veces.
+        List<GrupoAOrdenar> aOrdenar = new ArrayList<>(grouped.size());
+        grouped.forEach((clave, grupo) -> aOrdenar.add(new GrupoAOrdenar(grupo(clave.zone(), clave.sku(), grupo),
+                claveOrden(clave.zone(), clave.sku(), grupo.getFirst()))));
+        aOrdenar.sort(Comparator.comparing(GrupoAOrdenar::clave, ORDEN));
+
+        List<SortedLabelGroup> groups = aOrdenar.stream().map(GrupoAOrdenar::grupo).toList();
+
+        return new SortResult(groups, new LabelStatistics(labels.size(), countByZone, uniqueSkus.size(), unmapped));
+    }
+
+    /**
+     * Suma etiquetas nuevas a un resultado ya ordenado, para procesar de a tandas durante el día
+     * sin que cada tanda cueste más que la anterior. Da lo mismo que {@link #sort} con todas las
+     * etiquetas en el orden en que llegaron, siempre que {@code skuToZone} sea el mismo con el que
+     * se armó {@code anterior}; si cambió el Excel de stock hay que volver a usar {@link #sort}.
+     *
+     * El sorter se queda con lo que armó para el último resultado que devolvió. Si se le vuelve a
+     * pasar ese resultado con el mismo mapa (el mismo objeto), la tanda de k etiquetas cuesta
+     * O(k log n) comparaciones sobre n grupos ya armados, y solo se rearman los grupos que la tanda
+     * tocó. Con cualquier otro resultado —el de {@link #sort}, uno anterior— primero se arma eso
+     * desde {@code anterior}, una vez, recorriendo sus grupos.
+     *
+     * Los resultados que ya se entregaron no cambian con las tandas siguientes.
+     *
+     * La ventana no lo usa: cada descarga es un lote aparte, que se imprime con su propia
+     * numeración #N, y no se suma a la anterior.
+     */
+    public synchronized SortResult merge(SortResult anterior, List<ZplLabel> nuevas, Map<String, String> skuToZone) {
+        if (nuevas.isEmpty()) return anterior;
+        if (ultimo == null || ultimo.entregado != anterior || ultimo.skuToZone != skuToZone) {
+            ultimo = new Acumulado(skuToZone, anterior);
+        }
+        ultimo.sumar(nuevas);
+        return ultimo.resultado();
+    }
+
+    /** Cuántas veces se compararon dos claves en los merge; para medir el costo de cada tanda. */
+    synchronized long comparaciones() {
+        return comparaciones;
+    }
+
+    /**
+     * Los grupos ordenados y las estadísticas de todas las tandas sumadas hasta ahora. Cada
+     * etiqueta busca su grupo en un mapa; cada grupo nuevo entra con búsqueda binaria en un tramo
+     * de hasta {@link #GRUPOS_POR_TRAMO} grupos, ordenado por su clave, que se calcula una sola
+     * vez. Los SKU distintos se guardan acá para sumar los de la tanda sin recorrer los anteriores.
+     *
+     * Un resultado arma de nuevo solo los grupos y los tramos que cambiaron; los demás los comparte
+     * con el resultado anterior, que por eso nunca se modifican.
+     */
+    private final class Acumulado {
+        private final Map<String, String> skuToZone;
+        private final Map<ClaveGrupo, Grupo> porClave = new HashMap<>();
+        /** Los grupos en el orden final: la clave y, entre los que ordenan igual, el que llegó antes. */
+        private final List<Tramo> tramos = new ArrayList<>();
+        private final Map<String, Integer> countByZone = new LinkedHashMap<>();
+        private final Set<String> skus = new HashSet<>();
+        private int totalLabels;
+        private int unmapped;
+        private long siguiente;
+        /** El último resultado que se devolvió; es el único al que se le puede seguir sumando. */
+        private SortResult entregado;
+
+        /** Lo mismo que había en {@code anterior}, en el orden en que está. */
+        private Acumulado(Map<String, String> skuToZone, SortResult anterior) {
+            this.skuToZone = skuToZone;
+            LabelStatistics statistics = anterior.statistics();
+            totalLabels = statistics.totalLabels();
+            unmapped = statistics.unmappedLabels();
+            countByZone.putAll(statistics.countByZone());
+            Tramo tramo = null;
+            for (SortedLabelGroup armado : anterior.groups()) {
+                ZplLabel primera = armado.labels().getFirst();
+                Grupo grupo = new Grupo(armado.zone(), armado.sku(), claveOrden(armado.zone(), armado.sku(), primera),
+                        siguiente++);
+                for (ZplLabel label : armado.labels()) grupo.agregar(label);
+                grupo.armado = armado;
+                porClave.put(new ClaveGrupo(armado.zone(), armado.sku()), grupo);
+                skus.addAll(primera.skus());
+                // Ya vienen en orden: se llenan los tramos de a uno, sin comparar.
+                if (tramo == null || tramo.grupos.size() == GRUPOS_POR_TRAMO) {
+                    tramo = new Tramo();
+                    tramos.add(tramo);
                 }
+                tramo.agregar(tramo.grupos.size(), grupo);
             }
-            if (zone.equals(UNKNOWN)) {
-                unmapped++;
+            entregado = anterior;
+        }
+
+        void sumar(List<ZplLabel> nuevas) {
+            for (ZplLabel label : nuevas) {
+                String zone = resolveZoneForLabel(label, skuToZone);
+                String sku = label.sku() != null ? label.sku() : "";
+                ClaveGrupo clave = new ClaveGrupo(zone, sku);
+                Grupo grupo = porClave.get(clave);
+                if (grupo == null) {
+                    grupo = new Grupo(zone, sku, claveOrden(zone, sku, label), siguiente++);
+                    porClave.put(clave, grupo);
+                    ubicar(grupo);
+                    skus.addAll(label.skus());
+                }
+                grupo.agregar(label);
+                countByZone.merge(zone, 1, Integer::sum);
+                if (zone.equals(UNKNOWN)) unmapped++;
+                totalLabels++;
             }
         }
 
-        return new LabelStatistics(total, countByZone, uniqueSkus.size(), unmapped);
+        SortResult resultado() {
+            List<List<SortedLabelGroup>> partes = new ArrayList<>(tramos.size());
+            for (Tramo tramo : tramos) partes.add(tramo.armado());
+            entregado = new SortResult(new GruposEnTramos(partes), new LabelStatistics(totalLabels,
+                    Collections.unmodifiableMap(new LinkedHashMap<>(countByZone)), skus.size(), unmapped));
+            return entregado;
+        }
+
+        /**
+         * Pone un grupo nuevo en su tramo. Llegó último, así que va después de todos los que
+         * ordenan igual: ninguna comparación da cero.
+         */
+        private void ubicar(Grupo grupo) {
+            if (tramos.isEmpty()) tramos.add(new Tramo());
+            // El primer tramo cuyo último grupo va después del nuevo, o el último tramo.
+            int desde = 0;
+            int hasta = tramos.size() - 1;
+            while (desde < hasta) {
+                int medio = (desde + hasta) >>> 1;
+                if (comparar(tramos.get(medio).grupos.getLast(), grupo) < 0) {
+                    desde = medio + 1;
+                } else {
+                    hasta = medio;
+                }
+            }
+            Tramo tramo = tramos.get(desde);
+            List<Grupo> grupos = tramo.grupos;
+            int inicio = 0;
+            int fin = grupos.size();
+            while (inicio < fin) {
+                int medio = (inicio + fin) >>> 1;
+                if (comparar(grupos.get(medio), grupo) < 0) {
+                    inicio = medio + 1;
+                } else {
+                    fin = medio;
+                }
+            }
+            tramo.agregar(inicio, grupo);
+            if (grupos.size() == 2 * GRUPOS_POR_TRAMO) tramos.add(desde + 1, tramo.partir());
+        }
+
+        private int comparar(Grupo a, Grupo b) {
+            comparaciones++;
+            int orden = ORDEN.compare(a.clave, b.clave);
+            return orden != 0 ? orden : Long.compare(a.secuencia, b.secuencia);
+        }
+    }
+
+    /** Unos grupos seguidos del acumulado; se arma de nuevo solo si alguno cambió. */
+    private static final class Tramo {
+        private final List<Grupo> grupos = new ArrayList<>();
+        private List<SortedLabelGroup> armado;
+
+        void agregar(int posicion, Grupo grupo) {
+            grupos.add(posicion, grupo);
+            grupo.tramo = this;
+            armado = null;
+        }
+
+        /** Se queda con la primera mitad y devuelve otro tramo con la segunda. */
+        Tramo partir() {
+            Tramo segunda = new Tramo();
+            List<Grupo> mitad = grupos.subList(grupos.size() / 2, grupos.size());
+            for (Grupo grupo : mitad) segunda.agregar(segunda.grupos.size(), grupo);
+            mitad.clear();
+            armado = null;
+            return segunda;
+        }
+
+        List<SortedLabelGroup> armado() {
+            if (armado == null) {
+                SortedLabelGroup[] armados = new SortedLabelGroup[grupos.size()];
+                for (int i = 0; i < armados.length; i++) armados[i] = grupos.get(i).armado();
+                armado = List.of(armados);
+            }
+            return armado;
+        }
+    }
+
+    /** Un grupo del acumulado: crece con cada tanda y se arma de nuevo solo si cambió. */
+    private static final class Grupo {
+        private final String zone;
+        private final String sku;
+        private final ClaveOrden clave;
+        private final long secuencia;
+        private final List<ZplLabel> labels = new ArrayList<>();
+        private String desc;
+        private String details;
+        private Tramo tramo;
+        private SortedLabelGroup armado;
+
+        Grupo(String zone, String sku, ClaveOrden clave, long secuencia) {
+            this.zone = zone;
+            this.sku = sku;
+            this.clave = clave;
+            this.secuencia = secuencia;
+        }
+
+        void agregar(ZplLabel label) {
+            labels.add(label);
+            if (desc == null) desc = label.productDescription();
+            if (details == null) details = label.details();
+            armado = null;
+            if (tramo != null) tramo.armado = null;
+        }
+
+        SortedLabelGroup armado() {
+            if (armado == null) {
+                armado = new SortedLabelGroup(zone, sku, desc != null ? desc : "", details != null ? details : "",
+                        List.copyOf(labels));
+            }
+            return armado;
+        }
+    }
+
+    /**
+     * Los grupos de un resultado sumado, tal como estaban los tramos al entregarlo: no se copian a
+     * una sola lista, así que entregar cuesta lo que la cantidad de tramos y no la de grupos.
+     */
+    private static final class GruposEnTramos extends AbstractList<SortedLabelGroup> implements RandomAccess {
+        private final List<List<SortedLabelGroup>> partes;
+        /** Dónde empieza cada parte; el último es el total. */
+        private final int[] inicios;
+
+        GruposEnTramos(List<List<SortedLabelGroup>> partes) {
+            this.partes = partes;
+            this.inicios = new int[partes.size() + 1];
+            for (int i = 0; i < partes.size(); i++) inicios[i + 1] = inicios[i] + partes.get(i).size();
+        }
+
+        @Override
+        public SortedLabelGroup get(int index) {
+            Objects.checkIndex(index, size());
+            // Ningún tramo queda vacío, así que los inicios no se repiten.
+            int i = Arrays.binarySearch(inicios, index);
+            int parte = i >= 0 ? i : -i - 2;
+            return partes.get(parte).get(index - inicios[parte]);
+        }
+
+        @Override
+        public int size() {
+            return inicios[partes.size()];
+        }
+    }
+
+    /** La descripción y el detalle son los primeros que tenga alguna etiqueta del grupo. */
+    private static SortedLabelGroup grupo(String zone, String sku, List<ZplLabel> labels) {
+        String desc = labels.stream()
+                .map(ZplLabel::productDescription)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse("");
+        String details = labels.stream()
+                .map(ZplLabel::details)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse("");
+        return new SortedLabelGroup(zone, sku, desc, details, labels);
+    }
+
+    /** @param primera la primera etiqueta del grupo, que decide el bucket de CARROS */
+    private ClaveOrden claveOrden(String zone, String sku, ZplLabel primera) {
+        return new ClaveOrden(zonePriorities.prioridad(zone), zone.toUpperCase(),
+                CarrosOrdering.bucket(zone, primera.distinctSkuCount()), skuNumerico(sku));
+    }
+
+    /**
+     * Los SKU que no son un número van al final de su zona. Se miran los caracteres antes de
+     * parsear: la mayoría de los que no son número no llegan a tirar la excepción.
+     */
+    private static long skuNumerico(String sku) {
+        int desde = !sku.isEmpty() && (sku.charAt(0) == '-' || sku.charAt(0) == '+') ? 1 : 0;
+        if (desde == sku.length()) return Long.MAX_VALUE;
+        for (int i = desde; i < sku.length(); i++) {
+            if (Character.digit(sku.charAt(i), 10) < 0) return Long.MAX_VALUE;
+        }
+        try {
+            return Long.parseLong(sku);
+        } catch (NumberFormatException e) {
+            // Más dígitos de los que entran en un long.
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private record ClaveGrupo(String zone, String sku) {
+    }
+
+    /** Lo que mira el orden, calculado una vez por grupo. */
+    private record ClaveOrden(int prioridad, String zonaMayusculas, int bucketCarros, long skuNumerico) {
+    }
+
+    private record GrupoAOrdenar(SortedLabelGroup grupo, ClaveOrden clave) {
+    }
+
+    private String resolveZoneForLabel(ZplLabel label, Map<String, String> skuToZone) {
+        if (label.turbo()) return "TURBOS";
+        return resolveZone(label, skuToZone);
+    }
+
+    private String resolveZone(ZplLabel label, Map<String, String> skuToZone) {
+        String sku = label.sku();
+        if (sku == null || sku.isEmpty()) {
+            return UNKNOWN;
+        }
+        if (sku.indexOf('\n') >= 0) {
+            // CARROS solo si hay 2+ SKUs distintos
+            List<String> skus = label.skus();
+            if (skus.size() > 1) return "CARROS";
+            // Si todos son el mismo SKU, resolver como SKU individual
+            return skus.isEmpty() ? UNKNOWN : skuToZone.getOrDefault(skus.getFirst(), UNKNOWN);
+        }
+        return skuToZone.getOrDefault(sku, UNKNOWN);
     }
 }
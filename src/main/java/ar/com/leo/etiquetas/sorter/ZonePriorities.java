@@ -0,0 +1,127 @@
+package ar.com.leo.etiquetas.sorter;
+
+import ar.com.leo.AppLogger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * En qué orden salen las zonas: cada prefijo de zona tiene una prioridad y la zona toma la del
+ * prefijo más largo que le corresponda ("TURBOS 2" es TURBOS aunque también empiece con T). Las
+ * zonas que no empiezan con ningún prefijo van al final. Mayúsculas y minúsculas dan igual.
+ *
+ * La tabla sale de un archivo de propiedades, {@code PREFIJO=prioridad} por línea, así que un
+ * depósito nuevo se agrega sin tocar el código. Los prefijos se compilan en un árbol de letras: la
+ * búsqueda recorre a lo sumo el largo del prefijo más largo, sin importar cuántas zonas haya.
+ */
+public final class ZonePriorities {
+
+    /** Lo que tenía fijo el código: J*, T*, COMBOS, CARROS, TURBOS, RETIROS y el resto. */
+    public static final ZonePriorities DEFAULT = of(Map.of(
+            "J", 0,
+            "T", 1,
+            "COMBOS", 2,
+            "CARROS", 3,
+            "TURBOS", 4,
+            "RETIROS", 5));
+
+    public static final int SIN_PRIORIDAD = Integer.MAX_VALUE;
+
+    private final Nodo raiz;
+
+    private ZonePriorities(Nodo raiz) {
+        this.raiz = raiz;
+    }
+
+    public static ZonePriorities of(Map<String, Integer> prioridades) {
+        Nodo raiz = new Nodo();
+        prioridades.forEach((prefijo, prioridad) -> {
+            Nodo nodo = raiz;
+            for (int i = 0; i < prefijo.length(); i++) {
+                nodo = nodo.hijoCreando(Character.toUpperCase(prefijo.charAt(i)));
+            }
+            nodo.prioridad = prioridad;
+        });
+        return new ZonePriorities(raiz);
+    }
+
+    /** Lee {@code PREFIJO=prioridad} por línea; {@code #} empieza un comentario. */
+    public static ZonePriorities of(Reader reader) throws IOException {
+        Properties properties = new Properties();
+        properties.load(reader);
+        Map<String, Integer> prioridades = new LinkedHashMap<>();
+        for (String prefijo : properties.stringPropertyNames()) {
+            String valor = properties.getProperty(prefijo).trim();
+            try {
+                prioridades.put(prefijo.trim(), Integer.parseInt(valor));
+            } catch (NumberFormatException e) {
+                throw new IOException("La prioridad de la zona '" + prefijo + "' no es un número: " + valor);
+            }
+        }
+        return of(prioridades);
+    }
+
+    /**
+     * La tabla del archivo, o {@link #DEFAULT} si el archivo no existe o no se puede leer. Un
+     * archivo con errores no frena el proceso: se avisa y se ordena como siempre.
+     */
+    public static ZonePriorities cargar(Path archivo) {
+        if (archivo == null || !Files.isRegularFile(archivo)) return DEFAULT;
+        try (Reader reader = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            ZonePriorities prioridades = of(reader);
+            AppLogger.info("ZONAS - Orden de zonas leído de " + archivo.getFileName() + ".");
+            return prioridades;
+        } catch (IOException e) {
+            AppLogger.warn("ZONAS - No se pudo leer " + archivo + ", se usa el orden de siempre: " + e.getMessage());
+            return DEFAULT;
+        }
+    }
+
+    /** La prioridad del prefijo más largo de la zona que está en la tabla, o {@link #SIN_PRIORIDAD}. */
+    public int prioridad(String zone) {
+        int prioridad = raiz.prioridad;
+        Nodo nodo = raiz;
+        for (int i = 0; i < zone.length(); i++) {
+            nodo = nodo.hijo(Character.toUpperCase(zone.charAt(i)));
+            if (nodo == null) break;
+            if (nodo.prioridad != SIN_PRIORIDAD) prioridad = nodo.prioridad;
+        }
+        return prioridad;
+    }
+
+    /** Un nodo del árbol: las letras que siguen, ordenadas, y la prioridad si ahí termina un prefijo. */
+    private static final class Nodo {
+        private char[] letras = new char[0];
+        private Nodo[] hijos = new Nodo[0];
+        private int prioridad = SIN_PRIORIDAD;
+
+        Nodo hijo(char letra) {
+            int i = Arrays.binarySearch(letras, letra);
+            return i >= 0 ? hijos[i] : null;
+        }
+
+        Nodo hijoCreando(char letra) {
+            int i = Arrays.binarySearch(letras, letra);
+            if (i >= 0) return hijos[i];
+            int lugar = -i - 1;
+            char[] nuevasLetras = new char[letras.length + 1];
+            Nodo[] nuevosHijos = new Nodo[hijos.length + 1];
+            System.arraycopy(letras, 0, nuevasLetras, 0, lugar);
+            System.arraycopy(hijos, 0, nuevosHijos, 0, lugar);
+            nuevasLetras[lugar] = letra;
+            nuevosHijos[lugar] = new Nodo();
+            System.arraycopy(letras, lugar, nuevasLetras, lugar + 1, letras.length - lugar);
+            System.arraycopy(hijos, lugar, nuevosHijos, lugar + 1, hijos.length - lugar);
+            letras = nuevasLetras;
+            hijos = nuevosHijos;
+            return hijos[lugar];
+        }
+    }
+}
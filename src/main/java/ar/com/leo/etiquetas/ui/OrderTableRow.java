@@ -2,6 +2,7 @@ package ar.com.leo.etiquetas.ui;
 
 import ar.com.leo.api.ml.model.OrdenML;
 import ar.com.leo.api.ml.model.ShippingType;
+import ar.com.leo.etiquetas.model.ZplLabel;
 import javafx.beans.property.*;
 
 import java.util.List;
@@ -18,6 +19,8 @@ public class OrderTableRow {
     private final StringProperty slaDate;
     private final List<OrdenML> ordenes;
     private final ShippingType shippingType;
+    /** Los SKU distintos de la fila, separados una vez: el orden y las estadísticas los usan seguido. */
+    private final List<String> skus;
 
     public OrderTableRow(boolean selected, String orderId, String zone, String sku, String productDescription,
                          String quantity, String status, String slaDate, List<OrdenML> ordenes,
@@ -32,6 +35,7 @@ public class OrderTableRow {
         this.slaDate = new SimpleStringProperty(slaDate);
         this.ordenes = ordenes;
         this.shippingType = shippingType;
+        this.skus = ZplLabel.distinctSkus(sku);
     }
 
     public BooleanProperty selectedProperty() { return selected; }
@@ -54,6 +58,8 @@ public class OrderTableRow {
     public String getSlaDate() { return slaDate.get(); }
     public List<OrdenML> getOrdenes() { return ordenes; }
     public ShippingType getShippingType() { return shippingType; }
+    public List<String> getSkus() { return skus; }
+    public int getDistinctSkuCount() { return skus.size(); }
 
     public int getProductCount() {
         int count = 0;
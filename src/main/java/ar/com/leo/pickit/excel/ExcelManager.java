@@ -2,6 +2,7 @@ package ar.com.leo.pickit.excel;
 
 import ar.com.leo.AppLogger;
 import ar.com.leo.pickit.model.ProductoManual;
+import ar.com.leo.util.ArchivoCache;
 import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.*;
@@ -17,7 +18,16 @@ public class ExcelManager {
 
     private static final int FILA_HEADERS = 2;
 
+    // El mismo Combos.xls se lee en cada pickit: mientras no cambie, se abre una vez.
+    private static final ArchivoCache<Map<String, List<ComboEntry>>> COMBOS =
+            new ArchivoCache<>(path -> leerCombos(path.toFile()));
+
+    /** Los componentes de cada combo. No se pueden modificar: se comparten entre pickits. */
     public static Map<String, List<ComboEntry>> obtenerCombos(File combosExcel) throws Exception {
+        return COMBOS.leer(combosExcel.toPath());
+    }
+
+    private static Map<String, List<ComboEntry>> leerCombos(File combosExcel) throws Exception {
         Map<String, List<ComboEntry>> combos = new LinkedHashMap<>();
 
         // readOnly=true: los .xls (HSSF) se abren con RandomAccessFile, que por
@@ -69,7 +79,8 @@ public class ExcelManager {
         }
 
         AppLogger.info("EXCEL - Combos leídos: " + combos.size());
-        return combos;
+        combos.replaceAll((sku, componentes) -> List.copyOf(componentes));
+        return Collections.unmodifiableMap(combos);
     }
 
     public static Map<String, ProductoStock> obtenerProductosStock(File stockExcel) throws Exception {
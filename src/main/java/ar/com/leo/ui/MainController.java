@@ -6,12 +6,15 @@ import ar.com.leo.api.ml.model.OrdenML;
 import ar.com.leo.api.ml.model.ShippingType;
 import ar.com.leo.api.ml.model.Venta;
 import ar.com.leo.etiquetas.model.*;
+import ar.com.leo.etiquetas.injector.ZplHeaderInjector;
+import ar.com.leo.etiquetas.injector.ZplLayoutCache;
+import ar.com.leo.etiquetas.parser.ComboCatalog;
 import ar.com.leo.etiquetas.parser.ComboProduct;
 import ar.com.leo.etiquetas.model.DatosEmbalaje;
-import ar.com.leo.etiquetas.parser.EmbalajeRenderer;
 import ar.com.leo.etiquetas.parser.ComboExcelReader;
 import ar.com.leo.etiquetas.parser.ExcelMappingReader;
 import ar.com.leo.etiquetas.parser.MedidasExcelManager;
+import ar.com.leo.etiquetas.parser.ZplParseCache;
 import ar.com.leo.etiquetas.parser.ZplParser;
 import ar.com.leo.etiquetas.ui.ComboPrintDialog;
 import ar.com.leo.etiquetas.ui.EstadoDato;
@@ -22,10 +25,17 @@ import ar.com.leo.pedidos.service.PedidosService;
 import ar.com.leo.pickit.model.ProductoManual;
 import ar.com.leo.pickit.service.PickitService;
 import ar.com.leo.etiquetas.printer.PrinterDiscovery;
+import ar.com.leo.etiquetas.printer.ZebraEstado;
 import ar.com.leo.etiquetas.printer.ZplFileSaver;
+import ar.com.leo.etiquetas.printer.ZplPrinterPool;
 import ar.com.leo.etiquetas.printer.ZplPrinterService;
+import ar.com.leo.etiquetas.printer.ZplSocketSender;
+import ar.com.leo.etiquetas.printer.ZplSpool;
 import ar.com.leo.etiquetas.sorter.LabelSorter;
 import ar.com.leo.etiquetas.sorter.CarrosOrdering;
+import ar.com.leo.etiquetas.sorter.ZonePriorities;
+import ar.com.leo.util.ArchivoCache;
+import ar.com.leo.util.Util;
 import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.collections.FXCollections;
@@ -42,24 +52,24 @@ import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyCodeCombination;
 import javafx.scene.input.KeyCombination;
 import javafx.scene.layout.HBox;
-import javafx.util.Duration;
 import javafx.scene.layout.VBox;
 import javafx.scene.media.AudioClip;
 import javafx.scene.paint.Color;
 import javafx.scene.text.TextFlow;
 import javafx.stage.FileChooser;
+import javafx.stage.Modality;
 
 import javax.print.PrintService;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.prefs.Preferences;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class MainController {
 
@@ -211,12 +221,29 @@ public class MainController {
     private Button pedidosGenerateBtn;
 
     private final ZplParser zplParser = new ZplParser();
+    private final ZplParseCache zplParseCache = new ZplParseCache(zplParser, CACHE_ZPL_ENTRADAS,
+            enCarpetaDelPrograma("cache-zpl"));
     private final ExcelMappingReader excelReader = new ExcelMappingReader();
     private final ComboExcelReader comboExcelReader = new ComboExcelReader();
+    // El Excel de combos se lee al inyectar y al abrir la hoja de combos: mientras no cambie, una vez.
+    private final ArchivoCache<ComboCatalog> comboCatalogs =
+            new ArchivoCache<>(path -> ComboCatalog.of(comboExcelReader.read(path)));
     private final MedidasExcelManager medidasManager = new MedidasExcelManager();
-    private final LabelSorter labelSorter = new LabelSorter();
+    private final ZonePriorities zonePriorities = ZonePriorities.cargar(enCarpetaDelPrograma(ARCHIVO_ZONAS));
+    private final LabelSorter labelSorter = new LabelSorter(zonePriorities);
+    // Dura lo que la app: los formatos de ML son los mismos de un lote al otro.
+    private final ZplLayoutCache zplLayouts = new ZplLayoutCache();
     private final ZplFileSaver fileSaver = new ZplFileSaver();
     private final ZplPrinterService printerService = new ZplPrinterService();
+    // A las Zebras en red se les pregunta el estado antes de cada tramo y se espera si no pueden recibir.
+    // Lo inyectado se les guarda como formato, así cada etiqueta manda solo sus datos.
+    private final ZplPrinterService zebrasEnRedService = new ZplPrinterService(new ZplSocketSender(
+            ZplSocketSender.Opciones.DEFAULT.conControlDeFlujo(CONSULTA_ESTADO_ZEBRA, ESPERA_MAXIMA_ZEBRA)
+                    .conFormatosGuardados()));
+    private final ZplSpool printSpool = new ZplSpool(enCarpetaDelPrograma(ARCHIVO_SPOOL));
+    /** Las Zebras en red que no pueden recibir ahora, con el motivo; solo desde el hilo de JavaFX. */
+    private final Map<String, ZebraEstado> zebrasFrenadas = new LinkedHashMap<>();
+    private Alert avisoZebras;
     private final PrinterDiscovery printerDiscovery = new PrinterDiscovery();
     private final Preferences prefs = Preferences.userRoot().node("etiquetas");
 
@@ -225,6 +252,21 @@ public class MainController {
     private static final String PREF_MEDIDAS_EXCEL_PATH = "medidasExcelFilePath";
     private static final String PREF_MEDIDAS_ENABLED = "medidasEnabled";
     private static final String PREF_ZPL_DIR = "zplLastDir";
+    private static final String PREF_ZEBRAS_EN_RED = "zebrasEnRed";
+    private static final int PUERTO_ZEBRA = 9100;
+    /** Cada cuánto se le vuelve a preguntar el estado a una Zebra que no puede recibir. */
+    private static final Duration CONSULTA_ESTADO_ZEBRA = Duration.ofSeconds(2);
+    /** Cuánto se espera a una Zebra que no puede recibir antes de cortar y dejar el resto pendiente. */
+    private static final Duration ESPERA_MAXIMA_ZEBRA = Duration.ofMinutes(5);
+    /** Es el único Duration de JavaFX; el resto de la clase usa el de java.time. */
+    private static final javafx.util.Duration DEMORA_TOOLTIP = javafx.util.Duration.millis(200);
+
+    /** Cuántos archivos ZPL ya parseados se recuerdan, en memoria y en la carpeta del caché. */
+    private static final int CACHE_ZPL_ENTRADAS = 8;
+    /** El orden de las zonas, junto al jar; si no está se usa {@link ZonePriorities#DEFAULT}. */
+    private static final String ARCHIVO_ZONAS = "zonas.properties";
+    /** Lo que se mandó a imprimir, junto al jar, para seguir desde donde se cortó; ver {@link ZplSpool}. */
+    private static final String ARCHIVO_SPOOL = "spool-zpl.log";
 
     private boolean meliInitialized = false;
     private SortResult currentResult;
@@ -828,6 +870,20 @@ public class MainController {
         }
     }
 
+    /**
+     * Lo que va junto al jar: el caché de archivos ZPL ya parseados y el orden de las zonas. Si
+     * no se puede ubicar el jar es null, y cada uno sigue sin su archivo (el caché queda solo en
+     * memoria, las zonas con el orden de siempre).
+     */
+    private static Path enCarpetaDelPrograma(String nombre) {
+        try {
+            return Path.of(Util.getJarFolder(), nombre);
+        } catch (Exception e) {
+            AppLogger.warn("No se pudo ubicar la carpeta del programa para " + nombre + ": " + e.getMessage());
+            return null;
+        }
+    }
+
     @FXML
     private void onProcessLocal() {
         String zplPath = zplFileField.getText();
@@ -852,7 +908,7 @@ public class MainController {
         new Thread(() -> {
             try {
                 ExcelMapping excelMapping = loadExcelMapping(config);
-                List<ZplLabel> labels = zplParser.parseFile(Path.of(zplPath));
+                List<ZplLabel> labels = zplParseCache.parseFile(Path.of(zplPath));
                 MedidasExcelManager.Medidas medidas = loadMedidas(config);
                 Map<String, String> skusPendientes = new LinkedHashMap<>();
                 Set<String> embalajesFaltantes = new LinkedHashSet<>();
@@ -1177,6 +1233,7 @@ public class MainController {
 
     @FXML
     private void onPrintDirect() {
+        if (ofrecerReanudar()) return;
         if (currentResult == null || currentResult.groups().isEmpty()) {
             AlertHelper.showError("Error", "No hay etiquetas para imprimir.");
             return;
@@ -1238,37 +1295,268 @@ public class MainController {
             return;
         }
 
-        // 2. Seleccionar impresora
+        // 2. Seleccionar impresoras: con más de una, el lote se reparte y salen todas a la vez.
+        // El diálogo sale aunque no haya ninguna: es donde se escribe una Zebra en red.
         List<PrintService> printers = printerDiscovery.findAll();
+        String zebrasGuardadas = prefs.get(PREF_ZEBRAS_EN_RED, "");
+
+        Dialog<List<PrintService>> printerDialog = new Dialog<>();
+        printerDialog.setTitle("Seleccionar impresoras");
+        printerDialog.setHeaderText("Seleccione las impresoras para enviar " + labelsToPrint.size() + " etiqueta(s):");
+        printerDialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+        VBox printerBox = new VBox(8);
+        printerBox.setStyle("-fx-padding: 10;");
+        List<CheckBox> printerChecks = new ArrayList<>();
         if (printers.isEmpty()) {
-            AlertHelper.showError("Error", "No se encontraron impresoras.");
+            printerBox.getChildren().add(new Label("No se encontraron impresoras en el sistema."));
+        }
+        for (PrintService printer : printers) {
+            CheckBox cb = new CheckBox(printer.getName());
+            cb.setSelected(printerChecks.isEmpty());
+            cb.setUserData(printer);
+            printerChecks.add(cb);
+            printerBox.getChildren().add(cb);
+        }
+        ToggleGroup repartoGroup = new ToggleGroup();
+        RadioButton porZonas = new RadioButton("Repartir por zonas");
+        RadioButton enTramos = new RadioButton("Repartir en partes iguales");
+        porZonas.setToggleGroup(repartoGroup);
+        enTramos.setToggleGroup(repartoGroup);
+        porZonas.setSelected(selectedZones.size() > 1);
+        enTramos.setSelected(selectedZones.size() <= 1);
+        TextField zebrasField = new TextField(zebrasGuardadas);
+        zebrasField.setPromptText("192.168.0.50, 192.168.0.51:9100");
+        printerBox.getChildren().addAll(new Label("Zebras en red (IP o IP:puerto, separadas por coma):"), zebrasField,
+                new Separator(), porZonas, enTramos);
+
+        printerDialog.getDialogPane().setContent(printerBox);
+        printerDialog.setResultConverter(btn -> {
+            if (btn == ButtonType.OK) {
+                return printerChecks.stream()
+                        .filter(CheckBox::isSelected)
+                        .map(cb -> (PrintService) cb.getUserData())
+                        .toList();
+            }
+            return null;
+        });
+
+        Optional<List<PrintService>> selected = printerDialog.showAndWait();
+        if (selected.isEmpty()) return;
+        List<ZplPrinterPool.Destino> selectedPrinters = new ArrayList<>();
+        selected.get().forEach(ps -> selectedPrinters.add(ZplPrinterPool.Destino.de(ps, printerService)));
+        try {
+            selectedPrinters.addAll(zebrasEnRed(zebrasField.getText()).values());
+        } catch (IllegalArgumentException e) {
+            AlertHelper.showError("Error", e.getMessage());
+            return;
+        }
+        prefs.put(PREF_ZEBRAS_EN_RED, zebrasField.getText().strip());
+        if (selectedPrinters.isEmpty()) {
+            AlertHelper.showError("Error", "No se eligi\u00f3 ninguna impresora: marque una o escriba una Zebra en red.");
             return;
         }
 
-        ChoiceDialog<String> dialog = new ChoiceDialog<>(
-                printers.getFirst().getName(),
-                printers.stream().map(PrintService::getName).toList());
-        dialog.setTitle("Seleccionar impresora");
-        dialog.setHeaderText("Seleccione la impresora para enviar " + labelsToPrint.size() + " etiqueta(s):");
+        // Cada impresora recibe su tramo ya intercalado: el doblado y el corte son de cada pila.
+        List<List<ZplLabel>> tramos = new ArrayList<>();
+        if (porZonas.isSelected()) {
+            List<SortedLabelGroup> groups = currentResult.groups().stream()
+                    .filter(g -> selectedZones.contains(g.zone()))
+                    .toList();
+            ZplPrinterPool.porZonas(groups, selectedPrinters.size()).forEach(t -> tramos.add(interleaveForPrint(t)));
+        } else {
+            ZplPrinterPool.enTramos(labelsToPrint, selectedPrinters.size()).forEach(t -> tramos.add(interleaveForPrint(t)));
+        }
 
-        Optional<String> selected = dialog.showAndWait();
-        if (selected.isEmpty()) return;
+        setLoading(true);
+        new Thread(() -> {
+            List<ZplPrinterPool.Resultado> resultados;
+            try (ZplPrinterPool pool = new ZplPrinterPool(selectedPrinters, printSpool)) {
+                resultados = pool.imprimir(tramos);
+                registrarEstadisticas(pool);
+            } catch (Exception e) {
+                Platform.runLater(() -> {
+                    setLoading(false);
+                    cerrarAvisoZebras();
+                    AlertHelper.showError("Error al imprimir", e.getMessage(), e);
+                });
+                return;
+            }
+            Platform.runLater(() -> informarImpresion(resultados, true));
+        }).start();
+    }
 
-        PrintService selectedPrinter = printers.stream()
-                .filter(p -> p.getName().equals(selected.get()))
-                .findFirst()
-                .orElse(null);
+    /**
+     * Si quedaron impresiones sin terminar —la app o la impresora se cayeron a mitad de un lote—,
+     * ofrece seguirlas desde la primera etiqueta que no salió, cada una en su impresora. Devuelve
+     * true si ya no hay que seguir con la impresión normal.
+     */
+    private boolean ofrecerReanudar() {
+        List<ZplSpool.Pendiente> pendientes = printSpool.pendientes();
+        if (pendientes.isEmpty()) return false;
+
+        StringBuilder detalle = new StringBuilder();
+        for (ZplSpool.Pendiente p : pendientes) {
+            detalle.append(p.impresora()).append(": faltan ").append(p.faltan().size())
+                    .append(" de ").append(p.total()).append(" etiquetas\n");
+        }
+        ButtonType reanudar = new ButtonType("Reanudar");
+        ButtonType descartar = new ButtonType("Descartar");
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION, detalle.toString().strip(), reanudar, descartar,
+                ButtonType.CANCEL);
+        alert.setTitle("Impresi\u00f3n sin terminar");
+        alert.setHeaderText("Hay impresiones que no terminaron de salir.");
+        Optional<ButtonType> respuesta = alert.showAndWait();
+        if (respuesta.isEmpty() || respuesta.get() == ButtonType.CANCEL) return true;
+        if (respuesta.get() == descartar) {
+            pendientes.forEach(printSpool::descartar);
+            return false;
+        }
+
+        // Una cola por impresora: dos pendientes de la misma salen uno detrás del otro.
+        List<ZplPrinterPool.Destino> printers = new ArrayList<>();
+        Map<String, Integer> colaDeImpresora = new HashMap<>();
+        Map<String, ZplPrinterPool.Destino> disponibles = new HashMap<>();
+        for (PrintService ps : printerDiscovery.findAll()) {
+            disponibles.put(ps.getName(), ZplPrinterPool.Destino.de(ps, printerService));
+        }
+        try {
+            disponibles.putAll(zebrasEnRed(prefs.get(PREF_ZEBRAS_EN_RED, "")));
+        } catch (IllegalArgumentException e) {
+            AppLogger.warn("IMPRESION - " + e.getMessage());
+        }
+        for (ZplSpool.Pendiente p : pendientes) {
+            if (colaDeImpresora.containsKey(p.impresora())) continue;
+            ZplPrinterPool.Destino printer = disponibles.get(p.impresora());
+            if (printer == null) {
+                AlertHelper.showError("Error", "No se encontró la impresora " + p.impresora()
+                        + ". Conéctela y vuelva a intentar, o descarte la impresión pendiente.");
+                return true;
+            }
+            colaDeImpresora.put(p.impresora(), printers.size());
+            printers.add(printer);
+        }
 
-        if (selectedPrinter == null) return;
+        setLoading(true);
+        new Thread(() -> {
+            List<ZplPrinterPool.Resultado> resultados;
+            try (ZplPrinterPool pool = new ZplPrinterPool(printers, printSpool)) {
+                List<CompletableFuture<ZplPrinterPool.Resultado>> enCurso = new ArrayList<>();
+                for (ZplSpool.Pendiente p : pendientes) {
+                    enCurso.add(pool.reanudar(colaDeImpresora.get(p.impresora()), p));
+                }
+                resultados = enCurso.stream().map(CompletableFuture::join).toList();
+                registrarEstadisticas(pool);
+            } catch (Exception e) {
+                Platform.runLater(() -> {
+                    setLoading(false);
+                    cerrarAvisoZebras();
+                    AlertHelper.showError("Error al imprimir", e.getMessage(), e);
+                });
+                return;
+            }
+            Platform.runLater(() -> informarImpresion(resultados, false));
+        }).start();
+        return true;
+    }
 
-        try {
-            List<ZplLabel> reordered = interleaveForPrint(labelsToPrint);
-            printerService.printViaPrintService(reordered, selectedPrinter);
-            AlertHelper.showInfo("\ud83d\udda8 Impresi\u00f3n", labelsToPrint.size() + " etiquetas enviadas a " + selectedPrinter.getName());
-            showComboSheetIfNeeded();
-        } catch (Exception e) {
-            AlertHelper.showError("Error al imprimir", e.getMessage(), e);
+    /**
+     * Las Zebras en red escritas como "IP" o "IP:puerto", separadas por coma, por nombre. Se les
+     * manda por el puerto raw con control de flujo y su estado se muestra mientras imprimen.
+     */
+    private Map<String, ZplPrinterPool.Destino> zebrasEnRed(String texto) {
+        Map<String, ZplPrinterPool.Destino> zebras = new LinkedHashMap<>();
+        for (String zebra : texto.split(",")) {
+            zebra = zebra.strip();
+            if (zebra.isEmpty()) continue;
+            int dosPuntos = zebra.lastIndexOf(':');
+            String host = dosPuntos < 0 ? zebra : zebra.substring(0, dosPuntos).strip();
+            int port;
+            try {
+                port = dosPuntos < 0 ? PUERTO_ZEBRA : Integer.parseInt(zebra.substring(dosPuntos + 1).strip());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Puerto inv\u00e1lido en la Zebra \"" + zebra + "\".");
+            }
+            String nombre = host + ":" + port;
+            zebras.put(nombre, ZplPrinterPool.Destino.porSocket(host, port, zebrasEnRedService,
+                    estado -> Platform.runLater(() -> mostrarEstadoZebra(nombre, estado))));
         }
+        return zebras;
+    }
+
+    /**
+     * Mientras alguna Zebra en red no puede recibir queda a la vista un aviso, sin bloquear la
+     * ventana, con el motivo de cada una. La impresión sigue sola y el aviso se cierra cuando
+     * vuelven a estar listas todas.
+     */
+    private void mostrarEstadoZebra(String impresora, ZebraEstado estado) {
+        if (estado.puedeRecibir()) {
+            if (zebrasFrenadas.remove(impresora) != null) {
+                AppLogger.info("IMPRESION - " + impresora + " lista, sigue la impresi\u00f3n.");
+            }
+        } else {
+            if (!estado.equals(zebrasFrenadas.put(impresora, estado))) {
+                AppLogger.warn("IMPRESION - " + impresora + " en espera: " + estado.motivo() + ".");
+            }
+        }
+        if (zebrasFrenadas.isEmpty()) {
+            cerrarAvisoZebras();
+            return;
+        }
+        StringBuilder detalle = new StringBuilder();
+        zebrasFrenadas.forEach((nombre, e) -> detalle.append(nombre).append(": ").append(e.resumen()).append("\n"));
+        detalle.append("\nLa impresi\u00f3n sigue sola cuando se resuelva. Si en ")
+                .append(ESPERA_MAXIMA_ZEBRA.toMinutes())
+                .append(" minutos no se resuelve, se corta y lo que falta queda pendiente.");
+        if (avisoZebras == null) {
+            avisoZebras = new Alert(Alert.AlertType.WARNING);
+            avisoZebras.initModality(Modality.NONE);
+            avisoZebras.setTitle("Impresora en espera");
+            avisoZebras.setHeaderText("Hay impresoras que no pueden recibir etiquetas.");
+            avisoZebras.show();
+        }
+        avisoZebras.setContentText(detalle.toString());
+    }
+
+    /** Al terminar la impresión, bien o con error, ya no queda ninguna Zebra esperando. */
+    private void cerrarAvisoZebras() {
+        zebrasFrenadas.clear();
+        if (avisoZebras != null) avisoZebras.close();
+        avisoZebras = null;
+    }
+
+    private static void registrarEstadisticas(ZplPrinterPool pool) {
+        for (ZplPrinterPool.Estadisticas stats : pool.estadisticas()) {
+            AppLogger.info(String.format("IMPRESION - %s: %d etiquetas en %.1f s (%.1f etiquetas/s).",
+                    stats.impresora(), stats.etiquetas(), stats.ocupada().toMillis() / 1000.0,
+                    stats.etiquetasPorSegundo()));
+        }
+    }
+
+    /** Cuántas salieron por cada impresora, o el error de la primera que falló. */
+    private void informarImpresion(List<ZplPrinterPool.Resultado> resultados, boolean hojaDeCombos) {
+        setLoading(false);
+        cerrarAvisoZebras();
+        StringBuilder enviadas = new StringBuilder();
+        ZplPrinterPool.Resultado fallido = null;
+        for (ZplPrinterPool.Resultado r : resultados) {
+            if (r.etiquetas() == 0) continue;
+            if (!r.ok()) {
+                if (fallido == null) fallido = r;
+                continue;
+            }
+            enviadas.append(enviadas.isEmpty() ? "" : "\n")
+                    .append(r.etiquetas()).append(" etiquetas enviadas a ").append(r.impresora());
+        }
+        if (fallido != null) {
+            String mensaje = (enviadas.isEmpty() ? "" : enviadas + "\n\n")
+                    + "No se pudo imprimir en " + fallido.impresora() + ": " + fallido.error().getMessage()
+                    + "\n\nLo que no sali\u00f3 queda pendiente: al volver a imprimir se puede reanudar.";
+            AlertHelper.showError("Error al imprimir", mensaje, fallido.error());
+            return;
+        }
+        AlertHelper.showInfo("\ud83d\udda8 Impresi\u00f3n", enviadas.toString());
+        if (hojaDeCombos) showComboSheetIfNeeded();
     }
 
     @FXML
@@ -1281,10 +1569,8 @@ public class MainController {
         Set<String> batchSkus = new HashSet<>();
         if (currentResult == null) return batchSkus;
         for (SortedLabelGroup group : currentResult.groups()) {
-            for (String sku : group.sku().split("\n")) {
-                String trimmed = sku.trim();
-                if (!trimmed.isEmpty()) batchSkus.add(trimmed);
-            }
+            // Las etiquetas de un grupo comparten el SKU: con la primera alcanza.
+            batchSkus.addAll(group.labels().getFirst().skus());
         }
         return batchSkus;
     }
@@ -1294,30 +1580,8 @@ public class MainController {
         if (batchSkus.isEmpty()) return List.of();
 
         try {
-            Map<String, ComboProduct> allCombos = comboExcelReader.read(Path.of(comboPath));
-            if (allCombos.isEmpty()) return List.of();
-
-            // Crear mapa normalizado de combos para matchear por SKU numérico
-            Map<String, ComboProduct> normalizedCombos = new LinkedHashMap<>();
-            for (var entry : allCombos.entrySet()) {
-                normalizedCombos.put(entry.getKey(), entry.getValue());
-                // También indexar por SKU normalizado (solo dígitos)
-                String normalized = ZplParser.normalizeSku(entry.getKey());
-                if (normalized != null && !normalized.startsWith("SKU INVALIDO")) {
-                    normalizedCombos.putIfAbsent(normalized, entry.getValue());
-                }
-            }
-
-            List<ComboProduct> matchingCombos = new ArrayList<>();
-            Set<String> matched = new HashSet<>();
-            for (var entry : normalizedCombos.entrySet()) {
-                if (batchSkus.contains(entry.getKey()) && matched.add(entry.getValue().codigoCompuesto())) {
-                    matchingCombos.add(entry.getValue());
-                }
-            }
-
-            matchingCombos.sort(Comparator.comparing(ComboProduct::codigoCompuesto));
-            return matchingCombos;
+            // Los combos se buscan por código y por SKU normalizado (solo dígitos).
+            return comboCatalogs.leer(Path.of(comboPath)).combosDe(batchSkus);
         } catch (Exception e) {
             AppLogger.warn("Error al leer Excel de combos: " + e.getMessage());
             return List.of();
@@ -1648,20 +1912,12 @@ public class MainController {
                     descJoiner.toString(), qtyJoiner.toString(), status, slaDate, group, shippingType));
         }
 
-        // Prioridad: J*, T*, COMBOS, CARROS, TURBOS, RETIROS, resto
+        // Prioridad: la misma tabla de zonas que las etiquetas (por defecto J*, T*, COMBOS, CARROS,
+        // TURBOS, RETIROS, resto)
         rows.sort(Comparator
-                .<OrderTableRow, Integer>comparing(r -> {
-                    String z = r.getZone().toUpperCase();
-                    if (z.startsWith("J")) return 0;
-                    if (z.startsWith("TURBOS")) return 4;
-                    if (z.startsWith("T")) return 1;
-                    if (z.startsWith("COMBOS")) return 2;
-                    if (z.startsWith("CARROS")) return 3;
-                    if (z.startsWith("RETIROS")) return 5;
-                    return Integer.MAX_VALUE;
-                })
+                .<OrderTableRow>comparingInt(r -> zonePriorities.prioridad(r.getZone()))
                 .thenComparing(r -> r.getZone().toUpperCase())
-                .thenComparingInt(r -> CarrosOrdering.bucket(r.getZone(), r.getSku()))
+                .thenComparingInt(r -> CarrosOrdering.bucket(r.getZone(), r.getDistinctSkuCount()))
                 .thenComparing(OrderTableRow::getSku));
 
         filteredOrders = new FilteredList<>(rows, p -> true);
@@ -1691,10 +1947,7 @@ public class MainController {
             for (OrderTableRow r : scoped) {
                 if ("printed".equals(r.getStatus())) printed++;
                 else readyToPrint++;
-                for (String s : r.getSku().split("\n")) {
-                    String trimmed = s.trim();
-                    if (!trimmed.isEmpty()) uniqueSkus.add(trimmed);
-                }
+                uniqueSkus.addAll(r.getSkus());
                 countByZone.merge(r.getZone(), 1, Integer::sum);
             }
             int skuCount = uniqueSkus.size();
@@ -1711,7 +1964,7 @@ public class MainController {
             String text = sj.toString();
             statsLabel.setText(text);
             Tooltip tip = new Tooltip(text.replace(SEP_RESUMEN, "\n"));
-            tip.setShowDelay(Duration.millis(200));
+            tip.setShowDelay(DEMORA_TOOLTIP);
             statsLabel.setTooltip(tip);
         };
         orderStatsUpdater = updateStats;
@@ -1733,32 +1986,6 @@ public class MainController {
         }
     }
 
-    private static final Pattern UNIT_PATTERN = Pattern.compile(
-            "(\\^FO(\\d+),(\\d+)\\^A0N,70,70\\^FB160,1,0,C\\^FD)(\\d+)(\\^FS)");
-    private static final Pattern FO_PATTERN = Pattern.compile("\\^FO(\\d+),(\\d+)");
-    private static final Pattern LH_PATTERN = Pattern.compile("\\^LH(\\d+),(\\d+)");
-    private static final Pattern FONT_PATTERN = Pattern.compile("\\^A0N,(\\d+),(\\d+)");
-    private static final Pattern FB_PATTERN = Pattern.compile("\\^FB(\\d+),(\\d+)");
-    private static final Pattern CARROS_SKU_FIELD = Pattern.compile(
-            "(\\^FD[^^]*?SKU:\\s*)(\\d+)([^^]*?)(\\^FS)");
-
-    // Anclas de texto que dependen del formato de etiqueta de ML: la inyección de
-    // ZONA se posiciona debajo del campo "Unidad" y la de COD.EXT. debajo del de "SKU:".
-    // Si ML cambia estos textos, la inyección se omite y se registra una advertencia
-    // (en vez de fallar en silencio produciendo etiquetas incompletas).
-    private static final String ANCHOR_UNIDAD = "Unidad";
-    private static final String ANCHOR_SKU = "SKU:";
-    // Fragmento del texto "Recortá esta parte..." de ML, sin acentos ni mayúsculas para no depender
-    // de cómo venga codificada la tilde.
-    private static final String ANCHOR_RECORTE = "ecort";
-
-    /**
-     * El banner MEDIR quedó fuera de uso. El código que lo arma se conserva entero: alcanza con
-     * poner esto en true para que vuelva. Lo que sigue activo es lo demás que dispara la detección
-     * de pendientes: el alta en el Excel y el diálogo del final del lote.
-     */
-    private static final boolean BANNER_MEDIR = false;
-
     /**
      * @param skusPendientesOut     se completa con los SKU sin medidas, para darlos de alta en el
      *                              Excel. No importa de cuántas unidades sea la etiqueta: lo que se
@@ -1777,421 +2004,9 @@ public class MainController {
                                         Set<String> embalajesFaltantesOut,
                                         Set<String> sinDatosOut,
                                         String comboPath) {
-        Map<String, String> skuToExtCode = excelMapping.skuToExternalCode();
-        Map<String, ComboProduct> normalizedCombos = loadNormalizedCombos(comboPath);
-        // Hace falta para los SKU que todavía no figuran en el Excel: sin ninguna fila propia, es
-        // lo único que dice si la función está en uso o si no hay nada que reclamar.
-        boolean moduloEmbalajeActivo = medidas != null && medidas.embalajeEnUso();
-        List<SortedLabelGroup> newGroups = new ArrayList<>();
-        int labelPosition = 1;
-        Set<String> skusYaMarcados = new HashSet<>();
-        for (SortedLabelGroup group : result.groups()) {
-            String zone = group.zone();
-            String sku = group.sku();
-            String zoneText = "ZONA: " + zone;
-            String extCodeText = null;
-            if (!"CARROS".equals(zone)) {
-                String extCode = skuToExtCode.getOrDefault(sku, "");
-                // Fallback: si el SKU es un combo con un solo componente, usar el COD.EXT.
-                // del componente. Aplica a cualquier zona (el combo puede estar mapeado
-                // a J*, T*, COMBOS, etc. en el Excel de stock).
-                if (normalizedCombos != null) {
-                    String componentExt = resolveSingleComponentExtCode(sku, normalizedCombos, skuToExtCode);
-                    if (componentExt != null) extCode = componentExt;
-                }
-                extCodeText = "COD.EXT.: " + (extCode.isEmpty() ? "-" : extCode);
-            }
-
-            // Un SKU es elegible para las líneas de embalaje y para la detección de pendientes de
-            // medición si tiene número propio y su etiqueta corresponde a un solo producto. Los
-            // carros listan varios; los no numéricos son sentinelas del parser ("SKU INVALIDO:
-            // ...") que nunca llegan al Excel de medidas, así que no se les puede cargar ni medida
-            // ni embalaje. La condición es una sola para los dos usos, para que no diverjan.
-            boolean skuElegible = medidas != null && EstadoDato.esSkuElegible(zone, sku);
-            ar.com.leo.etiquetas.model.MedidaSku medidaSku = skuElegible ? medidas.porSku().get(sku) : null;
-
-            // Dos preguntas distintas sobre el mismo SKU. Al Excel hay que agregarle una fila si
-            // todavía no la tiene, y eso no depende de si está medido ni de cuántas unidades trae
-            // la etiqueta: la fila es donde después se cargan las medidas y el embalaje, y un SKU
-            // que solo sale de a varias unidades avisa en papel igual, así que sin esto el operario
-            // iría al Excel y no encontraría la fila que el aviso le pide completar.
-            boolean skuSinFila = skuElegible && medidaSku == null;
-            // Medir es otra cosa: la fila puede existir y estar vacía.
-            boolean skuPendienteMedicion = skuElegible && (medidaSku == null || !medidaSku.estaMedido());
-
-            if (skuSinFila) {
-                skusPendientesOut.putIfAbsent(sku,
-                        group.productDescription() != null ? group.productDescription() : "");
-            }
-
-            // Datos de embalaje del SKU. Son los mismos para todas las etiquetas del grupo, pero
-            // las líneas dependen de la cantidad de cada una, así que se arman más abajo.
-            DatosEmbalaje datosEmbalaje = skuElegible
-                    ? EstadoDato.embalajeDe(medidaSku, moduloEmbalajeActivo)
-                    : DatosEmbalaje.VACIO;
-
-            List<ZplLabel> newLabels = new ArrayList<>();
-            for (ZplLabel label : group.labels()) {
-                String raw = label.rawZpl();
-                // Un pedido de dos o más unidades no es un producto suelto, así que el envase sale
-                // encabezado como referencia. Los avisos salen igual: no dependen de la cantidad.
-                List<String> lineasEmbalaje = EmbalajeRenderer.lineas(datosEmbalaje, label.quantity());
-                String embalajeZpl = EmbalajeRenderer.campoZpl(lineasEmbalaje);
-                // El aviso final lista exactamente los SKU que salieron avisados en papel.
-                if (embalajesFaltantesOut != null
-                        && EmbalajeRenderer.avisaSinEstandarizar(lineasEmbalaje)) {
-                    embalajesFaltantesOut.add(sku);
-                }
-                if (sinDatosOut != null && EmbalajeRenderer.avisaSinDatos(lineasEmbalaje)) {
-                    sinDatosOut.add(sku);
-                }
-                // Las líneas de embalaje ocupan la franja donde ML imprime "Recortá esta parte...",
-                // que no le sirve al operario. Se quita antes de calcular el punto de inserción para
-                // que el índice corresponda al texto que efectivamente se va a partir.
-                if (!embalajeZpl.isEmpty()) {
-                    raw = quitarTextoRecorte(raw, sku);
-                }
-                // Inyectar número de posición (#1, #2, ...) arriba a la izquierda en negrita
-                // Se inserta antes de ^LH (si existe) para que use coordenadas absolutas (top-left del label)
-                String posText = "#" + labelPosition;
-                int lhIdx = raw.indexOf("^LH");
-                int insertIdx = lhIdx >= 0 ? lhIdx : raw.indexOf("^XA") + 3;
-                // ^LH0,0 resetea el label home a (0,0) para usar coordenadas absolutas. Y=30 para no ser cortado por el borde superior
-                String posField1 = "^FO45,30^A0N,35,35^FD" + posText + "^FS";
-                String posField2 = "^FO46,30^A0N,35,35^FD" + posText + "^FS";
-                String posField3 = "^FO45,31^A0N,35,35^FD" + posText + "^FS";
-                String medirPrefix = "";
-                // Medir sí necesita el producto suelto: con dos o más unidades el operario no tiene
-                // uno para pasarle la cinta.
-                boolean necesitaMedir = skuPendienteMedicion && label.quantity() == 1;
-                // Solo marcamos una etiqueta por SKU aunque haya varias elegibles (todas de 1 unidad).
-                // Alcanza con una sola medición para cargar las dimensiones del SKU.
-                if (BANNER_MEDIR && necesitaMedir && skusYaMarcados.add(sku)) {
-                    // Banner MEDIR: [SKU] en video inverso (blanco sobre negro), bien visible.
-                    // Va debajo del #X (que termina en y=65) y encima del "Pack ID:" de ML (y=129),
-                    // ocupando el ancho hasta x=400. El margen superior derecho quedó para las
-                    // líneas de embalaje, que necesitan todo el alto para las observaciones largas.
-                    // Los SKU son de 7 dígitos, así que el texto mide 14 caracteres: con fuente 42
-                    // ocupa ~322 de los 380 de ancho y entra sin necesidad de una segunda línea.
-                    String medirText = "MEDIR: " + sku;
-                    medirPrefix =
-                            "^FO20,70^GB380,52,52^FS\n"
-                            + "^FO20,75^A0N,42,42^FB380,1,0,C^FR^FD" + medirText + "^FS\n";
-                }
-                String inyectado = "^LH0,0\n" + posField1 + "\n" + posField2 + "\n" + posField3 + "\n" + embalajeZpl + medirPrefix;
-                raw = raw.substring(0, insertIdx) + inyectado + raw.substring(insertIdx);
-                // A partir de acá arranca el ZPL de ML. Las anclas se buscan solo ahí: OBS es
-                // texto libre del Excel y una observación que diga "2 Unidades por caja" haría
-                // que ZONA se posicione tomando como referencia la línea de embalaje.
-                final int inicioMl = insertIdx + inyectado.length();
-                labelPosition++;
-
-                // Parsear ^LH original para convertir coordenadas relativas a absolutas
-                int origLhX = 0, origLhY = 0;
-                Matcher lhMatcher = LH_PATTERN.matcher(raw);
-                // Buscar el segundo ^LH (el primero es el ^LH0,0 inyectado para #X)
-                if (lhMatcher.find() && lhMatcher.find()) {
-                    origLhX = Integer.parseInt(lhMatcher.group(1));
-                    origLhY = Integer.parseInt(lhMatcher.group(2));
-                }
-
-                // 1. Inyectar ZONA siempre debajo de "Unidades"
-                int unidadIdx = raw.indexOf(ANCHOR_UNIDAD, inicioMl);
-                if (unidadIdx < 0) {
-                    AppLogger.warn("ZPL - No se encontró el ancla '" + ANCHOR_UNIDAD
-                            + "' para inyectar ZONA (sku=" + sku + ", zona=" + zone
-                            + "). ¿Cambió el formato de etiqueta de ML?");
-                } else {
-                    int zoneAnchorFsIdx = raw.indexOf("^FS", unidadIdx);
-                    int zoneAnchorFoIdx = raw.lastIndexOf("^FO", unidadIdx);
-                    if (zoneAnchorFoIdx >= 0 && zoneAnchorFsIdx >= 0) {
-                        String segment = raw.substring(zoneAnchorFoIdx, zoneAnchorFsIdx);
-                        Matcher foMatcher = FO_PATTERN.matcher(segment);
-                        Matcher fontMatcher = FONT_PATTERN.matcher(segment);
-                        Matcher fbMatcher = FB_PATTERN.matcher(segment);
-                        if (foMatcher.find()) {
-                            int y = Integer.parseInt(foMatcher.group(2));
-                            int fontH = fontMatcher.find() ? Integer.parseInt(fontMatcher.group(1)) : 28;
-                            int fbLines = fbMatcher.find() ? Integer.parseInt(fbMatcher.group(2)) : 1;
-                            int newY = y + (fontH * fbLines) + 4;
-                            int fontSize = 25;
-                            // Usar coordenadas absolutas (^LH0,0) para alinear con la tijera/logo
-                            int absZoneX = 20;
-                            int absZoneY = origLhY + newY;
-                            String field1 = "^LH0,0\n^FO" + absZoneX + "," + absZoneY + "^A0N," + fontSize + "," + fontSize + "^FD" + zoneText + "^FS";
-                            String field2 = "^FO" + (absZoneX + 1) + "," + absZoneY + "^A0N," + fontSize + "," + fontSize + "^FD" + zoneText + "^FS";
-                            String restoreLh = "\n^LH" + origLhX + "," + origLhY;
-                            raw = raw.substring(0, zoneAnchorFsIdx + 3) + "\n" + field1 + "\n" + field2 + restoreLh + raw.substring(zoneAnchorFsIdx + 3);
-                        }
-                    }
-                }
-
-                // 2. Inyectar COD.EXT. debajo del último SKU (solo para zonas que no son CARROS)
-                if (extCodeText != null) {
-                    int lastSkuIdx = raw.lastIndexOf(ANCHOR_SKU);
-                    if (lastSkuIdx < inicioMl) lastSkuIdx = -1;
-                    if (lastSkuIdx < 0) {
-                        AppLogger.warn("ZPL - No se encontró el ancla '" + ANCHOR_SKU
-                                + "' para inyectar COD.EXT. (sku=" + sku + ", zona=" + zone
-                                + "). ¿Cambió el formato de etiqueta de ML?");
-                    } else {
-                        int extAnchorFsIdx = raw.indexOf("^FS", lastSkuIdx);
-                        int extAnchorFoIdx = raw.lastIndexOf("^FO", lastSkuIdx);
-                        if (extAnchorFoIdx >= 0 && extAnchorFsIdx >= 0) {
-                            String segment = raw.substring(extAnchorFoIdx, extAnchorFsIdx);
-                            Matcher foMatcher = FO_PATTERN.matcher(segment);
-                            Matcher fontMatcher = FONT_PATTERN.matcher(segment);
-                            Matcher fbMatcher = FB_PATTERN.matcher(segment);
-                            if (foMatcher.find()) {
-                                int x = Integer.parseInt(foMatcher.group(1));
-                                int y = Integer.parseInt(foMatcher.group(2));
-                                int fontH = fontMatcher.find() ? Integer.parseInt(fontMatcher.group(1)) : 28;
-                                int fbLines = fbMatcher.find() ? Integer.parseInt(fbMatcher.group(2)) : 1;
-                                int newY = y + (fontH * fbLines) + 4;
-                                int fontSize = 25;
-                                String field1 = "^FO" + x + "," + newY + "^A0N," + fontSize + "," + fontSize + "^FD" + extCodeText + "^FS";
-                                String field2 = "^FO" + (x + 1) + "," + newY + "^A0N," + fontSize + "," + fontSize + "^FD" + extCodeText + "^FS";
-                                raw = raw.substring(0, extAnchorFsIdx + 3) + "\n" + field1 + "\n" + field2 + raw.substring(extAnchorFsIdx + 3);
-                            }
-                        }
-                    }
-                }
-                // Resaltar número de unidad (video inverso) si > 1 y zona no es CARROS ni RETIROS
-                raw = highlightUnitIfNeeded(raw, zone);
-                // Para CARROS con productos listados, resaltar cantidades individuales > 1 (ej: "| 3 u.")
-                // y agregar COD.EXT. inline junto a cada SKU listado
-                if ("CARROS".equals(zone)) {
-                    raw = highlightCarrosProductQuantities(raw);
-                    raw = injectCarrosExtCodes(raw, skuToExtCode);
-                }
-                newLabels.add(new ZplLabel(raw, label.sku(), label.productDescription(), label.details(), label.quantity(), label.turbo(), label.orderIds()));
-            }
-            newGroups.add(new SortedLabelGroup(zone, group.sku(), group.productDescription(),
-                    group.details(), newLabels));
-        }
-        return new SortResult(newGroups, result.statistics());
-    }
-
-    /**
-     * Elimina el campo de ML "Recortá esta parte de la etiqueta para que tu paquete viaje seguro",
-     * que ocupa la franja donde van las líneas de embalaje. Se busca por el fragmento "ecort" —sin
-     * acentos ni mayúsculas— para no depender de cómo ML codifique la tilde, y se corta desde su
-     * ^FO hasta su ^FS.
-     *
-     * Si el ancla no aparece (ML cambió el texto) se registra una advertencia y la etiqueta sale
-     * con los dos textos encimados: visible, en vez de perder el embalaje en silencio.
-     */
-    private String quitarTextoRecorte(String rawZpl, String sku) {
-        int idx = rawZpl.indexOf(ANCHOR_RECORTE);
-        if (idx < 0) {
-            AppLogger.warn("ZPL - No se encontró el ancla '" + ANCHOR_RECORTE
-                    + "' para quitar el texto de recorte (sku=" + sku
-                    + "). Las líneas de embalaje pueden encimarse. ¿Cambió el formato de ML?");
-            return rawZpl;
-        }
-        int inicio = rawZpl.lastIndexOf("^FO", idx);
-        int fin = rawZpl.indexOf("^FS", idx);
-        if (inicio < 0 || fin < 0) return rawZpl;
-        return rawZpl.substring(0, inicio) + rawZpl.substring(fin + 3);
-    }
-
-    private String highlightUnitIfNeeded(String rawZpl, String zone) {
-        String zoneUpper = zone.toUpperCase();
-        if (zoneUpper.startsWith("CARROS") || zoneUpper.startsWith("RETIROS")) {
-            return rawZpl;
-        }
-        Matcher m = UNIT_PATTERN.matcher(rawZpl);
-        if (m.find()) {
-            int unitNum = Integer.parseInt(m.group(4));
-            if (unitNum > 1) {
-                int x = Integer.parseInt(m.group(2));
-                int y = Integer.parseInt(m.group(3));
-                // Caja negra rellena detrás del número, tamaño ajustado a la cantidad de dígitos
-                int digits = String.valueOf(unitNum).length();
-                int boxW = digits * 50 + 28;
-                int boxH = 76;
-                int boxX = x + (160 - boxW) / 2;
-                String box = "^FO" + boxX + "," + (y - 3) + "^GB" + boxW + "," + boxH + "," + boxH + "^FS\n";
-                // ^FR debe ir ANTES de ^FD para invertir el campo (blanco sobre negro)
-                String prefix = m.group(1); // termina en ^FD
-                String correctedPrefix = prefix.substring(0, prefix.length() - 3) + "^FR^FD";
-                String replacement = box + correctedPrefix + m.group(4) + m.group(5);
-                rawZpl = m.replaceFirst(Matcher.quoteReplacement(replacement));
-            }
-        }
-        return rawZpl;
-    }
-
-    private static final Pattern CHECKBOX_PATTERN = Pattern.compile("\\^FO(\\d+),(\\d+)\\^GB30,30,3\\^FS");
-    private static final Pattern PRODUCT_QTY_PATTERN = Pattern.compile("\\|\\s*(\\d+)\\s*u\\.");
-    /** Convierte texto ZPL con ^FH hex a forma renderizada: cada secuencia UTF-8 (_C3_A9 etc.) se reemplaza por 'X'. */
-    private static String toRenderedForm(String fdText) {
-        StringBuilder sb = new StringBuilder();
-        int i = 0;
-        while (i < fdText.length()) {
-            if (i + 2 < fdText.length() && fdText.charAt(i) == '_'
-                    && isHexDigit(fdText.charAt(i + 1)) && isHexDigit(fdText.charAt(i + 2))) {
-                int firstByte = Integer.parseInt(fdText.substring(i + 1, i + 3), 16);
-                i += 3;
-                int extraBytes = 0;
-                if (firstByte >= 0xC0 && firstByte < 0xE0) extraBytes = 1;
-                else if (firstByte >= 0xE0 && firstByte < 0xF0) extraBytes = 2;
-                else if (firstByte >= 0xF0) extraBytes = 3;
-                for (int b = 0; b < extraBytes; b++) {
-                    if (i + 2 < fdText.length() && fdText.charAt(i) == '_'
-                            && isHexDigit(fdText.charAt(i + 1)) && isHexDigit(fdText.charAt(i + 2))) {
-                        i += 3;
-                    } else break;
-                }
-                sb.append('X');
-            } else {
-                sb.append(fdText.charAt(i));
-                i++;
-            }
-        }
-        return sb.toString();
-    }
-
-    private static boolean isHexDigit(char c) {
-        return (c >= '0' && c <= '9') || (c >= 'A' && c <= 'F') || (c >= 'a' && c <= 'f');
-    }
-
-    private String highlightCarrosProductQuantities(String rawZpl) {
-        // Buscar checkboxes de productos y detectar cuáles tienen "| N u." con N > 1
-        Matcher m = CHECKBOX_PATTERN.matcher(rawZpl);
-        List<int[]> mods = new ArrayList<>();
-
-        while (m.find()) {
-            int afterCheckbox = m.end();
-            int fdStart = rawZpl.indexOf("^FD", afterCheckbox);
-            int fsEnd = fdStart >= 0 ? rawZpl.indexOf("^FS", fdStart) : -1;
-            if (fdStart >= 0 && fsEnd >= 0 && (fdStart - afterCheckbox) < 200) {
-                String fdContent = rawZpl.substring(fdStart + 3, fsEnd);
-                Matcher qtyM = PRODUCT_QTY_PATTERN.matcher(fdContent);
-                if (qtyM.find()) {
-                    int qty = Integer.parseInt(qtyM.group(1));
-                    if (qty > 1) {
-                        int removeStart = fdStart + 3 + qtyM.start();
-                        int removeEnd = fdStart + 3 + qtyM.end();
-                        // Incluir espacio previo al |
-                        if (removeStart > 0 && rawZpl.charAt(removeStart - 1) == ' ') {
-                            removeStart--;
-                        }
-
-                        // Parsear posición y fuente del campo de texto del producto
-                        String fieldSetup = rawZpl.substring(afterCheckbox, fdStart);
-                        Matcher foM = FO_PATTERN.matcher(fieldSetup);
-                        int textX = 200, textY = Integer.parseInt(m.group(2));
-                        if (foM.find()) {
-                            textX = Integer.parseInt(foM.group(1));
-                            textY = Integer.parseInt(foM.group(2));
-                        }
-                        Matcher fontM = FONT_PATTERN.matcher(fieldSetup);
-                        int fontH = 22, fontW = 22;
-                        if (fontM.find()) {
-                            fontH = Integer.parseInt(fontM.group(1));
-                            fontW = Integer.parseInt(fontM.group(2));
-                            if (fontW == 0) fontW = fontH;
-                        }
-                        Matcher fbM = FB_PATTERN.matcher(fieldSetup);
-                        int fbWidth = 570;
-                        if (fbM.find()) {
-                            fbWidth = Integer.parseInt(fbM.group(1));
-                        }
-
-                        // Calcular texto restante (sin " | N u.")
-                        int fdContentRemoveStart = removeStart - (fdStart + 3);
-                        int fdContentRemoveEnd = removeEnd - (fdStart + 3);
-                        String remainingText = fdContent.substring(0, fdContentRemoveStart) + fdContent.substring(fdContentRemoveEnd);
-
-                        // Convertir a forma renderizada (hex → char placeholder) para simular word-wrap
-                        // Usar remainingText completo (con "...") para que el wrap refleje lo que realmente se renderiza
-                        String rendered = toRenderedForm(remainingText);
-                        // Factor para word-wrap (ajustado para coincidir con wrapping real de ZPL A0)
-                        double wrapCharW = fontW * 0.46;
-                        int charsPerLine = Math.max(1, (int) (fbWidth / wrapCharW));
-
-                        // Simular word-wrap de ^FB para encontrar posición en la última línea
-                        int lineNum = 0;
-                        int pos = 0;
-                        int lastLineChars = 0;
-                        while (pos < rendered.length()) {
-                            int remaining = rendered.length() - pos;
-                            if (remaining <= charsPerLine) {
-                                lastLineChars = remaining;
-                                break;
-                            }
-                            int maxEnd = pos + charsPerLine;
-                            int lastSpace = rendered.lastIndexOf(' ', maxEnd);
-                            if (lastSpace > pos) {
-                                pos = lastSpace + 1;
-                            } else {
-                                pos = maxEnd;
-                            }
-                            lineNum++;
-                        }
-
-                        // Badge inline después del texto visible
-                        String qtyTextTemp = qty + " u.";
-                        int boxWTemp = qtyTextTemp.length() * 13 + 8;
-                        double posCharW = fontW * 0.50;
-                        int qtyX = textX + (int) (lastLineChars * posCharW) + 16;
-
-                        // Si no cabe en la línea, mover a la siguiente alineado a la izquierda
-                        if (qtyX + boxWTemp > textX + fbWidth) {
-                            qtyX = textX;
-                            lineNum++;
-                        }
-                        int qtyY = textY + lineNum * fontH;
-
-                        mods.add(new int[]{qty, qtyX, qtyY, fontH, removeStart, removeEnd, fsEnd + 3});
-                    }
-                }
-            }
-        }
-
-        if (mods.isEmpty()) return rawZpl;
-
-        // Aplicar de atrás hacia adelante para no desplazar índices
-        StringBuilder sb = new StringBuilder(rawZpl);
-        for (int i = mods.size() - 1; i >= 0; i--) {
-            int[] mod = mods.get(i);
-            int qty = mod[0], qtyX = mod[1], qtyY = mod[2];
-            int fontH = mod[3];
-            int removeStart = mod[4], removeEnd = mod[5];
-            int insertPos = mod[6];
-
-            // Superponer "N u." resaltado (video inverso) sobre el texto original
-            String qtyText = qty + " u.";
-            int fontSize = Math.min(fontH, 22);
-            int boxW = qtyText.length() * 13 + 8;
-            int boxH = fontSize + 4;
-            String boldField = "\n^FO" + qtyX + "," + (qtyY - 1)
-                    + "^GB" + boxW + "," + boxH + "," + boxH + "^FS"
-                    + "\n^FO" + qtyX + "," + (qtyY + 1)
-                    + "^A0N," + fontSize + "," + fontSize + "^FB" + boxW + ",1,0,C^FR^FD" + qtyText + "^FS";
-            // Primero insertar el campo resaltado (posición posterior), luego borrar " | N u." del texto original
-            sb.insert(insertPos, boldField);
-            sb.delete(removeStart, removeEnd);
-        }
-
-        return sb.toString();
-    }
-
-    private String injectCarrosExtCodes(String rawZpl, Map<String, String> skuToExtCode) {
-        Matcher m = CARROS_SKU_FIELD.matcher(rawZpl);
-        StringBuilder sb = new StringBuilder();
-        while (m.find()) {
-            String prefix = m.group(1);
-            String sku = m.group(2);
-            String suffix = m.group(3);
-            String fsTag = m.group(4);
-            String extCode = skuToExtCode.getOrDefault(sku, "");
-            String ceText = " | COD.EXT.: " + (extCode.isEmpty() ? "-" : extCode);
-            m.appendReplacement(sb, Matcher.quoteReplacement(prefix + sku + suffix + ceText + fsTag));
-        }
-        m.appendTail(sb);
-        return sb.toString();
+        ZplHeaderInjector injector = new ZplHeaderInjector(excelMapping.skuToExternalCode(),
+                loadComboCatalog(comboPath), medidas, zplLayouts);
+        return injector.inject(result, skusPendientesOut, embalajesFaltantesOut, sinDatosOut);
     }
 
     /**
@@ -2250,46 +2065,16 @@ public class MainController {
         return agregados;
     }
 
-    private Map<String, ComboProduct> loadNormalizedCombos(String comboPath) {
+    private ComboCatalog loadComboCatalog(String comboPath) {
         if (comboPath == null || comboPath.isBlank()) return null;
         try {
-            Map<String, ComboProduct> all = comboExcelReader.read(Path.of(comboPath));
-            if (all.isEmpty()) return null;
-            Map<String, ComboProduct> normalized = new LinkedHashMap<>(all);
-            for (var entry : all.entrySet()) {
-                String norm = ZplParser.normalizeSku(entry.getKey());
-                if (norm != null && !norm.startsWith("SKU INVALIDO")) {
-                    normalized.putIfAbsent(norm, entry.getValue());
-                }
-            }
-            return normalized;
+            return comboCatalogs.leer(Path.of(comboPath));
         } catch (Exception e) {
             AppLogger.warn("Error al leer Excel de combos para COD.EXT.: " + e.getMessage());
             return null;
         }
     }
 
-    private String resolveSingleComponentExtCode(String sku, Map<String, ComboProduct> combos, Map<String, String> skuToExtCode) {
-        ComboProduct combo = combos.get(sku);
-        if (combo == null) {
-            String norm = ZplParser.normalizeSku(sku);
-            if (norm != null && !norm.startsWith("SKU INVALIDO")) {
-                combo = combos.get(norm);
-            }
-        }
-        if (combo == null || combo.componentes().size() != 1) return null;
-        String componentSku = combo.componentes().getFirst().codigoComponente();
-        if (componentSku == null || componentSku.isBlank()) return null;
-        String ext = skuToExtCode.getOrDefault(componentSku, "");
-        if (ext.isEmpty()) {
-            String normComp = ZplParser.normalizeSku(componentSku);
-            if (normComp != null && !normComp.startsWith("SKU INVALIDO")) {
-                ext = skuToExtCode.getOrDefault(normComp, "");
-            }
-        }
-        return ext.isEmpty() ? null : ext;
-    }
-
     private int extractQuantityFromLabels(List<ZplLabel> labels) {
         int total = 0;
         for (ZplLabel label : labels) {
@@ -2441,7 +2226,7 @@ public class MainController {
         String text = sj.toString();
         statsLabel.setText(text);
         Tooltip tip = new Tooltip(text.replace(SEP_RESUMEN, "\n"));
-        tip.setShowDelay(Duration.millis(200));
+        tip.setShowDelay(DEMORA_TOOLTIP);
         statsLabel.setTooltip(tip);
         statsBar.setVisible(true);
         statsBar.setManaged(true);
@@ -2511,7 +2296,7 @@ public class MainController {
             mostrarFilas(vista.filas());
             statsLabel.setText(vista.estadisticas());
             Tooltip tip = new Tooltip(vista.estadisticas().replace(SEP_RESUMEN, "\n"));
-            tip.setShowDelay(Duration.millis(200));
+            tip.setShowDelay(DEMORA_TOOLTIP);
             statsLabel.setTooltip(tip);
             statsBar.setVisible(true);
             statsBar.setManaged(true);
@@ -0,0 +1,55 @@
+package ar.com.leo.util;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lo leído de un archivo, guardado mientras el archivo siga igual: mismo tamaño y misma fecha de
+ * modificación. Es para los Excel que se abren con POI en cada lote y casi nunca cambian, donde
+ * abrir el libro tarda más que todo lo demás.
+ *
+ * Si el archivo cambia se vuelve a leer la próxima vez que se pide. Si no existe no se guarda nada
+ * y el lector falla como fallaría sin esta clase.
+ *
+ * Lo que se guarda es lo que devuelve el lector, no el libro, así que cada forma de leer el archivo
+ * tiene su propio caché. El Excel de combos tiene dos: el de las etiquetas en {@code MainController},
+ * que arma un {@code ComboCatalog}, y el del pickit en {@code ExcelManager}, que arma sus
+ * {@code ComboEntry}. Si el archivo cambia, cada uno lo relee la próxima vez que se usa.
+ */
+public final class ArchivoCache<T> {
+
+    @FunctionalInterface
+    public interface Lector<T> {
+        T leer(Path archivo) throws Exception;
+    }
+
+    private record Entrada<T>(long tamanio, FileTime modificado, T valor) {
+    }
+
+    private final Lector<T> lector;
+    private final Map<Path, Entrada<T>> entradas = new ConcurrentHashMap<>();
+
+    public ArchivoCache(Lector<T> lector) {
+        this.lector = lector;
+    }
+
+    public T leer(Path archivo) throws Exception {
+        Path clave = archivo.toAbsolutePath().normalize();
+        if (!Files.isRegularFile(clave)) return lector.leer(archivo);
+        // Los atributos se toman antes de leer: si el archivo cambia mientras se lee, lo guardado
+        // queda con la fecha vieja y la próxima vez se relee.
+        BasicFileAttributes atributos = Files.readAttributes(clave, BasicFileAttributes.class);
+        Entrada<T> entrada = entradas.get(clave);
+        if (entrada != null && entrada.tamanio() == atributos.size()
+                && entrada.modificado().equals(atributos.lastModifiedTime())) {
+            return entrada.valor();
+        }
+        T valor = lector.leer(archivo);
+        entradas.put(clave, new Entrada<>(atributos.size(), atributos.lastModifiedTime(), valor));
+        return valor;
+    }
+}
@@ -1,36 +1,152 @@
 package ar.com.leo.util;
 
 import java.nio.charset.StandardCharsets;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
 
+/**
+ * Decodifica los escapes _XX que ML usa con ^FH para los acentos y la ñ: cada tirada contigua de
+ * _XX son los bytes UTF-8 de uno o más caracteres.
+ *
+ * Las etiquetas vienen llenas de estos escapes y esto corre para cada campo de cada etiqueta, así
+ * que se recorre carácter por carácter con una tabla de nibbles, sin expresiones regulares ni
+ * Strings intermedios. Si el texto no tiene ningún escape válido se devuelve tal cual.
+ */
 public final class ZplHexDecoder {
 
-    // Matchea secuencias contiguas de _XX (una o más)
-    private static final Pattern HEX_SEQ_PATTERN = Pattern.compile("(_[0-9A-Fa-f]{2})+");
-    private static final Pattern SINGLE_HEX = Pattern.compile("_([0-9A-Fa-f]{2})");
+    /** El valor de cada dígito hexadecimal ASCII, o -1. */
+    private static final byte[] NIBBLE = new byte[128];
+
+    static {
+        Arrays.fill(NIBBLE, (byte) -1);
+        for (int i = 0; i < 10; i++) NIBBLE['0' + i] = (byte) i;
+        for (int i = 0; i < 6; i++) {
+            NIBBLE['A' + i] = (byte) (10 + i);
+            NIBBLE['a' + i] = (byte) (10 + i);
+        }
+    }
 
     private ZplHexDecoder() {
     }
 
     public static String decode(String zpl) {
-        if (zpl == null || !zpl.contains("_")) {
-            return zpl;
+        if (zpl == null) return null;
+        int primero = primerEscape(zpl, 0, zpl.length());
+        if (primero < 0) return zpl;
+        StringBuilder sb = new StringBuilder(zpl.length());
+        sb.append(zpl, 0, primero);
+        decode(zpl, primero, zpl.length(), sb);
+        return sb.toString();
+    }
+
+    /**
+     * Decodifica un solo campo de un bloque —el contenido de un ^FD— sin tocar el resto. Si no
+     * tiene escapes sale la copia directa del pedazo.
+     */
+    public static String decodeField(CharSequence bloque, int desde, int hasta) {
+        int primero = primerEscape(bloque, desde, hasta);
+        if (primero < 0) return bloque.subSequence(desde, hasta).toString();
+        StringBuilder sb = new StringBuilder(hasta - desde);
+        sb.append(bloque, desde, primero);
+        decode(bloque, primero, hasta, sb);
+        return sb.toString();
+    }
+
+    /** Decodifica {@code texto[desde, hasta)} agregándolo al final de {@code destino}. */
+    public static void decode(CharSequence texto, int desde, int hasta, StringBuilder destino) {
+        int copiado = desde;
+        int i = desde;
+        while (i < hasta) {
+            if (texto.charAt(i) != '_' || hexByte(texto, i, hasta) < 0) {
+                i++;
+                continue;
+            }
+            int finTirada = i + 3;
+            while (hexByte(texto, finTirada, hasta) >= 0) finTirada += 3;
+            destino.append(texto, copiado, i);
+            decodificarTirada(texto, i, finTirada, destino);
+            i = copiado = finTirada;
         }
-        Matcher seqMatcher = HEX_SEQ_PATTERN.matcher(zpl);
-        StringBuilder sb = new StringBuilder();
-        while (seqMatcher.find()) {
-            String seq = seqMatcher.group();
-            Matcher hexMatcher = SINGLE_HEX.matcher(seq);
-            byte[] bytes = new byte[seq.length() / 3]; // cada _XX son 3 chars
-            int i = 0;
-            while (hexMatcher.find()) {
-                bytes[i++] = (byte) Integer.parseInt(hexMatcher.group(1), 16);
+        destino.append(texto, copiado, hasta);
+    }
+
+    /** El byte del escape _XX que empieza en {@code i}, o -1 si ahí no hay uno. */
+    public static int hexByte(CharSequence texto, int i, int hasta) {
+        if (i + 2 >= hasta || texto.charAt(i) != '_') return -1;
+        int alto = nibble(texto.charAt(i + 1));
+        int bajo = nibble(texto.charAt(i + 2));
+        return (alto | bajo) < 0 ? -1 : alto << 4 | bajo;
+    }
+
+    private static int nibble(char c) {
+        return c < NIBBLE.length ? NIBBLE[c] : -1;
+    }
+
+    private static int primerEscape(CharSequence texto, int desde, int hasta) {
+        for (int i = desde; i < hasta; i++) {
+            if (texto.charAt(i) == '_' && hexByte(texto, i, hasta) >= 0) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Arma los caracteres de una tirada de escapes directamente desde los bytes UTF-8. Si la tirada
+     * está mal formada —un byte suelto, un carácter cortado— se descarta lo agregado y se
+     * decodifica con el decoder del JDK, para que los reemplazos salgan igual que siempre.
+     */
+    private static void decodificarTirada(CharSequence texto, int desde, int hasta, StringBuilder destino) {
+        int marca = destino.length();
+        int i = desde;
+        while (i < hasta) {
+            int b0 = hexByte(texto, i, hasta);
+            if (b0 < 0x80) {
+                destino.append((char) b0);
+                i += 3;
+                continue;
+            }
+            int largo;
+            int cp;
+            if (b0 >= 0xC2 && b0 <= 0xDF) {
+                largo = 2;
+                cp = b0 & 0x1F;
+            } else if (b0 >= 0xE0 && b0 <= 0xEF) {
+                largo = 3;
+                cp = b0 & 0x0F;
+            } else if (b0 >= 0xF0 && b0 <= 0xF4) {
+                largo = 4;
+                cp = b0 & 0x07;
+            } else {
+                malFormada(texto, desde, hasta, destino, marca);
+                return;
+            }
+            if (i + 3 * largo > hasta) {
+                malFormada(texto, desde, hasta, destino, marca);
+                return;
             }
-            String decoded = new String(bytes, 0, i, StandardCharsets.UTF_8);
-            seqMatcher.appendReplacement(sb, Matcher.quoteReplacement(decoded));
+            for (int k = 1; k < largo; k++) {
+                int b = hexByte(texto, i + 3 * k, hasta);
+                if ((b & 0xC0) != 0x80) {
+                    malFormada(texto, desde, hasta, destino, marca);
+                    return;
+                }
+                cp = cp << 6 | b & 0x3F;
+            }
+            // Las formas largas de más, las mitades de surrogate y lo que pasa de U+10FFFF.
+            if (largo == 3 && (cp < 0x800 || cp >= 0xD800 && cp <= 0xDFFF)
+                    || largo == 4 && (cp < 0x10000 || cp > 0x10FFFF)) {
+                malFormada(texto, desde, hasta, destino, marca);
+                return;
+            }
+            destino.appendCodePoint(cp);
+            i += 3 * largo;
         }
-        seqMatcher.appendTail(sb);
-        return sb.toString();
+    }
+
+    private static void malFormada(CharSequence texto, int desde, int hasta, StringBuilder destino, int marca) {
+        destino.setLength(marca);
+        byte[] bytes = new byte[(hasta - desde) / 3];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) hexByte(texto, desde + 3 * i, hasta);
+        }
+        destino.append(new String(bytes, StandardCharsets.UTF_8));
     }
 }
@@ -0,0 +1,207 @@
+package ar.com.leo.etiquetas.injector;
+
+import ar.com.leo.AppLogger;
+import ar.com.leo.etiquetas.model.SortResult;
+import ar.com.leo.etiquetas.model.SortedLabelGroup;
+import ar.com.leo.etiquetas.model.ZplLabel;
+import ar.com.leo.etiquetas.model.ZplLote;
+import ar.com.leo.etiquetas.parser.ZplDocument;
+import ar.com.leo.etiquetas.sorter.LabelSorter;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZplHeaderInjectorTest {
+
+    private static String inyectar(ZplLabel label, Map<String, String> skuToZone, Map<String, String> skuToExtCode) {
+        Map<String, String> pendientes = new LinkedHashMap<>();
+        Set<String> faltantes = new HashSet<>();
+        Set<String> sinDatos = new HashSet<>();
+        SortResult ordenado = new LabelSorter().sort(List.of(label), skuToZone);
+
+        SortResult result = new ZplHeaderInjector(skuToExtCode, null, null)
+                .inject(ordenado, pendientes, faltantes, sinDatos);
+
+        // Sin Excel de medidas no hay nada que reclamar.
+        assertTrue(pendientes.isEmpty() && faltantes.isEmpty() && sinDatos.isEmpty());
+        return result.sortedFlatList().getFirst().rawZpl();
+    }
+
+    @Test
+    void agregaPosicionZonaYCodigoExterno() {
+        String zpl = "^XA\n"
+                + "^LH0,90\n"
+                + "^FO10,130^A0N,70,70^FB160,1,0,C^FD2^FS\n"
+                + "^FO10,200^A0N,28,28^FDUnidades^FS\n"
+                + "^FO200,181^A0N,24,24^FH^FDColor: Gris  | SKU: 1241212^FS\n"
+                + "^XZ";
+
+        String inyectado = inyectar(new ZplLabel(zpl, "1241212", "d", "det"),
+                Map.of("1241212", "J1"), Map.of("1241212", "AB-12"));
+
+        assertEquals("^XA\n"
+                + "^LH0,0\n"
+                + "^FO45,30^A0N,35,35^FD#1^FS\n"
+                + "^FO46,30^A0N,35,35^FD#1^FS\n"
+                + "^FO45,31^A0N,35,35^FD#1^FS\n"
+                + "^LH0,90\n"
+                + "^FO51,127^GB78,76,76^FS\n"
+                + "^FO10,130^A0N,70,70^FB160,1,0,C^FR^FD2^FS\n"
+                + "^FO10,200^A0N,28,28^FDUnidades^FS\n"
+                + "^LH0,0\n"
+                + "^FO20,322^A0N,25,25^FDZONA: J1^FS\n"
+                + "^FO21,322^A0N,25,25^FDZONA: J1^FS\n"
+                + "^LH0,90\n"
+                + "^FO200,181^A0N,24,24^FH^FDColor: Gris  | SKU: 1241212^FS\n"
+                + "^FO200,209^A0N,25,25^FDCOD.EXT.: AB-12^FS\n"
+                + "^FO201,209^A0N,25,25^FDCOD.EXT.: AB-12^FS\n"
+                + "^XZ", inyectado);
+    }
+
+    @Test
+    void enUnCarroResaltaLasCantidadesYAgregaElCodigoDeCadaProducto() {
+        String zpl = "^XA\n"
+                + "^LH0,90\n"
+                + "^FO30,400^GB30,30,3^FS\n"
+                + "^FO70,402^A0N,22,22^FB570,2,0^FDMate | 3 u. SKU: 555^FS\n"
+                + "^FO30,450^GB30,30,3^FS\n"
+                + "^FO70,452^A0N,22,22^FDBombilla SKU: 777 | 1 u.^FS\n"
+                + "^XZ";
+
+        String inyectado = inyectar(new ZplLabel(zpl, "555\n777", "d", "det"), Map.of(), Map.of("555", "E-555"));
+
+        assertEquals("^XA\n"
+                + "^LH0,0\n"
+                + "^FO45,30^A0N,35,35^FD#1^FS\n"
+                + "^FO46,30^A0N,35,35^FD#1^FS\n"
+                + "^FO45,31^A0N,35,35^FD#1^FS\n"
+                + "^LH0,90\n"
+                + "^FO30,400^GB30,30,3^FS\n"
+                + "^FO70,402^A0N,22,22^FB570,2,0^FDMate SKU: 555 | COD.EXT.: E-555^FS\n"
+                + "^FO229,401^GB60,26,26^FS\n"
+                + "^FO229,403^A0N,22,22^FB60,1,0,C^FR^FD3 u.^FS\n"
+                + "^FO30,450^GB30,30,3^FS\n"
+                + "^FO70,452^A0N,22,22^FDBombilla SKU: 777 | 1 u. | COD.EXT.: -^FS\n"
+                + "^XZ", inyectado);
+    }
+
+    @Test
+    void enParaleloDaLoMismoQueEtiquetaPorEtiqueta() {
+        List<ZplLabel> labels = new ArrayList<>();
+        for (int i = 0; i < ZplHeaderInjector.ETIQUETAS_POR_TAREA * 5 + 3; i++) {
+            String sku = String.valueOf(100 + i % 7);
+            labels.add(new ZplLabel("^XA\n^LH0,90\n^FO10,130^A0N,70,70^FB160,1,0,C^FD" + (1 + i % 3) + "^FS\n"
+                    + "^FO10,200^A0N,28,28^FDUnidades^FS\n"
+                    + "^FO200,181^A0N,24,24^FH^FDPedido " + i + " | SKU: " + sku + "^FS\n^XZ", sku, "d", "det"));
+        }
+        Map<String, String> skuToZone = Map.of("100", "J1", "101", "T2", "102", "J3", "103", "RETIROS");
+        Map<String, String> skuToExtCode = Map.of("101", "X-1");
+        ZplHeaderInjector injector = new ZplHeaderInjector(skuToExtCode, null, null);
+        SortResult ordenado = new LabelSorter().sort(labels, skuToZone);
+
+        SortResult result = injector.inject(ordenado, new LinkedHashMap<>(), new HashSet<>(), new HashSet<>());
+
+        ZplLote lote = new ZplLote();
+        List<String> esperado = new ArrayList<>();
+        int posicion = 1;
+        for (SortedLabelGroup group : ordenado.groups()) {
+            String extCodeText = "COD.EXT.: " + skuToExtCode.getOrDefault(group.sku(), "-");
+            for (ZplLabel label : group.labels()) {
+                int inicio = injector.inyectar(ZplDocument.of(label), posicion++, group.zone(), group.sku(), extCodeText,
+                        "", "", lote, new ArrayList<>());
+                esperado.add(label.conZpl(lote, inicio, lote.tamanio() - inicio).rawZpl());
+            }
+        }
+        assertEquals(esperado, result.sortedFlatList().stream().map(ZplLabel::rawZpl).toList());
+        assertEquals(ordenado.groups().size(), result.groups().size());
+    }
+
+    @Test
+    void losAvisosSalenEnElOrdenDeLasEtiquetas() {
+        List<ZplLabel> labels = new ArrayList<>();
+        Map<String, String> skuToZone = new LinkedHashMap<>();
+        for (int i = 0; i < ZplHeaderInjector.ETIQUETAS_POR_TAREA * 5 + 3; i++) {
+            String sku = String.valueOf(1000 + i);
+            // Sin "Unidades" no hay dónde poner la ZONA.
+            labels.add(new ZplLabel("^XA\n^LH0,90\n^FO10,130^A0N,70,70^FB160,1,0,C^FD1^FS\n"
+                    + "^FO200,181^A0N,24,24^FH^FDPedido " + i + " | SKU: " + sku + "^FS\n^XZ", sku, "d", "det"));
+            skuToZone.put(sku, "J" + (1 + i % 4));
+        }
+        SortResult ordenado = new LabelSorter().sort(labels, skuToZone);
+        List<String> avisos = new ArrayList<>();
+        AppLogger.setUiLogger(avisos::add);
+        try {
+            new ZplHeaderInjector(Map.of(), null, null)
+                    .inject(ordenado, new LinkedHashMap<>(), new HashSet<>(), new HashSet<>());
+        } finally {
+            AppLogger.setUiLogger(null);
+        }
+
+        List<String> esperado = ordenado.sortedFlatList().stream()
+                .map(label -> "sku=" + label.sku() + ", zona=" + skuToZone.get(label.sku()))
+                .toList();
+        assertEquals(esperado, avisos.stream()
+                .filter(aviso -> aviso.contains("[WARN]"))
+                .map(aviso -> aviso.substring(aviso.indexOf("sku="), aviso.indexOf(")")))
+                .toList());
+    }
+
+    @Test
+    void lasEtiquetasDelMismoFormatoUsanLasMedidasYaLeidas() {
+        String zpl = "^XA\n^LH0,90\n^FO10,130^A0N,70,70^FB160,1,0,C^FD%s^FS\n"
+                + "^FO10,200^A0N,28,28^FB160,2,0,C^FDUnidades^FS\n"
+                + "^FO200,181^A0N,24,24^FB570,3,-1^FH^FD%s | SKU: 1241212^FS\n^XZ";
+        ZplLayoutCache layouts = new ZplLayoutCache();
+        ZplHeaderInjector injector = new ZplHeaderInjector(Map.of(), null, null, layouts);
+        ZplHeaderInjector sinNadaGuardado = new ZplHeaderInjector(Map.of(), null, null, new ZplLayoutCache());
+        ZplLote lote = new ZplLote();
+
+        for (String[] pedido : new String[][]{{"1", "Gris"}, {"12", "Azul marino"}, {"3", "Rojo"}}) {
+            String raw = String.format(zpl, pedido[0], pedido[1]);
+            int a = injector.inyectar(ZplDocument.of(raw), 1, "J1", "1241212", "COD.EXT.: -", "", "", lote, new ArrayList<>());
+            int b = sinNadaGuardado.inyectar(ZplDocument.of(raw), 1, "J1", "1241212", "COD.EXT.: -", "", "", lote, new ArrayList<>());
+            int fin = lote.tamanio();
+            assertEquals(new ZplLabel(lote, b, fin - b, "", "", "", 1, false, "").rawZpl(),
+                    new ZplLabel(lote, a, b - a, "", "", "", 1, false, "").rawZpl());
+        }
+
+        assertEquals(1, layouts.formatos());
+        // La primera etiqueta lee la ZONA y el COD.EXT.; las otras dos los toman de lo guardado.
+        assertEquals(2, layouts.fallos());
+        assertEquals(4, layouts.aciertos());
+    }
+
+    @Test
+    void dosFormatosConLaMismaHuellaNoSeConfunden() {
+        // Thue-Morse y su complemento de 2048 letras dan el mismo hash polinomial módulo 2^64.
+        StringBuilder a = new StringBuilder();
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 2048; i++) {
+            boolean par = Integer.bitCount(i) % 2 == 0;
+            a.append(par ? 'A' : 'B');
+            b.append(par ? 'B' : 'A');
+        }
+        String zpl = "^XA\n^FX%s\n^LH0,90\n^FO10,130^A0N,70,70^FB160,1,0,C^FD1^FS\n"
+                + "^FO10,200^A0N,28,28^FDUnidades^FS\n"
+                + "^FO200,181^A0N,24,24^FH^FDColor: Gris | SKU: 1241212^FS\n^XZ";
+        ZplDocument primero = ZplDocument.of(String.format(zpl, a));
+        ZplDocument segundo = ZplDocument.of(String.format(zpl, b));
+        assertEquals(primero.huella(), segundo.huella());
+
+        ZplLayoutCache layouts = new ZplLayoutCache();
+        assertNotNull(layouts.formato(primero));
+        assertNull(layouts.formato(segundo));
+        assertNotNull(layouts.formato(ZplDocument.of(String.format(zpl, a).replace("Gris", "Azul"))));
+        assertEquals(1, layouts.formatos());
+    }
+}
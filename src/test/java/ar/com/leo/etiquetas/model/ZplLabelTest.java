@@ -0,0 +1,33 @@
+package ar.com.leo.etiquetas.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ZplLabelTest {
+
+    @Test
+    void losSkuDeUnCarroSeSeparanAlCrearLaEtiqueta() {
+        ZplLabel label = new ZplLabel("^XA^XZ", " 20\n\n10 \n20\n", "d", "det");
+
+        assertEquals(List.of("20", "10"), label.skus());
+        assertEquals(2, label.distinctSkuCount());
+        assertEquals(0, new ZplLabel("^XA^XZ", "  ", "d", "det").distinctSkuCount());
+        assertEquals(0, new ZplLabel("^XA^XZ", null, "d", "det").distinctSkuCount());
+    }
+
+    @Test
+    void conOtroZplConservaLosSku() {
+        ZplLabel label = new ZplLabel("^XA^XZ", "1\n2", "d", "det");
+        ZplLote lote = new ZplLote();
+        int inicio = lote.agregar("^XA^FDotro^FS^XZ");
+
+        ZplLabel otra = label.conZpl(lote, inicio, lote.tamanio() - inicio);
+
+        assertSame(label.skus(), otra.skus());
+        assertEquals("^XA^FDotro^FS^XZ", otra.rawZpl());
+    }
+}
@@ -0,0 +1,72 @@
+package ar.com.leo.etiquetas.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ZplLoteTest {
+
+    @Test
+    void lasEtiquetasDeUnLoteDevuelvenSuTexto() {
+        ZplLote lote = new ZplLote(16);
+        String primera = "^XA^FDCañería 1€^FS^XZ";
+        String segunda = "^XA^FD📦 Envío^FS^XZ";
+        int inicio1 = lote.agregar(primera);
+        int inicio2 = lote.agregar(segunda);
+
+        ZplLabel a = new ZplLabel(lote, inicio1, inicio2 - inicio1, "1", "", "", 1, false, "");
+        ZplLabel b = new ZplLabel(lote, inicio2, lote.tamanio() - inicio2, "2", "", "", 1, false, "");
+
+        assertEquals(primera, a.rawZpl());
+        assertEquals(segunda, b.rawZpl());
+    }
+
+    @Test
+    void agregaSoloElPedazoPedido() {
+        ZplLote lote = new ZplLote();
+        int inicio = lote.agregar("xx^XA^XZyy", 2, 8);
+
+        assertEquals("^XA^XZ", lote.texto(inicio, lote.tamanio() - inicio));
+    }
+
+    @Test
+    void lasEtiquetasSeComparanPorElTextoYNoPorElLote() {
+        ZplLote lote = new ZplLote();
+        lote.agregar("basura");
+        int inicio = lote.agregar("^XA^FDñ^FS^XZ");
+        ZplLabel enLote = new ZplLabel(lote, inicio, lote.tamanio() - inicio, "1", "d", "x", 2, true, "9");
+        ZplLabel suelta = new ZplLabel("^XA^FDñ^FS^XZ", "1", "d", "x", 2, true, "9");
+
+        assertEquals(suelta, enLote);
+        assertEquals(suelta.hashCode(), enLote.hashCode());
+        assertNotEquals(suelta, enLote.conDatos("2", "d", "x", 2, true, "9"));
+    }
+
+    @Test
+    void loQueNoEntraEnUnArregloSeCortaAntesDeEscribir() {
+        ZplLote lote = new ZplLote(16);
+        lote.agregar("^XA");
+        // No hace falta tenerlo en memoria: se corta antes de leer el primer carácter.
+        CharSequence enorme = new CharSequence() {
+            @Override
+            public int length() {
+                return Integer.MAX_VALUE;
+            }
+
+            @Override
+            public char charAt(int i) {
+                return 'A';
+            }
+
+            @Override
+            public CharSequence subSequence(int desde, int hasta) {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        assertThrows(OutOfMemoryError.class, () -> lote.agregar(enorme));
+        assertEquals(3, lote.tamanio());
+    }
+}
@@ -0,0 +1,65 @@
+package ar.com.leo.etiquetas.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ComboCatalogTest {
+
+    private static ComboCatalog catalogo() {
+        Map<String, ComboProduct> combos = new LinkedHashMap<>();
+        combos.put("1001 KIT", new ComboProduct("1001 KIT", "Kit mate", List.of(
+                new ComboComponent("200", "Mate", 1),
+                new ComboComponent("300", "Bombilla", 1))));
+        combos.put("1002", new ComboProduct("1002", "Pack bombillas", List.of(
+                new ComboComponent("300", "Bombilla", 3))));
+        return ComboCatalog.of(combos);
+    }
+
+    @Test
+    void buscaElComboTalCualYNormalizado() {
+        ComboCatalog catalogo = catalogo();
+
+        assertEquals("Kit mate", catalogo.combo("1001 KIT").productoCompuesto());
+        assertSame(catalogo.combo("1001 KIT"), catalogo.combo("1001"));
+        assertSame(catalogo.combo("1001 KIT"), catalogo.combo(" 1001 otra descripción"));
+        assertNull(catalogo.combo("200"));
+        assertTrue(ComboCatalog.VACIO.isEmpty());
+    }
+
+    @Test
+    void indexaLosCombosPorComponente() {
+        ComboCatalog catalogo = catalogo();
+
+        assertEquals(List.of("1001 KIT", "1002"),
+                catalogo.combosConComponente("300").stream().map(ComboProduct::codigoCompuesto).toList());
+        assertEquals(List.of("1001 KIT"),
+                catalogo.combosConComponente("200").stream().map(ComboProduct::codigoCompuesto).toList());
+        assertEquals(List.of(), catalogo.combosConComponente("999"));
+    }
+
+    @Test
+    void losCombosDelLoteSalenUnaVezYOrdenados() {
+        List<ComboProduct> combos = catalogo().combosDe(Set.of("1002", "1001", "1001 KIT", "200"));
+
+        assertEquals(List.of("1001 KIT", "1002"), combos.stream().map(ComboProduct::codigoCompuesto).toList());
+    }
+
+    @Test
+    void noSePuedeModificar() {
+        ComboCatalog catalogo = catalogo();
+
+        assertThrows(UnsupportedOperationException.class, () -> catalogo.porCodigo().remove("1002"));
+        assertThrows(UnsupportedOperationException.class, () -> catalogo.combo("1002").componentes().clear());
+        assertThrows(UnsupportedOperationException.class, () -> catalogo.combosConComponente("300").clear());
+    }
+}
@@ -11,6 +11,8 @@ import static java.util.stream.Collectors.joining;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class EmbalajeRendererTest {
@@ -433,4 +435,20 @@ class EmbalajeRendererTest {
         assertFalse(EmbalajeRenderer.avisaSinDatos(sinEstandarizar));
         assertFalse(EmbalajeRenderer.avisaSinDatos(lineas(datos("BOL-1", "", "", "", ""))));
     }
+
+    @Test
+    void elBloqueSeArmaUnaVezPorTipoDeEtiqueta() {
+        DatosEmbalaje datos = datos("CAJ-1", "9Y", "DIAMANTES", "2", "");
+        EmbalajeRenderer.Bloques bloques = new EmbalajeRenderer.Bloques();
+
+        EmbalajeRenderer.Bloque varias = bloques.bloque(datos, 2);
+
+        assertEquals(EmbalajeRenderer.lineas(datos, 2), varias.lineas());
+        assertEquals(EmbalajeRenderer.campoZpl(EmbalajeRenderer.lineas(datos, 2)), varias.zpl());
+        assertSame(varias, bloques.bloque(datos("CAJ-1", "9Y", "DIAMANTES", "2", ""), 7));
+        assertEquals(lineas(datos), bloques.bloque(datos, 1).lineas());
+
+        // Otras medidas, otros bloques: nada queda de un Excel al siguiente.
+        assertNotSame(varias, new EmbalajeRenderer.Bloques().bloque(datos, 2));
+    }
 }
@@ -0,0 +1,87 @@
+package ar.com.leo.etiquetas.parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compara {@link ZplParser#normalizeSku} con la versión anterior, la de expresiones regulares,
+ * sobre SKU como los que vienen de ML: con espacios, con texto pegado y alguno inválido.
+ *
+ * No corre con los tests. Para correrlo:
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ar.com.leo.etiquetas.parser.NormalizeSkuBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NormalizeSkuBenchmark {
+
+    private static final Pattern NON_DIGIT_START = Pattern.compile("^\\D+");
+    private static final Pattern NON_DIGIT_END = Pattern.compile("\\D+$");
+
+    private String[] skus;
+
+    @Setup
+    public void armarSkus() {
+        Random random = new Random(42);
+        String[] formas = {"%d", " %d ", "%d Color: Gris", "#%d-", "SKU%d", "%d-A", "sin numero"};
+        skus = new String[4096];
+        for (int i = 0; i < skus.length; i++) {
+            // Pocos SKU distintos, como en un día de ventas: se repiten mucho.
+            int sku = 1_000_000 + random.nextInt(500);
+            skus[i] = String.format(formas[random.nextInt(formas.length)], sku);
+        }
+    }
+
+    @Benchmark
+    public void conExpresionesRegulares(Blackhole bh) {
+        for (String sku : skus) bh.consume(normalizeSkuAnterior(sku));
+    }
+
+    @Benchmark
+    public void recorriendoLosCaracteres(Blackhole bh) {
+        for (String sku : skus) bh.consume(ZplParser.normalizeSku(sku));
+    }
+
+    /** La implementación anterior, tal cual. */
+    static String normalizeSkuAnterior(String raw) {
+        if (raw == null) return null;
+        String sku = raw.trim();
+        if (sku.isEmpty()) return null;
+        int spaceIdx = sku.indexOf(' ');
+        if (spaceIdx > 0) {
+            sku = sku.substring(0, spaceIdx);
+        }
+        sku = NON_DIGIT_START.matcher(sku).replaceFirst("");
+        sku = NON_DIGIT_END.matcher(sku).replaceFirst("");
+        if (sku.isEmpty()) {
+            return "SKU INVALIDO: " + raw.trim();
+        }
+        if (!sku.matches("\\d+")) {
+            return "SKU INVALIDO: " + raw.trim();
+        }
+        return sku;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(NormalizeSkuBenchmark.class.getSimpleName()).build()).run();
+    }
+}
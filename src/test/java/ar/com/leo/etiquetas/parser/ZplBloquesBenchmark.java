@@ -0,0 +1,89 @@
+package ar.com.leo.etiquetas.parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cuánto tarda en encontrar todos los bloques ^XA...^XZ de 64 MB de etiquetas la búsqueda byte a
+ * byte y cuánto la vectorial. Los GB/s salen de dividir 64 MB por el tiempo de cada una.
+ *
+ * No corre con los tests. Para correrlo:
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ar.com.leo.etiquetas.parser.ZplBloquesBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class ZplBloquesBenchmark {
+
+    private static final int TAMANIO = 64 * 1024 * 1024;
+    private static final byte X = 'X';
+    private static final byte A = 'A';
+    private static final byte Z = 'Z';
+
+    private ByteBuffer bytes;
+    private MemorySegment memoria;
+
+    @Setup
+    public void armarArchivo() {
+        byte[] etiqueta = ("^XA\n^CI28\n^LH0,90\n^FO30,40^A0N,28,28^FH^FDPack ID:^FS\n"
+                + "^FO198,40^A0N,30,30^FD2000011223344^FS\n^FO10,130^A0N,70,70^FB160,1,0,C^FD1^FS\n"
+                + "^FO200,181^A0N,24,24^FB570,3,-1^FH^FDColor: Gris  | SKU: 1241212^FS\n"
+                + "^FO5,5^BQN,2,5^FDLA,{\"id\":\"4412345678912345\",\"t\":\"lm\"}^FS\n^XZ\n")
+                .getBytes(StandardCharsets.UTF_8);
+        bytes = ByteBuffer.allocateDirect(TAMANIO);
+        while (bytes.remaining() >= etiqueta.length) bytes.put(etiqueta);
+        bytes.flip();
+        memoria = MemorySegment.ofBuffer(bytes);
+    }
+
+    @Benchmark
+    public int byteAByte() {
+        int bloques = 0;
+        int hasta = bytes.limit();
+        int inicio = ZplBloques.comandoEscalar(bytes, 0, hasta, X, A);
+        while (inicio >= 0) {
+            int xz = ZplBloques.comandoEscalar(bytes, inicio + 3, hasta, X, Z);
+            if (xz < 0) break;
+            bloques++;
+            inicio = ZplBloques.comandoEscalar(bytes, xz + 3, hasta, X, A);
+        }
+        return bloques;
+    }
+
+    @Benchmark
+    public int vectorial() {
+        int bloques = 0;
+        int hasta = bytes.limit();
+        int inicio = ZplBloques.comandoVectorial(memoria, bytes, 0, hasta, X, A);
+        while (inicio >= 0) {
+            int xz = ZplBloques.comandoVectorial(memoria, bytes, inicio + 3, hasta, X, Z);
+            if (xz < 0) break;
+            bloques++;
+            inicio = ZplBloques.comandoVectorial(memoria, bytes, xz + 3, hasta, X, A);
+        }
+        return bloques;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ZplBloquesBenchmark.class.getSimpleName()).build()).run();
+    }
+}
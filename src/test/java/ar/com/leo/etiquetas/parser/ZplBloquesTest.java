@@ -0,0 +1,54 @@
+package ar.com.leo.etiquetas.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ZplBloquesTest {
+
+    private static ByteBuffer directo(byte[] bytes) {
+        return ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+    }
+
+    @Test
+    void encuentraLosLimitesDeCadaBloque() {
+        String zpl = "basura ^X ^XZ ^XA^FDuno^FS^XZ\n^XA^FD^XA^FS^XZ^XA sin cerrar";
+        ZplBloques bloques = new ZplBloques(ByteBuffer.wrap(zpl.getBytes(StandardCharsets.UTF_8)));
+
+        int primero = bloques.inicio(0);
+        assertEquals(zpl.indexOf("^XA"), primero);
+        int fin = bloques.fin(primero);
+        assertEquals(zpl.indexOf("^XZ\n") + 3, fin);
+        int segundo = bloques.inicio(fin);
+        // El ^XA de adentro no corta el bloque: va hasta el primer ^XZ.
+        assertEquals(zpl.indexOf("^XZ^XA sin") + 3, bloques.fin(segundo));
+        assertEquals(-1, bloques.fin(zpl.lastIndexOf("^XA")));
+    }
+
+    @Test
+    void laBusquedaVectorialDaLoMismoQueByteAByte() {
+        assumeTrue(ZplBloques.VECTORIAL, "la JVM no tiene jdk.incubator.vector");
+        // Pocas letras para que haya muchos '^' y comandos cortados en el borde de un vector.
+        byte[] letras = "^^XAZ\nñ".getBytes(StandardCharsets.UTF_8);
+        Random random = new Random(7);
+        for (int vuelta = 0; vuelta < 2_000; vuelta++) {
+            byte[] bytes = new byte[random.nextInt(300)];
+            for (int i = 0; i < bytes.length; i++) bytes[i] = letras[random.nextInt(letras.length)];
+            ByteBuffer buffer = random.nextBoolean() ? ByteBuffer.wrap(bytes) : directo(bytes);
+            MemorySegment memoria = MemorySegment.ofBuffer(buffer);
+            int desde = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+            int hasta = desde + random.nextInt(bytes.length - desde + 1);
+
+            assertEquals(ZplBloques.comandoEscalar(buffer, desde, hasta, (byte) 'X', (byte) 'Z'),
+                    ZplBloques.comandoVectorial(memoria, buffer, desde, hasta, (byte) 'X', (byte) 'Z'));
+            assertEquals(ZplBloques.comandoEscalar(buffer, desde, hasta, (byte) 'X', (byte) 'A'),
+                    ZplBloques.comandoVectorial(memoria, buffer, desde, hasta, (byte) 'X', (byte) 'A'));
+        }
+    }
+}
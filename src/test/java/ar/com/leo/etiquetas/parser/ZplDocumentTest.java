@@ -0,0 +1,107 @@
+package ar.com.leo.etiquetas.parser;
+
+import ar.com.leo.etiquetas.model.ZplLabel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZplDocumentTest {
+
+    private static final String ETIQUETA = "^XA\n"
+            + "^LH0,90\n"
+            + "^FO10,130^A0N,70,70^FB160,1,0,C^FD2^FS\n"
+            + "^FO10,200^A0N,28,28^FDUnidades^FS\n"
+            + "^FO200,181^A0N,24,24^FH^FDColor: Gris  | SKU: 1241212^FS\n"
+            + "^FO20,20^A0N,20,20^FDEnvio: 44123456789^FS\n"
+            + "^FO5,5^BQN,2,5^FDLA,{\"id\":\"4412345678912345\",\"t\":\"lm\"}^FS\n"
+            + "^XZ";
+
+    @Test
+    void ubicaLosCamposYSusFo() {
+        ZplDocument doc = ZplDocument.of(ETIQUETA);
+
+        assertEquals(5, doc.campoCount());
+        int unidades = doc.campoCon("Unidad", 0);
+        assertEquals(1, unidades);
+        assertEquals("Unidades", doc.contenido(unidades));
+        assertEquals(ETIQUETA.indexOf("^FO10,200"), doc.foAntes(doc.inicioContenido(unidades)));
+        assertEquals(ETIQUETA.indexOf("^FS", ETIQUETA.indexOf("Unidades")), doc.finContenido(unidades));
+        assertEquals(2, doc.ultimoCampoCon("SKU:"));
+    }
+
+    @Test
+    void leeElOrigenDelLh() {
+        ZplDocument doc = ZplDocument.of(ETIQUETA);
+
+        assertEquals(1, doc.lhCount());
+        assertArrayEquals(new int[]{0, 90}, doc.lhCoordenadas(0));
+        assertNull(ZplDocument.of("^XA^LH 0,90^XZ").lhCoordenadas(0));
+    }
+
+    @Test
+    void sacaLosNumerosDelEnvio() {
+        ZplDocument doc = ZplDocument.of(ETIQUETA);
+
+        assertEquals("44123456789", doc.envioId());
+        assertEquals("4412345678912345", doc.qrId());
+    }
+
+    @Test
+    void unRotuloSinNumeroNoEsElEnvio() {
+        ZplDocument doc = ZplDocument.of("^XA^FDEnvio: -^FS^FDEnvio:  123^FS^XZ");
+
+        assertEquals("123", doc.envioId());
+        assertNull(doc.qrId());
+    }
+
+    @Test
+    void laHuellaNoDependeDeLoQueDicenLosCampos() {
+        ZplDocument doc = ZplDocument.of(ETIQUETA);
+        ZplDocument otroPedido = ZplDocument.of(ETIQUETA.replace("FD2^FS", "FD15^FS").replace("Gris", "Azul"));
+        ZplDocument otroLugar = ZplDocument.of(ETIQUETA.replace("^FO10,200", "^FO10,210"));
+
+        assertEquals(doc.huella(), otroPedido.huella());
+        assertNotEquals(doc.huella(), otroLugar.huella());
+        assertFalse(doc.comandosEnContenido());
+        assertTrue(ZplDocument.of("^XA^FDa^FO1,1b^FS^XZ").comandosEnContenido());
+    }
+
+    @Test
+    void elIndiceDelTokenizerEsElMismoQueElDelTexto() {
+        // La línea ^MCY se quita al tokenizar y la ñ ocupa dos bytes: las posiciones tienen que
+        // ser las del texto que devuelve la etiqueta, no las del archivo.
+        String archivo = ETIQUETA.replace("^LH0,90\n", "^LH0,90\n^MCY\n").replace("Gris", "Ñandú") + "\n"
+                + ETIQUETA.replace("Envio", "Envío");
+        List<ZplLabel> labels = new ArrayList<>();
+        new ZplTokenizer(labels::add).feed(archivo);
+
+        assertEquals(2, labels.size());
+        for (ZplLabel label : labels) {
+            ZplDocument delTokenizer = ZplDocument.of(label);
+            ZplDocument delTexto = ZplDocument.of(label.rawZpl());
+
+            assertEquals(delTexto.inicio(), delTokenizer.inicio());
+            assertEquals(delTexto.huella(), delTokenizer.huella());
+            assertEquals(delTexto.lhCount(), delTokenizer.lhCount());
+            assertEquals(delTexto.lh(0), delTokenizer.lh(0));
+            assertEquals(delTexto.foCount(), delTokenizer.foCount());
+            assertEquals(delTexto.campoCount(), delTokenizer.campoCount());
+            for (int i = 0; i < delTexto.campoCount(); i++) {
+                assertEquals(delTexto.contenido(i), delTokenizer.contenido(i));
+                assertEquals(delTexto.foAntes(delTexto.inicioContenido(i)),
+                        delTokenizer.foAntes(delTokenizer.inicioContenido(i)));
+            }
+            assertEquals(delTexto.envioId(), delTokenizer.envioId());
+        }
+        assertFalse(labels.get(0).rawZpl().contains("^MCY"));
+        assertEquals("Color: Ñandú  | SKU: 1241212", ZplDocument.of(labels.get(0)).contenido(2));
+    }
+}
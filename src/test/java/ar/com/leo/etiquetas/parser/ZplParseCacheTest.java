@@ -0,0 +1,95 @@
+package ar.com.leo.etiquetas.parser;
+
+import ar.com.leo.etiquetas.model.ZplLabel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ZplParseCacheTest {
+
+    private final ZplParser parser = new ZplParser();
+
+    @TempDir
+    Path tempDir;
+
+    private static String etiquetas(String sku) {
+        return "^XA^CI28^FO200,181^FH^FDColor: Gris  | SKU: " + sku + "^FS"
+                + "^FO10,130^A0N,70,70^FB160,1,0,C^FD2^FS^FO120,135^FDPack ID: 20000^FS"
+                + "^FO272,132^FD13605621573^FS^XZ\n"
+                + "^XA^FO200,181^FDCañería | SKU: 555^FS^XZ\n";
+    }
+
+    private Path archivo(String nombre, String contenido) throws IOException {
+        return Files.writeString(tempDir.resolve(nombre), contenido, StandardCharsets.UTF_8);
+    }
+
+    private long guardados(Path carpeta) throws IOException {
+        try (Stream<Path> archivos = Files.list(carpeta)) {
+            return archivos.filter(p -> p.toString().endsWith(".zplc")).count();
+        }
+    }
+
+    @Test
+    void elMismoContenidoDaLasMismasEtiquetasAunqueCambieElNombre() throws IOException {
+        ZplParseCache cache = new ZplParseCache(parser, 4);
+        List<ZplLabel> esperadas = parser.parse(etiquetas("1241212"));
+
+        assertEquals(esperadas, cache.parseFile(archivo("a.zpl", etiquetas("1241212"))));
+        assertEquals(esperadas, cache.parseFile(archivo("b.zpl", etiquetas("1241212"))));
+    }
+
+    @Test
+    void otroContenidoNoUsaLoRecordado() throws IOException {
+        ZplParseCache cache = new ZplParseCache(parser, 4);
+        Path zpl = archivo("a.zpl", etiquetas("1241212"));
+        cache.parseFile(zpl);
+
+        Files.writeString(zpl, etiquetas("999"), StandardCharsets.UTF_8);
+
+        assertEquals(parser.parse(etiquetas("999")), cache.parseFile(zpl));
+    }
+
+    @Test
+    void loGuardadoEnLaCarpetaSirveDespuesDeReiniciar() throws IOException {
+        Path carpeta = tempDir.resolve("cache");
+        Path zpl = archivo("a.zpl", etiquetas("1241212"));
+        new ZplParseCache(parser, 4, carpeta).parseFile(zpl);
+
+        assertEquals(1, guardados(carpeta));
+        assertEquals(parser.parse(etiquetas("1241212")), new ZplParseCache(parser, 4, carpeta).parseFile(zpl));
+    }
+
+    @Test
+    void unArchivoDelCacheDanadoSeVuelveAParsear() throws IOException {
+        Path carpeta = tempDir.resolve("cache");
+        Path zpl = archivo("a.zpl", etiquetas("1241212"));
+        new ZplParseCache(parser, 4, carpeta).parseFile(zpl);
+        try (Stream<Path> archivos = Files.list(carpeta)) {
+            Path guardado = archivos.findFirst().orElseThrow();
+            byte[] bytes = Files.readAllBytes(guardado);
+            Files.write(guardado, Arrays.copyOf(bytes, bytes.length / 2));
+        }
+
+        assertEquals(parser.parse(etiquetas("1241212")), new ZplParseCache(parser, 4, carpeta).parseFile(zpl));
+    }
+
+    @Test
+    void enLaCarpetaQuedanSoloLasUltimas() throws IOException {
+        Path carpeta = tempDir.resolve("cache");
+        ZplParseCache cache = new ZplParseCache(parser, 2, carpeta);
+        for (int i = 0; i < 5; i++) {
+            cache.parseFile(archivo(i + ".zpl", etiquetas("10" + i)));
+        }
+
+        assertEquals(2, guardados(carpeta));
+    }
+}
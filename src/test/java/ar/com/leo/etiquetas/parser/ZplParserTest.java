@@ -2,17 +2,32 @@ package ar.com.leo.etiquetas.parser;
 
 import ar.com.leo.etiquetas.model.ZplLabel;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ZplParserTest {
 
     private final ZplParser parser = new ZplParser();
 
+    @TempDir
+    Path tempDir;
+
     /**
      * Encabezado tal como lo imprime ML, con el rótulo y el número en campos separados y un
      * "20000" en el medio.
@@ -136,4 +151,150 @@ class ZplParserTest {
         assertEquals("1241212", labels.getFirst().sku());
         assertEquals(1, labels.getFirst().quantity());
     }
+
+    // -------------------------------------------------------------------------------------------
+    // Lectura de a pedazos
+    // -------------------------------------------------------------------------------------------
+
+    /** Un Reader que entrega de a un carácter, para cortar los comandos en cualquier punto. */
+    private static Reader deAUno(String texto) {
+        return new StringReader(texto) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 1));
+            }
+        };
+    }
+
+    @Test
+    void leerDeAPedazosDaLoMismoQueElTextoEntero() throws IOException {
+        String zpl = etiqueta("Pack ID", "13605621573") + conEnvio("Turbo");
+
+        assertEquals(parser.parse(zpl), parser.parse(deAUno(zpl)));
+    }
+
+    @Test
+    void cadaEtiquetaSeEntregaAlCerrarSuBloque() throws IOException {
+        List<String> skus = new ArrayList<>();
+        String zpl = conEnvio("Flex") + "^XA\n^FDSKU: 555^FS\n^XZ\n^XA\n^FDsin cerrar";
+
+        parser.parse(deAUno(zpl), label -> skus.add(label.sku()));
+
+        // El bloque que no llega a su ^XZ no es una etiqueta.
+        assertEquals(List.of("1241212", "555"), skus);
+    }
+
+    @Test
+    void seQuitaElMcySueltoYSeSaltanLosSeparadores() {
+        String zpl = "^XA\n^MCY\n^XZ\n"
+                + "^XA\n^MCY\r\n^FO200,181^A0N,24,24^FDSKU: 1241212^FS\n^XZ\n";
+
+        List<ZplLabel> labels = parser.parse(zpl);
+
+        assertEquals(1, labels.size());
+        assertEquals("^XA\n^FO200,181^A0N,24,24^FDSKU: 1241212^FS\n^XZ", labels.getFirst().rawZpl());
+    }
+
+    @Test
+    void laCantidadSaleDelNumeroGrandeDeUnidades() {
+        String zpl = "^XA\n"
+                + "^FO10,130^A0N,70,70^FB160,1,0,C^FR^FD3^FS\n"
+                + "^FO200,181^A0N,24,24^FH^FDColor: Gris  | SKU: 1241212^FS\n"
+                + "^XZ\n";
+
+        ZplLabel label = parser.parse(zpl).getFirst();
+
+        assertEquals(3, label.quantity());
+        assertEquals("Color: Gris", label.details());
+    }
+
+    @Test
+    void normalizeSkuSeQuedaConLosDigitosDeLaPrimeraPalabra() {
+        assertEquals("1241212", ZplParser.normalizeSku("  #1241212- Color Gris\n"));
+        assertEquals("SKU INVALIDO: A12-34", ZplParser.normalizeSku("A12-34"));
+        assertEquals("SKU INVALIDO: sin numero", ZplParser.normalizeSku(" sin numero "));
+        assertNull(ZplParser.normalizeSku(" \t "));
+    }
+
+    @Test
+    void losSkuIgualesSonElMismoString() {
+        String a = ZplParser.normalizeSku("9876543 Color: Gris");
+        String b = ZplParser.normalizeSku(new StringBuilder("x9876543y").toString());
+
+        assertEquals("9876543", a);
+        assertSame(a, b);
+    }
+
+    @Test
+    void elArchivoMapeadoDaLoMismoQueElTexto() throws IOException {
+        // Lo que hay entre bloques no se decodifica, ni siquiera si no es UTF-8 válido.
+        String zpl = "basura\n" + etiqueta("Venta ID", "2000011223344") + "^XA\n^MCY\n^XZ\n"
+                + conEnvio("Turbo") + "^XA\n^FDCañería SKU: 777^FS\n^XZ\n^XA\n^FDsin cerrar";
+        Path archivo = tempDir.resolve("etiquetas.txt");
+        try (var out = Files.newOutputStream(archivo)) {
+            out.write(new byte[]{(byte) 0xC3, '\n'});
+            out.write(zpl.getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals(parser.parse(zpl), parser.parseFile(archivo));
+    }
+
+    @Test
+    void unBloqueQueNoEsUtf8EsUnError() throws IOException {
+        Path archivo = tempDir.resolve("etiquetas.txt");
+        Files.write(archivo, new byte[]{'^', 'X', 'A', (byte) 0xC3, '^', 'X', 'Z'});
+
+        assertThrows(IOException.class, () -> parser.parseFile(archivo));
+    }
+
+    @Test
+    void enParaleloLasEtiquetasSalenEnElOrdenDelArchivo() throws IOException {
+        StringBuilder zpl = new StringBuilder();
+        for (int i = 0; i < ZplParser.BLOQUES_POR_TAREA * 5 + 7; i++) {
+            zpl.append("^XA\n^FO200,181^A0N,24,24^FDSKU: ").append(100000 + i).append("^FS\n^XZ\n");
+            if (i % 50 == 0) zpl.append("^XA\n^MCY\n^XZ\n");
+        }
+        Path archivo = tempDir.resolve("etiquetas.txt");
+        Files.writeString(archivo, zpl);
+
+        List<ZplLabel> labels = parser.parseFileParallel(archivo);
+
+        assertEquals(parser.parseFile(archivo), labels);
+        assertEquals("100000", labels.getFirst().sku());
+        assertEquals(String.valueOf(100000 + ZplParser.BLOQUES_POR_TAREA * 5 + 6), labels.getLast().sku());
+    }
+
+    @Test
+    void enParaleloConPocosBloquesDaLoMismoQueEnOrden() throws IOException {
+        StringBuilder zpl = new StringBuilder("basura sin bloques ");
+        Path vacio = tempDir.resolve("vacio.txt");
+        Files.writeString(vacio, zpl);
+        assertEquals(List.of(), parser.parseFileParallel(vacio));
+
+        // Por debajo de dos tareas no se reparte: se parsea con los límites ya buscados.
+        for (int i = 0; i < ZplParser.BLOQUES_POR_TAREA * 2 - 1; i++) {
+            zpl.append("^XA\n^FO200,181^A0N,24,24^FDSKU: ").append(100000 + i).append("^FS\n^XZ\n");
+        }
+        zpl.append("^XA sin cerrar");
+        Path archivo = tempDir.resolve("etiquetas.txt");
+        Files.writeString(archivo, zpl);
+
+        List<ZplLabel> labels = parser.parseFileParallel(archivo);
+
+        assertEquals(ZplParser.BLOQUES_POR_TAREA * 2 - 1, labels.size());
+        assertEquals(parser.parseFile(archivo), labels);
+    }
+
+    @Test
+    void enParaleloUnBloqueQueNoEsUtf8TambienEsUnError() throws IOException {
+        StringBuilder zpl = new StringBuilder();
+        for (int i = 0; i < ZplParser.BLOQUES_POR_TAREA * 4; i++) {
+            zpl.append("^XA\n^FDSKU: 555^FS\n^XZ\n");
+        }
+        Path archivo = tempDir.resolve("etiquetas.txt");
+        Files.writeString(archivo, zpl);
+        Files.write(archivo, new byte[]{'^', 'X', 'A', (byte) 0xC3, '^', 'X', 'Z'}, StandardOpenOption.APPEND);
+
+        assertThrows(IOException.class, () -> parser.parseFileParallel(archivo));
+    }
 }
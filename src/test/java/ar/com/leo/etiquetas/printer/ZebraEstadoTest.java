@@ -0,0 +1,54 @@
+package ar.com.leo.etiquetas.printer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZebraEstadoTest {
+
+    @Test
+    void leeLaRespuestaDelHs() {
+        ZebraEstado estado = ZebraEstado.leer("\u0002030,0,1,0245,012,1,0,0,000,0,0,0\u0003\r\n"
+                + "\u0002001,0,1,0,1,2,6,0,00000037,1,000\u0003\r\n"
+                + "\u00021234,0\u0003\r\n");
+
+        assertFalse(estado.papelAgotado());
+        assertTrue(estado.enPausa());
+        assertEquals(12, estado.formatosEnBuffer());
+        assertTrue(estado.bufferLleno());
+        assertTrue(estado.cabezalAbierto());
+        assertFalse(estado.ribbonAgotado());
+        assertEquals(37, estado.etiquetasRestantes());
+        assertFalse(estado.puedeRecibir());
+        assertEquals("Cabezal abierto, buffer lleno, en pausa", estado.motivo());
+        assertEquals("Cabezal abierto, buffer lleno, en pausa (12 etiquetas en el buffer)", estado.resumen());
+    }
+
+    @Test
+    void sinRibbonNoPuedeRecibir() {
+        ZebraEstado estado = ZebraEstado.leer("\u0002030,0,0,0245,000,0,0,0,000,0,0,0\u0003\r\n"
+                + "\u0002001,0,0,1,1,2,6,0,00000000,1,000\u0003\r\n"
+                + "\u00021234,0\u0003\r\n");
+
+        assertTrue(estado.ribbonAgotado());
+        assertFalse(estado.puedeRecibir());
+        assertEquals("Sin ribbon", estado.resumen());
+    }
+
+    @Test
+    void lista() {
+        ZebraEstado estado = ZebraEstado.leer(ZplSocketSenderTest.respuestaHs(false, false, false));
+
+        assertTrue(estado.puedeRecibir());
+        assertEquals("Lista", estado.motivo());
+        assertEquals("Sin papel", ZebraEstado.leer(ZplSocketSenderTest.respuestaHs(true, false, false)).motivo());
+    }
+
+    @Test
+    void unaRespuestaIncompletaNoSeAdivina() {
+        assertThrows(IllegalArgumentException.class, () -> ZebraEstado.leer("\u0002030,0,0\u0003\r\n"));
+    }
+}
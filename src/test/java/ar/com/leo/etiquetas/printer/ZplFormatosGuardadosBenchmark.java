@@ -0,0 +1,164 @@
+package ar.com.leo.etiquetas.printer;
+
+import ar.com.leo.etiquetas.injector.ZplHeaderInjector;
+import ar.com.leo.etiquetas.model.ZplLabel;
+import ar.com.leo.etiquetas.sorter.LabelSorter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Etiquetas por segundo que llegan a una Zebra de mentira que lee a 1 o 10 Mbit/s —una red de
+ * depósito floja y una buena—, mandando el ZPL entero o con formatos guardados. Las etiquetas
+ * son de unos 1,3 KB, armadas como las de ML sin gráficos e inyectadas; una operación es un lote
+ * de {@link #ETIQUETAS} hasta que la impresora leyó el último byte.
+ *
+ * La impresora contesta el {@code ^HW} como una que guarda los formatos: desde el segundo lote
+ * el envío ya lo sabe y compacta desde la segunda etiqueta, que es lo que pasa en un día normal.
+ *
+ * No corre con los tests. Para correrlo:
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ar.com.leo.etiquetas.printer.ZplFormatosGuardadosBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ZplFormatosGuardadosBenchmark {
+
+    private static final int ETIQUETAS = 200;
+    private static final String LISTADO = "\u0002\r\n- DIR R:ETQ*.ZPL\r\n*R:ETQ1.ZPL      180\r\n\r\n"
+            + "-  1468416 bytes free R:RAM\r\n\u0003";
+
+    @Param({"1", "10"})
+    public int megabits;
+
+    @Param({"false", "true"})
+    public boolean formatosGuardados;
+
+    private List<ZplLabel> labels;
+    private ZplSocketSender sender;
+    private ServerSocket server;
+
+    @Setup
+    public void armar() throws IOException {
+        List<ZplLabel> crudas = new ArrayList<>(ETIQUETAS);
+        Map<String, String> zonas = new LinkedHashMap<>();
+        for (int i = 0; i < ETIQUETAS; i++) {
+            String sku = Integer.toString(1_000_000 + i * 37);
+            crudas.add(new ZplLabel(etiquetaMl(i, sku), sku, "Producto " + sku, "Detalle"));
+            zonas.put(sku, "J" + (1 + i % 20));
+        }
+        labels = new ZplHeaderInjector(Map.of(), null, null)
+                .inject(new LabelSorter().sort(crudas, zonas), new LinkedHashMap<>(), new HashSet<>(), new HashSet<>())
+                .sortedFlatList();
+
+        ZplSocketSender.Opciones opciones = ZplSocketSender.Opciones.DEFAULT;
+        sender = new ZplSocketSender(formatosGuardados ? opciones.conFormatosGuardados() : opciones);
+        server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @TearDown
+    public void cerrar() throws IOException {
+        server.close();
+    }
+
+    /** Una etiqueta de envío de ML: remitente, destinatario, código de barras, QR y el producto. */
+    private static String etiquetaMl(int i, String sku) {
+        return "^XA\n^CI28\n^LH0,90\n"
+                + "^FO20,10^GB770,1160,3^FS\n"
+                + "^FO40,30^A0N,30,30^FDREMITENTE: DEPOSITO CENTRAL^FS\n"
+                + "^FO40,65^A0N,24,24^FDAv. Siempre Viva 742 - CP 1405 - CABA^FS\n"
+                + "^FO10,130^A0N,70,70^FB160,1,0,C^FD1^FS\n"
+                + "^FO10,200^A0N,28,28^FDUnidades^FS\n"
+                + "^FO200,181^A0N,24,24^FH^FDColor: Gris  | SKU: " + sku + "^FS\n"
+                + "^FO200,240^A0N,26,26^FB560,3,0,L^FDProducto de prueba numero " + i
+                + " con una descripcion larga como las de ML^FS\n"
+                + "^FO20,330^GB770,3,3^FS\n"
+                + "^FO60,360^BY3,2,160^BCN,160,Y,N,N^FD4" + (400_000_000 + i) + "^FS\n"
+                + "^FO560,560^BQN,2,6^FDLA,{\"id\":\"4" + (400_000_000 + i) + "\",\"t\":\"lm\"}^FS\n"
+                + "^FO40,600^A0N,40,40^FDDESTINATARIO^FS\n"
+                + "^FO40,650^A0N,30,30^FDJuan Perez (JUANPEREZ" + i + ")^FS\n"
+                + "^FO40,690^A0N,26,26^FDCalle Falsa 123, Piso 4 Depto B^FS\n"
+                + "^FO40,725^A0N,26,26^FDCP 1870 - Avellaneda, Buenos Aires^FS\n"
+                + "^FO40,760^A0N,26,26^FDReferencia: porton verde, timbre 2^FS\n"
+                + "^FO20,800^GB770,3,3^FS\n"
+                + "^FO40,830^A0N,60,60^FDFLEX^FS\n"
+                + "^FO400,830^A0N,40,40^FDXSAB01 > CAP1^FS\n"
+                + "^FO40,910^A0N,26,26^FDDespachar antes del 17/10 a las 14:00^FS\n"
+                + "^FO40,950^A0N,22,22^FDVenta: 20000" + (10_000_000 + i) + " - Envio: 4" + (400_000_000 + i) + "^FS\n"
+                + "^FO40,990^A0N,22,22^FDPack ID: 20000" + (20_000_000 + i) + "^FS\n"
+                + "^PQ1,0,1,Y\n"
+                + "^XZ";
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ETIQUETAS)
+    public int enviar() throws IOException, InterruptedException, ExecutionException {
+        CompletableFuture<Integer> leidos = CompletableFuture.supplyAsync(this::leerComoImpresora);
+        sender.enviar(labels, "127.0.0.1", server.getLocalPort(), ZplSocketSender.Progreso.NINGUNO);
+        return leidos.get();
+    }
+
+    /** Lee a {@link #megabits} hasta que se cierra la conexión, contestando el {@code ^HW}. */
+    private int leerComoImpresora() {
+        try (Socket socket = server.accept(); InputStream in = socket.getInputStream();
+             OutputStream out = socket.getOutputStream()) {
+            byte[] tramo = new byte[1460];
+            double bytesPorNano = megabits * 1_000_000 / 8 / 1e9;
+            long inicio = System.nanoTime();
+            int total = 0;
+            String cola = "";
+            int leidos;
+            while ((leidos = in.read(tramo)) >= 0) {
+                total += leidos;
+                String texto = cola + new String(tramo, 0, leidos, StandardCharsets.ISO_8859_1);
+                if (texto.contains("^HW")) {
+                    out.write(LISTADO.getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                }
+                cola = texto.substring(Math.max(0, texto.length() - 2));
+                long hasta = inicio + (long) (total / bytesPorNano);
+                long faltan = hasta - System.nanoTime();
+                if (faltan > 0) TimeUnit.NANOSECONDS.sleep(faltan);
+            }
+            return total;
+        } catch (IOException | InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ZplFormatosGuardadosBenchmark.class.getSimpleName()).build()).run();
+    }
+}
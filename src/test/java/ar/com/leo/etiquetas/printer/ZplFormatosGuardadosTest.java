@@ -0,0 +1,136 @@
+package ar.com.leo.etiquetas.printer;
+
+import ar.com.leo.etiquetas.injector.ZplHeaderInjector;
+import ar.com.leo.etiquetas.model.SortResult;
+import ar.com.leo.etiquetas.model.ZplLabel;
+import ar.com.leo.etiquetas.sorter.LabelSorter;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZplFormatosGuardadosTest {
+
+    private static String etiquetaMl(String sku, int yUnidades) {
+        return "^XA\n"
+                + "^LH0,90\n"
+                + "^FO10,130^A0N,70,70^FB160,1,0,C^FD2^FS\n"
+                + "^FO10," + yUnidades + "^A0N,28,28^FDUnidades^FS\n"
+                + "^FO200,181^A0N,24,24^FH^FDColor: Gris  | SKU: " + sku + "^FS\n"
+                + "^XZ";
+    }
+
+    /** Dos etiquetas de ML con el mismo formato, tal como salen del inyector. */
+    static List<ZplLabel> inyectadas() {
+        List<ZplLabel> labels = List.of(new ZplLabel(etiquetaMl("1241212", 200), "1241212", "d", "det"),
+                new ZplLabel(etiquetaMl("555", 200), "555", "d", "det"));
+        SortResult ordenado = new LabelSorter().sort(labels, Map.of("1241212", "J1", "555", "J1"));
+        return new ZplHeaderInjector(Map.of("1241212", "AB-12"), null, null)
+                .inject(ordenado, new LinkedHashMap<>(), new HashSet<>(), new HashSet<>())
+                .sortedFlatList();
+    }
+
+    /** {@code cantidad} etiquetas de ML inyectadas, todas con el mismo formato. */
+    static List<ZplLabel> inyectadas(int cantidad) {
+        List<ZplLabel> labels = new ArrayList<>();
+        Map<String, String> zonas = new LinkedHashMap<>();
+        for (int i = 0; i < cantidad; i++) {
+            String sku = Integer.toString(100_000 + i);
+            labels.add(new ZplLabel(etiquetaMl(sku, 200), sku, "d", "det"));
+            zonas.put(sku, "J1");
+        }
+        return new ZplHeaderInjector(Map.of(), null, null)
+                .inject(new LabelSorter().sort(labels, zonas), new LinkedHashMap<>(), new HashSet<>(), new HashSet<>())
+                .sortedFlatList();
+    }
+
+    @Test
+    void loInyectadoQuedaEnUnFormatoYCadaEtiquetaMandaSusDatos() {
+        List<ZplLabel> labels = inyectadas();
+        ZplFormatosGuardados.Compactador compactador = new ZplFormatosGuardados.Compactador();
+
+        ZplFormatosGuardados.Compactada primera = compactador.compactar(labels.get(0));
+        ZplFormatosGuardados.Compactada segunda = compactador.compactar(labels.get(1));
+
+        assertEquals(List.of("R:ETQ1.ZPL"), compactador.formatos());
+        assertEquals("R:ETQ1.ZPL", segunda.formato());
+        // El formato se define con la primera etiqueta que lo usa, y no otra vez.
+        assertNull(segunda.definicion());
+        assertEquals("^XA\n"
+                + "^DFR:ETQ1.ZPL^FS\n"
+                + "^LH0,0\n"
+                + "^FO45,30^A0N,35,35^FN1^FS\n"
+                + "^FO46,30^A0N,35,35^FN1^FS\n"
+                + "^FO45,31^A0N,35,35^FN1^FS\n"
+                + "^FO20,322^A0N,25,25^FN2^FS\n"
+                + "^FO21,322^A0N,25,25^FN2^FS\n"
+                + "^LH0,90\n"
+                + "^FO200,209^A0N,25,25^FN3^FS\n"
+                + "^FO201,209^A0N,25,25^FN3^FS\n"
+                + "^XZ\n", primera.definicion());
+        assertEquals("^XA\n"
+                + "^XFR:ETQ1.ZPL^FS\n"
+                + "^FN1^FD#2^FS\n"
+                + "^FN2^FDZONA: J1^FS\n"
+                + "^FN3^FDCOD.EXT.: AB-12^FS\n"
+                + "^LH0,0\n"
+                + "^LH0,90\n"
+                + "^FO51,127^GB78,76,76^FS\n"
+                + "^FO10,130^A0N,70,70^FB160,1,0,C^FR^FD2^FS\n"
+                + "^FO10,200^A0N,28,28^FDUnidades^FS\n"
+                + "^FO200,181^A0N,24,24^FH^FDColor: Gris  | SKU: 1241212^FS\n"
+                + "^XZ", segunda.zpl());
+        assertTrue(primera.zpl().contains("^FN1^FD#1^FS\n^FN2^FDZONA: J1^FS\n^FN3^FDCOD.EXT.: -^FS\n"));
+        assertEquals("555", labels.get(0).sku());
+    }
+
+    @Test
+    void loQueNoSeReconoceSaleEntero() {
+        ZplLabel sinInyectar = new ZplLabel(etiquetaMl("1", 200), "1", "d", "det");
+
+        ZplFormatosGuardados.Compactador compactador = new ZplFormatosGuardados.Compactador();
+
+        assertNull(compactador.compactar(sinInyectar));
+        assertTrue(compactador.formatos().isEmpty());
+    }
+
+    @Test
+    void conDemasiadosFormatosLosQueSobranSalenEnteros() {
+        List<ZplLabel> labels = new ArrayList<>();
+        Map<String, String> zonas = new LinkedHashMap<>();
+        for (int i = 0; i <= ZplFormatosGuardados.MAX_FORMATOS; i++) {
+            String sku = "10" + i;
+            labels.add(new ZplLabel(etiquetaMl(sku, 200 + i * 10), sku, "d", "det"));
+            zonas.put(sku, "J1");
+        }
+        List<ZplLabel> inyectadas = new ZplHeaderInjector(Map.of(), null, null)
+                .inject(new LabelSorter().sort(labels, zonas), new LinkedHashMap<>(), new HashSet<>(), new HashSet<>())
+                .sortedFlatList();
+
+        ZplFormatosGuardados.Compactador compactador = new ZplFormatosGuardados.Compactador();
+        List<ZplFormatosGuardados.Compactada> compactadas = new ArrayList<>();
+        for (ZplLabel label : inyectadas) compactadas.add(compactador.compactar(label));
+
+        assertEquals(ZplFormatosGuardados.MAX_FORMATOS, compactador.formatos().size());
+        assertNotNull(compactadas.get(ZplFormatosGuardados.MAX_FORMATOS - 1));
+        assertNull(compactadas.getLast());
+    }
+
+    @Test
+    void elListadoTieneQueTraerTodosLosFormatos() {
+        String listado = "\u0002\r\n- DIR R:ETQ*.ZPL\r\n*R:ETQ1.ZPL      180\r\n\r\n-  1468416 bytes free R:RAM\r\n\u0003";
+
+        assertTrue(ZplFormatosGuardados.estanTodos(listado, List.of("R:ETQ1.ZPL")));
+        assertFalse(ZplFormatosGuardados.estanTodos(listado, List.of("R:ETQ1.ZPL", "R:ETQ2.ZPL")));
+        assertFalse(ZplFormatosGuardados.estanTodos("", List.of("R:ETQ1.ZPL")));
+    }
+}
@@ -0,0 +1,143 @@
+package ar.com.leo.etiquetas.printer;
+
+import ar.com.leo.etiquetas.model.SortedLabelGroup;
+import ar.com.leo.etiquetas.model.ZplLabel;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZplPrinterPoolTest {
+
+    /** Una impresora de mentira que anota lo que recibe. */
+    private static final class Anotadora implements ZplPrinterPool.Destino {
+        private final String nombre;
+        private final CountDownLatch juntas;
+        private final List<String> recibidas = Collections.synchronizedList(new ArrayList<>());
+        private boolean falla;
+
+        Anotadora(String nombre, CountDownLatch juntas) {
+            this.nombre = nombre;
+            this.juntas = juntas;
+        }
+
+        @Override
+        public String nombre() {
+            return nombre;
+        }
+
+        @Override
+        public void imprimir(List<ZplLabel> labels, ZplSocketSender.Progreso progreso) throws Exception {
+            if (juntas != null) {
+                juntas.countDown();
+                // Solo sigue si las otras impresoras están imprimiendo al mismo tiempo.
+                if (!juntas.await(5, TimeUnit.SECONDS)) throw new IllegalStateException("No imprimen a la vez");
+            }
+            if (falla) throw new IOException("Sin papel");
+            labels.forEach(l -> recibidas.add(l.sku()));
+            progreso.enviada(labels.size(), labels.size());
+        }
+    }
+
+    private static List<ZplLabel> etiquetas(String zona, int cuantas) {
+        List<ZplLabel> labels = new ArrayList<>();
+        for (int i = 0; i < cuantas; i++) labels.add(new ZplLabel("^XA^XZ", zona + "-" + i, "d", "det"));
+        return labels;
+    }
+
+    private static List<String> skus(List<ZplLabel> labels) {
+        return labels.stream().map(ZplLabel::sku).toList();
+    }
+
+    @Test
+    void losTramosSonSeguidosYCasiIguales() {
+        List<ZplLabel> labels = etiquetas("J1", 11);
+
+        List<List<ZplLabel>> tramos = ZplPrinterPool.enTramos(labels, 3);
+
+        assertEquals(List.of(4, 4, 3), tramos.stream().map(List::size).toList());
+        assertEquals(skus(labels), tramos.stream().flatMap(List::stream).map(ZplLabel::sku).toList());
+        assertEquals(List.of(1, 1, 0), ZplPrinterPool.enTramos(etiquetas("J1", 2), 3).stream().map(List::size).toList());
+    }
+
+    @Test
+    void porZonasNoPartenNingunaYRespetanElOrden() {
+        List<SortedLabelGroup> groups = List.of(
+                new SortedLabelGroup("J1", "1", "d", "det", etiquetas("J1", 5)),
+                new SortedLabelGroup("J2", "2", "d", "det", etiquetas("J2", 2)),
+                new SortedLabelGroup("J1", "3", "d", "det", etiquetas("J1b", 3)),
+                new SortedLabelGroup("T1", "4", "d", "det", etiquetas("T1", 6)),
+                new SortedLabelGroup("COMBOS", "5", "d", "det", etiquetas("CO", 1)));
+
+        List<List<ZplLabel>> tramos = ZplPrinterPool.porZonas(groups, 2);
+
+        // J1 (8) a la primera, T1 (6) y J2 (2) a la segunda; COMBOS (1) empata y va a la primera.
+        assertEquals(List.of("J1-0", "J1-1", "J1-2", "J1-3", "J1-4", "J1b-0", "J1b-1", "J1b-2", "CO-0"),
+                skus(tramos.get(0)));
+        assertEquals(List.of("J2-0", "J2-1", "T1-0", "T1-1", "T1-2", "T1-3", "T1-4", "T1-5"), skus(tramos.get(1)));
+    }
+
+    @Test
+    void imprimenTodasALaVezCadaUnaSuTramo() {
+        CountDownLatch juntas = new CountDownLatch(3);
+        List<Anotadora> impresoras = List.of(new Anotadora("z1", juntas), new Anotadora("z2", juntas),
+                new Anotadora("z3", juntas));
+        List<ZplLabel> labels = etiquetas("J1", 10);
+
+        try (ZplPrinterPool pool = new ZplPrinterPool(List.copyOf(impresoras))) {
+            List<ZplPrinterPool.Resultado> resultados = pool.imprimir(ZplPrinterPool.enTramos(labels, 3));
+
+            assertTrue(resultados.stream().allMatch(ZplPrinterPool.Resultado::ok));
+            assertEquals(List.of("J1-0", "J1-1", "J1-2", "J1-3"), impresoras.get(0).recibidas);
+            assertEquals(List.of("J1-7", "J1-8", "J1-9"), impresoras.get(2).recibidas);
+            assertEquals(List.of(4L, 3L, 3L), pool.estadisticas().stream()
+                    .map(ZplPrinterPool.Estadisticas::etiquetas).toList());
+        }
+    }
+
+    @Test
+    void unaImpresoraConErrorNoFrenaALasOtrasYSuColaSigueEnOrden() {
+        Anotadora sana = new Anotadora("sana", null);
+        Anotadora sinPapel = new Anotadora("sin papel", null);
+        sinPapel.falla = true;
+
+        try (ZplPrinterPool pool = new ZplPrinterPool(List.of(sana, sinPapel))) {
+            pool.enviar(0, etiquetas("A", 2));
+            List<ZplPrinterPool.Resultado> resultados = pool.imprimir(List.of(etiquetas("B", 1), etiquetas("C", 1)));
+
+            assertTrue(resultados.get(0).ok());
+            assertEquals("Sin papel", resultados.get(1).error().getMessage());
+            assertEquals(List.of("A-0", "A-1", "B-0"), sana.recibidas);
+            ZplPrinterPool.Estadisticas stats = pool.estadisticas().get(1);
+            assertEquals(1, stats.errores());
+            assertEquals(0, stats.etiquetas());
+            assertEquals(0, stats.enCola());
+        }
+    }
+
+    @Test
+    void despuesDeCerrarElTramoVuelveConErrorSinQuedarEnCola() {
+        Anotadora impresora = new Anotadora("zebra", null);
+        ZplPrinterPool pool = new ZplPrinterPool(List.of(impresora));
+        pool.close();
+
+        ZplPrinterPool.Resultado resultado = pool.enviar(0, etiquetas("A", 2)).join();
+
+        assertFalse(resultado.ok());
+        assertTrue(resultado.error() instanceof RejectedExecutionException, String.valueOf(resultado.error()));
+        assertEquals(2, resultado.etiquetas());
+        assertTrue(impresora.recibidas.isEmpty());
+        ZplPrinterPool.Estadisticas stats = pool.estadisticas().getFirst();
+        assertEquals(0, stats.enCola());
+        assertEquals(0, stats.errores());
+    }
+}
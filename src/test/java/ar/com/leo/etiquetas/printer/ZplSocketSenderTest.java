@@ -0,0 +1,361 @@
+package ar.com.leo.etiquetas.printer;
+
+import ar.com.leo.etiquetas.model.ZplLabel;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZplSocketSenderTest {
+
+    /** Lo que mandaba printViaSocket: todo el lote en un String, con un salto después de cada etiqueta. */
+    private static byte[] comoAntes(List<ZplLabel> labels) {
+        StringBuilder sb = new StringBuilder();
+        for (ZplLabel label : labels) {
+            String zpl = label.rawZpl();
+            sb.append(zpl);
+            if (!zpl.endsWith("\n")) sb.append("\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static CompletableFuture<byte[]> recibir(ServerSocket server) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (Socket socket = server.accept(); InputStream in = socket.getInputStream()) {
+                ByteArrayOutputStream recibido = new ByteArrayOutputStream();
+                in.transferTo(recibido);
+                return recibido.toByteArray();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Test
+    void mandaLoMismoQueAntesDeATramos() throws Exception {
+        List<ZplLabel> labels = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            String relleno = "^FO10,10^FDAcción Ñandú " + "x".repeat(i * 7) + "^FS";
+            labels.add(new ZplLabel("^XA" + relleno + "^XZ" + (i % 3 == 0 ? "\n" : ""), "" + i, "d", "det"));
+        }
+        labels.add(new ZplLabel("", "vacia", "d", "det"));
+        List<Integer> avisos = new ArrayList<>();
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            CompletableFuture<byte[]> recibido = recibir(server);
+            new ZplSocketSender(new ZplSocketSender.Opciones(Duration.ofSeconds(5), Duration.ofSeconds(5),
+                    true, true, 1024))
+                    .enviar(labels, "127.0.0.1", server.getLocalPort(), (enviadas, total) -> {
+                        assertEquals(labels.size(), total);
+                        avisos.add(enviadas);
+                    });
+
+            assertArrayEquals(comoAntes(labels), recibido.get(10, TimeUnit.SECONDS));
+        }
+        List<Integer> esperados = new ArrayList<>();
+        for (int i = 1; i <= labels.size(); i++) esperados.add(i);
+        assertEquals(esperados, avisos);
+    }
+
+    @Test
+    void siLaImpresoraNoLeeSeCortaPorTiempo() throws Exception {
+        // Una etiqueta de 256 KB repetida: más de lo que entra en los buffers del sistema.
+        ZplLabel grande = new ZplLabel("^XA^FD" + "x".repeat(256 * 1024) + "^FS^XZ\n", "1", "d", "det");
+        List<ZplLabel> labels = Collections.nCopies(256, grande);
+        List<Integer> avisos = new ArrayList<>();
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            ZplSocketSender sender = new ZplSocketSender(new ZplSocketSender.Opciones(Duration.ofSeconds(5),
+                    Duration.ofMillis(300), true, true, 64 * 1024));
+
+            assertThrows(SocketTimeoutException.class, () -> sender.enviar(labels, "127.0.0.1",
+                    server.getLocalPort(), (enviadas, total) -> avisos.add(enviadas)));
+        }
+        // La primera sale sola y se avisa; las que no llegaron a salir, no.
+        assertEquals(List.of(1), avisos.subList(0, 1));
+        assertTrue(avisos.size() < labels.size());
+    }
+
+    /** La respuesta de una Zebra al ~HS. */
+    static String respuestaHs(boolean papelAgotado, boolean bufferLleno, boolean cabezalAbierto) {
+        return "\u0002030," + (papelAgotado ? 1 : 0) + ",0,0245,000," + (bufferLleno ? 1 : 0) + ",0,0,000,0,0,0\u0003\r\n"
+                + "\u0002001,0," + (cabezalAbierto ? 1 : 0) + ",0,1,2,6,0,00000000,1,000\u0003\r\n"
+                + "\u00021234,0\u0003\r\n";
+    }
+
+    /** Una impresora lista con {@code enBuffer} formatos sin imprimir y otra a medio imprimir. */
+    private static String respuestaHs(int enBuffer, boolean imprimiendo) {
+        return String.format("\u0002030,0,0,0245,%03d,0,0,0,000,0,0,0\u0003\r\n", enBuffer)
+                + String.format("\u0002001,0,0,0,1,2,6,0,%08d,1,000\u0003\r\n", imprimiendo ? 1 : 0)
+                + "\u00021234,0\u0003\r\n";
+    }
+
+    /**
+     * Una Zebra de mentira: contesta cada {@code consulta} con la respuesta que sigue —la última se
+     * repite— y anota cuántos bytes de etiquetas le habían llegado al momento de cada una.
+     */
+    private static CompletableFuture<byte[]> zebra(ServerSocket server, String consultada, List<String> respuestas,
+                                                   List<Integer> datosAlConsultar) {
+        return zebra(server, Map.of(consultada, respuestas), datosAlConsultar);
+    }
+
+    /** Como la otra, para varias consultas, cada una con sus respuestas. */
+    private static CompletableFuture<byte[]> zebra(ServerSocket server, Map<String, List<String>> respuestas,
+                                                   List<Integer> datosAlConsultar) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (Socket socket = server.accept(); InputStream in = socket.getInputStream();
+                 OutputStream out = socket.getOutputStream()) {
+                byte[] datos = new byte[1024];
+                int largo = 0;
+                Map<String, Integer> contestadas = new HashMap<>();
+                int leido;
+                while ((leido = in.read()) >= 0) {
+                    if (largo == datos.length) datos = Arrays.copyOf(datos, largo * 2);
+                    datos[largo++] = (byte) leido;
+                    for (Map.Entry<String, List<String>> consulta : respuestas.entrySet()) {
+                        byte[] bytes = consulta.getKey().getBytes(StandardCharsets.US_ASCII);
+                        if (largo < bytes.length
+                                || !Arrays.equals(datos, largo - bytes.length, largo, bytes, 0, bytes.length)) {
+                            continue;
+                        }
+                        largo -= bytes.length;
+                        datosAlConsultar.add(largo);
+                        int vez = contestadas.merge(consulta.getKey(), 1, Integer::sum);
+                        List<String> posibles = consulta.getValue();
+                        out.write(posibles.get(Math.min(vez, posibles.size()) - 1).getBytes(StandardCharsets.US_ASCII));
+                        out.flush();
+                        break;
+                    }
+                }
+                return Arrays.copyOf(datos, largo);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Test
+    void conControlDeFlujoEsperaAQueLaImpresoraPuedaRecibirYSigueSola() throws Exception {
+        List<ZplLabel> labels = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            labels.add(new ZplLabel("^XA^FO10,10^FD" + "y".repeat(100 + i * 13) + "^FS^XZ\n", "" + i, "d", "det"));
+        }
+        List<String> respuestas = List.of(respuestaHs(false, false, true), respuestaHs(false, true, false),
+                respuestaHs(false, false, false));
+        List<Integer> datosAlConsultar = new CopyOnWriteArrayList<>();
+        List<String> estados = new ArrayList<>();
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            CompletableFuture<byte[]> recibido = zebra(server, "~HS", respuestas, datosAlConsultar);
+            new ZplSocketSender(new ZplSocketSender.Opciones(Duration.ofSeconds(5), Duration.ofSeconds(5),
+                    true, true, 1024).conControlDeFlujo(Duration.ofMillis(10), Duration.ofSeconds(5)))
+                    .enviar(labels, "127.0.0.1", server.getLocalPort(), ZplSocketSender.Progreso.NINGUNO,
+                            estado -> estados.add(estado.motivo()));
+
+            assertArrayEquals(comoAntes(labels), recibido.get(10, TimeUnit.SECONDS));
+        }
+        // Se avisa cada cambio, no cada consulta.
+        assertEquals(List.of("Cabezal abierto", "Buffer lleno", "Lista"), estados);
+        // Mientras no podía recibir no le llegó nada; después se preguntó antes de cada tramo.
+        assertEquals(List.of(0, 0, 0), datosAlConsultar.subList(0, 3));
+        assertTrue(datosAlConsultar.size() > 4);
+    }
+
+    @Test
+    void conControlDeFlujoSoloSeAvisanLasQueLaImpresoraYaSacoDelBuffer() throws Exception {
+        List<ZplLabel> labels = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            labels.add(new ZplLabel("^XA^FO10,10^FD" + "z".repeat(200) + i + "^FS^XZ\n", "" + i, "d", "det"));
+        }
+        List<Integer> avisos = new ArrayList<>();
+        List<Integer> formatosAlConsultar = new CopyOnWriteArrayList<>();
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            // Siempre le quedan tres en el buffer, y una a medio imprimir.
+            CompletableFuture<Void> zebra = CompletableFuture.runAsync(() -> {
+                try (Socket socket = server.accept(); InputStream in = socket.getInputStream();
+                     OutputStream out = socket.getOutputStream()) {
+                    int formatos = 0;
+                    int antes = 0;
+                    int anterior = 0;
+                    int c;
+                    while ((c = in.read()) >= 0) {
+                        if (antes == '^' && anterior == 'X' && c == 'Z') formatos++;
+                        if (antes == '~' && anterior == 'H' && c == 'S') {
+                            formatosAlConsultar.add(formatos);
+                            out.write(respuestaHs(Math.min(formatos, 3), formatos > 3)
+                                    .getBytes(StandardCharsets.US_ASCII));
+                            out.flush();
+                        }
+                        antes = anterior;
+                        anterior = c;
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            new ZplSocketSender(new ZplSocketSender.Opciones(Duration.ofSeconds(5), Duration.ofSeconds(5),
+                    true, true, 1024).conControlDeFlujo(Duration.ofMillis(10), Duration.ofSeconds(5)))
+                    .enviar(labels, "127.0.0.1", server.getLocalPort(), (enviadas, total) -> avisos.add(enviadas));
+            zebra.get(10, TimeUnit.SECONDS);
+        }
+
+        // Lo que estaba en el canal, en el buffer o imprimiéndose cuando contestó no se avisa.
+        int ultimas = formatosAlConsultar.getLast() - 4;
+        assertTrue(ultimas > 10, "Muy pocas consultas: " + formatosAlConsultar);
+        List<Integer> esperados = new ArrayList<>();
+        for (int i = 1; i <= ultimas; i++) esperados.add(i);
+        assertEquals(esperados, avisos);
+    }
+
+    @Test
+    void siLaImpresoraNoSeDesocupaSeCortaPasadaLaEsperaMaxima() throws Exception {
+        List<ZplLabel> labels = List.of(new ZplLabel("^XA^XZ\n", "1", "d", "det"));
+        List<Integer> datosAlConsultar = new CopyOnWriteArrayList<>();
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            CompletableFuture<byte[]> recibido = zebra(server, "~HS", List.of(respuestaHs(true, false, false)),
+                    datosAlConsultar);
+            ZplSocketSender sender = new ZplSocketSender(new ZplSocketSender.Opciones(Duration.ofSeconds(5),
+                    Duration.ofSeconds(5), true, true, 1024).conControlDeFlujo(Duration.ofMillis(10),
+                    Duration.ofMillis(200)));
+
+            SocketTimeoutException e = assertThrows(SocketTimeoutException.class, () -> sender.enviar(labels,
+                    "127.0.0.1", server.getLocalPort(), ZplSocketSender.Progreso.NINGUNO));
+            assertTrue(e.getMessage().contains("Sin papel"), e.getMessage());
+            assertEquals(0, recibido.get(10, TimeUnit.SECONDS).length);
+        }
+        assertTrue(datosAlConsultar.size() > 1);
+    }
+
+    @Test
+    void siLaImpresoraNoContestaElEstadoSeCortaPorTiempo() throws Exception {
+        List<ZplLabel> labels = List.of(new ZplLabel("^XA^XZ\n", "1", "d", "det"));
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            ZplSocketSender sender = new ZplSocketSender(new ZplSocketSender.Opciones(Duration.ofSeconds(5),
+                    Duration.ofMillis(300), true, true, 1024).conControlDeFlujo(Duration.ofMillis(10), Duration.ofSeconds(5)));
+
+            assertThrows(SocketTimeoutException.class, () -> sender.enviar(labels, "127.0.0.1",
+                    server.getLocalPort(), ZplSocketSender.Progreso.NINGUNO));
+        }
+    }
+
+    @Test
+    void conFormatosGuardadosLasEtiquetasSalenCompactadasDesdeQueLlegaElListado() throws Exception {
+        List<ZplLabel> labels = ZplFormatosGuardadosTest.inyectadas(200);
+        List<Integer> datosAlConsultar = new CopyOnWriteArrayList<>();
+        ZplSocketSender sender = new ZplSocketSender(new ZplSocketSender.Opciones(Duration.ofSeconds(5),
+                Duration.ofSeconds(5), true, true, 1024).conFormatosGuardados());
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            CompletableFuture<byte[]> recibido = zebra(server, ZplFormatosGuardados.consultaDirectorio(),
+                    List.of(LISTADO), datosAlConsultar);
+            sender.enviar(labels, "127.0.0.1", server.getLocalPort(), ZplSocketSender.Progreso.NINGUNO);
+
+            assertTrue(compactadasDesde(labels, recibido.get(10, TimeUnit.SECONDS)) < labels.size());
+            // La consulta va después de la primera etiqueta y el formato: la primera no la espera.
+            assertEquals(List.of(comoAntes(labels.subList(0, 1)).length + definicion(labels).length()),
+                    datosAlConsultar);
+
+            // Ya se sabe que los guarda: no se vuelve a preguntar y salen compactadas desde la segunda.
+            recibido = recibir(server);
+            sender.enviar(labels, "127.0.0.1", server.getLocalPort(), ZplSocketSender.Progreso.NINGUNO);
+
+            assertEquals(1, compactadasDesde(labels, recibido.get(10, TimeUnit.SECONDS)));
+        }
+    }
+
+    @Test
+    void conControlDeFlujoNoSeConfundeElListadoConElEstado() throws Exception {
+        List<ZplLabel> labels = ZplFormatosGuardadosTest.inyectadas(200);
+        List<String> estados = new ArrayList<>();
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            CompletableFuture<byte[]> recibido = zebra(server, Map.of(
+                    "~HS", List.of(respuestaHs(false, false, false)),
+                    ZplFormatosGuardados.consultaDirectorio(), List.of(LISTADO)), new CopyOnWriteArrayList<>());
+            new ZplSocketSender(new ZplSocketSender.Opciones(Duration.ofSeconds(5), Duration.ofSeconds(5),
+                    true, true, 1024).conControlDeFlujo(Duration.ofMillis(10), Duration.ofSeconds(5))
+                    .conFormatosGuardados())
+                    .enviar(labels, "127.0.0.1", server.getLocalPort(), ZplSocketSender.Progreso.NINGUNO,
+                            estado -> estados.add(estado.motivo()));
+
+            assertTrue(compactadasDesde(labels, recibido.get(10, TimeUnit.SECONDS)) < labels.size());
+        }
+        assertEquals(List.of("Lista"), estados);
+    }
+
+    @Test
+    void siNoContestaElListadoMandaElZplEnteroSinEsperarlo() throws Exception {
+        List<ZplLabel> labels = ZplFormatosGuardadosTest.inyectadas();
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            CompletableFuture<byte[]> recibido = recibir(server);
+            long inicio = System.nanoTime();
+            new ZplSocketSender(new ZplSocketSender.Opciones(Duration.ofSeconds(5), Duration.ofSeconds(5),
+                    true, true, 1024).conFormatosGuardados())
+                    .enviar(labels, "127.0.0.1", server.getLocalPort(), ZplSocketSender.Progreso.NINGUNO);
+            long milis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+
+            String esperado = new String(comoAntes(labels.subList(0, 1)), StandardCharsets.UTF_8)
+                    + definicion(labels) + ZplFormatosGuardados.consultaDirectorio()
+                    + new String(comoAntes(labels.subList(1, labels.size())), StandardCharsets.UTF_8);
+            assertEquals(esperado, new String(recibido.get(10, TimeUnit.SECONDS), StandardCharsets.UTF_8));
+            // El listado se espera hasta 3 s, pero sin frenar las etiquetas.
+            assertTrue(milis < 2000, milis + " ms");
+        }
+    }
+
+    /** El listado de una Zebra que guardó el formato. */
+    private static final String LISTADO = "\u0002\r\n- DIR R:ETQ*.ZPL\r\n*R:ETQ1.ZPL      180\r\n\r\n"
+            + "-  1468416 bytes free R:RAM\r\n\u0003";
+
+    /** El ^DF que define el formato de las etiquetas, con la segunda como la primera que lo usa. */
+    private static String definicion(List<ZplLabel> labels) {
+        return new ZplFormatosGuardados.Compactador().compactar(labels.get(1)).definicion();
+    }
+
+    /**
+     * Revisa que llegó la primera etiqueta entera, el formato, y las demás enteras hasta que se
+     * confirmó que la impresora lo guardó y compactadas desde ahí. Devuelve la primera compactada.
+     */
+    private static int compactadasDesde(List<ZplLabel> labels, byte[] recibido) {
+        ZplFormatosGuardados.Compactador compactador = new ZplFormatosGuardados.Compactador();
+        List<String> compactas = new ArrayList<>();
+        for (ZplLabel label : labels.subList(1, labels.size())) {
+            String zpl = compactador.compactar(label).zpl();
+            compactas.add(label.terminaEnSaltoDeLinea() ? zpl : zpl + "\n");
+        }
+        String texto = new String(recibido, StandardCharsets.UTF_8);
+        String previo = new String(comoAntes(labels.subList(0, 1)), StandardCharsets.UTF_8) + definicion(labels);
+        for (int desde = 1; desde <= labels.size(); desde++) {
+            StringBuilder esperado = new StringBuilder(previo);
+            esperado.append(new String(comoAntes(labels.subList(1, desde)), StandardCharsets.UTF_8));
+            for (String compacta : compactas.subList(desde - 1, compactas.size())) esperado.append(compacta);
+            if (esperado.toString().equals(texto)) return desde;
+        }
+        throw new AssertionError("No llegó lo esperado: " + texto);
+    }
+}
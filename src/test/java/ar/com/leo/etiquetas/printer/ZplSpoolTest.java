@@ -0,0 +1,160 @@
+package ar.com.leo.etiquetas.printer;
+
+import ar.com.leo.etiquetas.model.ZplLabel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZplSpoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<ZplLabel> etiquetas(int cuantas) {
+        List<ZplLabel> labels = new ArrayList<>();
+        for (int i = 0; i < cuantas; i++) {
+            labels.add(new ZplLabel("^XA\n^FDEtiqueta\t" + i + " Ñ^FS\n^XZ\n", "SKU" + i, "d", "det"));
+        }
+        return labels;
+    }
+
+    /** Una impresora que se traba después de {@code cortaEn} etiquetas. */
+    private static ZplPrinterPool.Destino impresora(String nombre, List<String> recibidas, int cortaEn) {
+        return new ZplPrinterPool.Destino() {
+            @Override
+            public String nombre() {
+                return nombre;
+            }
+
+            @Override
+            public void imprimir(List<ZplLabel> labels, ZplSocketSender.Progreso progreso) throws IOException {
+                for (int i = 0; i < labels.size(); i++) {
+                    if (i == cortaEn) throw new IOException("Papel trabado");
+                    recibidas.add(labels.get(i).rawZpl());
+                    progreso.enviada(i + 1, labels.size());
+                }
+            }
+        };
+    }
+
+    @Test
+    void despuesDeUnAtascoSeSigueDesdeLaPrimeraQueNoSalio() {
+        Path archivo = tempDir.resolve("spool-zpl.log");
+        List<ZplLabel> labels = etiquetas(600);
+        List<String> recibidas = new ArrayList<>();
+
+        try (ZplPrinterPool pool = new ZplPrinterPool(List.of(impresora("zebra", recibidas, 237)),
+                new ZplSpool(archivo))) {
+            assertEquals("Papel trabado", pool.imprimir(List.of(labels)).getFirst().error().getMessage());
+        }
+
+        // Otra sesión: la app se volvió a abrir.
+        ZplSpool spool = new ZplSpool(archivo);
+        List<ZplSpool.Pendiente> pendientes = spool.pendientes();
+        assertEquals(1, pendientes.size());
+        ZplSpool.Pendiente pendiente = pendientes.getFirst();
+        assertEquals("zebra", pendiente.impresora());
+        assertEquals(600, pendiente.total());
+        assertEquals(237, pendiente.enviadas());
+        assertEquals(labels.get(237).rawZpl(), pendiente.faltan().getFirst().rawZpl());
+        assertEquals("SKU237", pendiente.faltan().getFirst().sku());
+
+        try (ZplPrinterPool pool = new ZplPrinterPool(List.of(impresora("zebra", recibidas, -1)), spool)) {
+            assertTrue(pool.reanudar(0, pendiente).join().ok());
+        }
+
+        assertEquals(labels.stream().map(ZplLabel::rawZpl).toList(), recibidas);
+        assertEquals(List.of(), new ZplSpool(archivo).pendientes());
+    }
+
+    @Test
+    void siSeCortaOtraVezSeSumaALoQueYaHabiaSalido() {
+        Path archivo = tempDir.resolve("spool-zpl.log");
+        List<String> recibidas = new ArrayList<>();
+        try (ZplPrinterPool pool = new ZplPrinterPool(List.of(impresora("zebra", recibidas, 4)),
+                new ZplSpool(archivo))) {
+            pool.imprimir(List.of(etiquetas(10)));
+        }
+        ZplSpool spool = new ZplSpool(archivo);
+        try (ZplPrinterPool pool = new ZplPrinterPool(List.of(impresora("zebra", recibidas, 3)), spool)) {
+            pool.reanudar(0, spool.pendientes().getFirst()).join();
+        }
+
+        ZplSpool.Pendiente pendiente = new ZplSpool(archivo).pendientes().getFirst();
+        assertEquals(7, pendiente.enviadas());
+        assertEquals("SKU7", pendiente.faltan().getFirst().sku());
+    }
+
+    @Test
+    void laLineaCortadaPorLaCaidaSeDescarta() throws IOException {
+        Path archivo = tempDir.resolve("spool-zpl.log");
+        ZplSpool spool = new ZplSpool(archivo);
+        ZplSpool.Trabajo trabajo = spool.abrir("zebra", etiquetas(5));
+        trabajo.enviada(2, 5);
+        // La app se cae a mitad de la línea siguiente: el trabajo nunca se cierra.
+        String id = new ZplSpool(archivo).pendientes().getFirst().id();
+        Files.writeString(archivo, "S\t" + id + "\t4", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        ZplSpool.Pendiente pendiente = new ZplSpool(archivo).pendientes().getFirst();
+        assertEquals(2, pendiente.enviadas());
+        assertEquals(3, pendiente.faltan().size());
+    }
+
+    @Test
+    void unRegistroQueNoSePuedeLeerNoSeCompacta() throws IOException {
+        Path archivo = tempDir.resolve("spool-zpl.log");
+        ZplSpool spool = new ZplSpool(archivo);
+        ZplSpool.Trabajo trabajo = spool.abrir("zebra", etiquetas(5));
+        trabajo.enviada(2, 5);
+        // Un byte que no es UTF-8 hace fallar la lectura entera del registro.
+        Files.write(archivo, new byte[]{(byte) 0xFF, '\n'}, StandardOpenOption.APPEND);
+        byte[] antes = Files.readAllBytes(archivo);
+
+        trabajo.abandonar();
+
+        assertArrayEquals(antes, Files.readAllBytes(archivo));
+        assertEquals(List.of(), spool.pendientes());
+        // Sin el byte roto el trabajo sigue ahí, con lo que ya había salido.
+        Files.write(archivo, Arrays.copyOf(antes, antes.length - 2));
+        ZplSpool.Pendiente pendiente = new ZplSpool(archivo).pendientes().getFirst();
+        assertEquals(2, pendiente.enviadas());
+        assertEquals(3, pendiente.faltan().size());
+    }
+
+    @Test
+    void losDescartadosYLosTerminadosNoQuedanPendientes() {
+        Path archivo = tempDir.resolve("spool-zpl.log");
+        ZplSpool spool = new ZplSpool(archivo);
+        spool.abrir("zebra 1", etiquetas(3)).enviada(1, 3);
+        spool.abrir("zebra 2", etiquetas(3)).terminar();
+
+        ZplSpool otraSesion = new ZplSpool(archivo);
+        List<ZplSpool.Pendiente> pendientes = otraSesion.pendientes();
+        assertEquals(List.of("zebra 1"), pendientes.stream().map(ZplSpool.Pendiente::impresora).toList());
+
+        otraSesion.descartar(pendientes.getFirst());
+        otraSesion.compactar();
+        assertEquals(List.of(), otraSesion.pendientes());
+    }
+
+    @Test
+    void sinArchivoSeImprimeIgual() {
+        List<String> recibidas = new ArrayList<>();
+        try (ZplPrinterPool pool = new ZplPrinterPool(List.of(impresora("zebra", recibidas, -1)), new ZplSpool(null))) {
+            assertTrue(pool.imprimir(List.of(etiquetas(3))).getFirst().ok());
+        }
+        assertEquals(3, recibidas.size());
+    }
+}
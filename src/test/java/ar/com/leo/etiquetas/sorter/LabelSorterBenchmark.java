@@ -0,0 +1,103 @@
+package ar.com.leo.etiquetas.sorter;
+
+import ar.com.leo.etiquetas.model.SortResult;
+import ar.com.leo.etiquetas.model.ZplLabel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cuánto tarda {@link LabelSorter#sort} con lotes de 1k, 10k y 100k etiquetas armados como los de
+ * un día normal: unos 3000 SKU donde pocos se llevan la mayoría de las ventas, repartidos en
+ * zonas J y T, COMBOS y RETIROS, con algunos sin zona en el Excel, un 5% de TURBOS y un 5% de
+ * CARROS de 2 a 6 SKU.
+ *
+ * No corre con los tests. Para correrlo:
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ar.com.leo.etiquetas.sorter.LabelSorterBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LabelSorterBenchmark {
+
+    private static final int SKUS = 3000;
+
+    @Param({"1000", "10000", "100000"})
+    public int etiquetas;
+
+    private final LabelSorter sorter = new LabelSorter();
+    private List<ZplLabel> labels;
+    private Map<String, String> skuToZone;
+
+    @Setup
+    public void armarLote() {
+        Random random = new Random(42);
+        String[] zonas = new String[34];
+        for (int i = 0; i < 20; i++) zonas[i] = "J" + (i + 1);
+        for (int i = 0; i < 12; i++) zonas[20 + i] = "T" + (i + 1);
+        zonas[32] = "COMBOS";
+        zonas[33] = "RETIROS";
+
+        skuToZone = new HashMap<>();
+        for (int i = 0; i < SKUS; i++) {
+            // Uno de cada 50 SKU todavía no está en el Excel de stock.
+            if (i % 50 != 49) skuToZone.put(sku(i), zonas[random.nextInt(zonas.length)]);
+        }
+
+        labels = new ArrayList<>(etiquetas);
+        for (int i = 0; i < etiquetas; i++) {
+            int tipo = random.nextInt(20);
+            String sku;
+            if (tipo == 0) {
+                StringBuilder carro = new StringBuilder(sku(masVendido(random)));
+                int otros = 1 + random.nextInt(5);
+                for (int j = 0; j < otros; j++) carro.append('\n').append(sku(masVendido(random)));
+                sku = carro.toString();
+            } else {
+                sku = sku(masVendido(random));
+            }
+            labels.add(new ZplLabel("^XA^FDPack ID: " + i + "^FS^XZ", sku, "Producto " + sku, "Detalle",
+                    1 + random.nextInt(3), tipo == 1));
+        }
+    }
+
+    /** Pocos SKU se llevan casi todas las ventas: el índice sale sesgado hacia los primeros. */
+    private static int masVendido(Random random) {
+        double u = random.nextDouble();
+        return (int) (SKUS * u * u * u);
+    }
+
+    private static String sku(int i) {
+        return Integer.toString(1_000_000 + i * 37);
+    }
+
+    @Benchmark
+    public SortResult sort() {
+        return sorter.sort(labels, skuToZone);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LabelSorterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
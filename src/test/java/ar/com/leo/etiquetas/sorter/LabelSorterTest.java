@@ -0,0 +1,141 @@
+package ar.com.leo.etiquetas.sorter;
+
+import ar.com.leo.etiquetas.model.SortResult;
+import ar.com.leo.etiquetas.model.SortedLabelGroup;
+import ar.com.leo.etiquetas.model.ZplLabel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LabelSorterTest {
+
+    @Test
+    void dentroDeLaZonaLosSkuVanPorNumeroYLosInvalidosAlFinal() {
+        List<ZplLabel> labels = List.of(
+                new ZplLabel("^XA1^XZ", "SKU INVALIDO: x", "d", "det"),
+                new ZplLabel("^XA2^XZ", "100", "d", "det"),
+                new ZplLabel("^XA3^XZ", "20", "d", "det"),
+                new ZplLabel("^XA4^XZ", "20", "d", "det"));
+        Map<String, String> skuToZone = Map.of("SKU INVALIDO: x", "J1", "100", "J1", "20", "J1");
+
+        List<SortedLabelGroup> groups = new LabelSorter().sort(labels, skuToZone).groups();
+
+        assertEquals(List.of("20", "100", "SKU INVALIDO: x"), groups.stream().map(SortedLabelGroup::sku).toList());
+        assertEquals(2, groups.getFirst().labels().size());
+    }
+
+    @Test
+    void unaZonaConBarraNoSeMezclaConElSku() {
+        // Con la clave "zona|sku" de antes, "J1|A" + "5" y "J1" + "A|5" eran el mismo grupo.
+        List<ZplLabel> labels = List.of(
+                new ZplLabel("^XA1^XZ", "5", "d", "det"),
+                new ZplLabel("^XA2^XZ", "A|5", "d", "det"));
+        Map<String, String> skuToZone = Map.of("5", "J1|A", "A|5", "J1");
+
+        List<SortedLabelGroup> groups = new LabelSorter().sort(labels, skuToZone).groups();
+
+        assertEquals(2, groups.size());
+        assertEquals("J1", groups.get(0).zone());
+        assertEquals("A|5", groups.get(0).sku());
+        assertEquals("J1|A", groups.get(1).zone());
+        assertEquals("5", groups.get(1).sku());
+    }
+
+    @Test
+    void sumarUnaTandaDaLoMismoQueOrdenarTodoJunto() {
+        Map<String, String> skuToZone = Map.of("20", "J1", "100", "T2", "7", "J1");
+        List<ZplLabel> manana = List.of(
+                new ZplLabel("^XA1^XZ", "100", "d", "det"),
+                new ZplLabel("^XA2^XZ", "20", null, null),
+                new ZplLabel("^XA3^XZ", "10\n20\n30", "d", "det"));
+        List<ZplLabel> tarde = List.of(
+                new ZplLabel("^XA4^XZ", "20", "desc", "det"),
+                new ZplLabel("^XA5^XZ", "7", "d", "det"),
+                new ZplLabel("^XA6^XZ", "sin zona", "d", "det"),
+                new ZplLabel("^XA7^XZ", "40\n50", "d", "det"));
+        LabelSorter sorter = new LabelSorter();
+
+        SortResult deLaManana = sorter.sort(manana, skuToZone);
+        SortResult sumado = sorter.merge(deLaManana, tarde, skuToZone);
+
+        List<ZplLabel> todas = new ArrayList<>(manana);
+        todas.addAll(tarde);
+        assertEquals(sorter.sort(todas, skuToZone), sumado);
+        assertEquals(7, sumado.statistics().totalLabels());
+        assertEquals(8, sumado.statistics().uniqueSkus());
+        assertEquals("desc", sumado.groups().get(1).productDescription());
+        // Lo que ya se había entregado no cambia con la tanda siguiente.
+        assertEquals(sorter.sort(manana, skuToZone), deLaManana);
+    }
+
+    @Test
+    void cadaTandaSeSumaALaAnteriorAunqueSeRepitaUnResultadoViejo() {
+        Map<String, String> skuToZone = new HashMap<>();
+        for (int i = 0; i < 50; i++) skuToZone.put(String.valueOf(i), "J" + (1 + i % 7));
+        Random random = new Random(3);
+        List<List<ZplLabel>> tandas = new ArrayList<>();
+        for (int t = 0; t < 6; t++) {
+            List<ZplLabel> tanda = new ArrayList<>();
+            // Más grupos que un tramo, para que se partan.
+            for (int i = 0; i < 150; i++) {
+                String sku = random.nextInt(10) == 0 ? "x" + random.nextInt(400) : String.valueOf(random.nextInt(400));
+                tanda.add(new ZplLabel("^XA" + t + "-" + i + "^XZ", sku, random.nextBoolean() ? "d" + i : null, "det"));
+            }
+            tandas.add(tanda);
+        }
+        LabelSorter sorter = new LabelSorter();
+
+        List<ZplLabel> todas = new ArrayList<>(tandas.getFirst());
+        SortResult resultado = sorter.sort(todas, skuToZone);
+        SortResult despuesDeLaSegunda = null;
+        for (int t = 1; t < tandas.size(); t++) {
+            todas.addAll(tandas.get(t));
+            resultado = sorter.merge(resultado, tandas.get(t), skuToZone);
+            if (t == 1) despuesDeLaSegunda = resultado;
+            assertEquals(sorter.sort(todas, skuToZone), resultado);
+        }
+
+        // Sumarle a un resultado que ya no es el último arma el acumulado desde ese resultado.
+        List<ZplLabel> hastaLaSegunda = new ArrayList<>(tandas.get(0));
+        hastaLaSegunda.addAll(tandas.get(1));
+        hastaLaSegunda.addAll(tandas.get(5));
+        assertEquals(sorter.sort(hastaLaSegunda, skuToZone),
+                sorter.merge(despuesDeLaSegunda, tandas.get(5), skuToZone));
+    }
+
+    @Test
+    void sumarUnaTandaNoCuestaMasCuantoMasGrandeEsLoAnterior() {
+        Map<String, String> skuToZone = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) skuToZone.put(String.valueOf(i), "J" + (1 + i % 20));
+        LabelSorter sorter = new LabelSorter();
+
+        long chico = comparacionesDeUnaTanda(sorter, skuToZone, 1_000);
+        long grande = comparacionesDeUnaTanda(sorter, skuToZone, 100_000);
+
+        // Cada grupo nuevo entra con dos búsquedas binarias: 100 veces más de lo anterior son
+        // unas pocas comparaciones más por grupo, no 100 veces más trabajo.
+        assertTrue(grande < chico * 2, chico + " comparaciones contra " + grande);
+        assertTrue(grande < 50 * 2 * 20, "Más de 2 log n por grupo nuevo: " + grande);
+    }
+
+    /** Cuántas comparaciones cuesta sumar 50 grupos nuevos a {@code anteriores} grupos ya armados. */
+    private static long comparacionesDeUnaTanda(LabelSorter sorter, Map<String, String> skuToZone, int anteriores) {
+        List<ZplLabel> antes = new ArrayList<>(anteriores);
+        for (int i = 0; i < anteriores; i++) antes.add(new ZplLabel("^XA^XZ", String.valueOf(i * 2), "d", "det"));
+        List<ZplLabel> tanda = new ArrayList<>();
+        for (int i = 0; i < 50; i++) tanda.add(new ZplLabel("^XA^XZ", String.valueOf(i * 2 + 1), "d", "det"));
+
+        SortResult anterior = sorter.merge(sorter.sort(antes, skuToZone), List.of(
+                new ZplLabel("^XA^XZ", String.valueOf(anteriores * 2), "d", "det")), skuToZone);
+        long antesDeLaTanda = sorter.comparaciones();
+        sorter.merge(anterior, tanda, skuToZone);
+        return sorter.comparaciones() - antesDeLaTanda;
+    }
+}
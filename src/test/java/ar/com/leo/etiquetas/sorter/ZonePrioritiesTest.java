@@ -0,0 +1,79 @@
+package ar.com.leo.etiquetas.sorter;
+
+import ar.com.leo.etiquetas.model.SortedLabelGroup;
+import ar.com.leo.etiquetas.model.ZplLabel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ZonePrioritiesTest {
+
+    @TempDir
+    Path tempDir;
+
+    /** La cadena de startsWith que estaba fija en LabelSorter y en la tabla de órdenes. */
+    private static int prioridadAnterior(String zone) {
+        String z = zone.toUpperCase();
+        if (z.startsWith("J")) return 0;
+        if (z.startsWith("TURBOS")) return 4;
+        if (z.startsWith("T")) return 1;
+        if (z.startsWith("COMBOS")) return 2;
+        if (z.startsWith("CARROS")) return 3;
+        if (z.startsWith("RETIROS")) return 5;
+        return Integer.MAX_VALUE;
+    }
+
+    @Test
+    void porDefectoOrdenaComoAntes() {
+        for (String zone : List.of("J1", "j12", "T3", "t", "TURBOS", "turbos", "TURBO", "COMBOS", "COMBO",
+                "CARROS", "RETIROS 2", "???", "", "Z9")) {
+            assertEquals(prioridadAnterior(zone), ZonePriorities.DEFAULT.prioridad(zone), zone);
+        }
+    }
+
+    @Test
+    void ganaElPrefijoMasLargo() throws IOException {
+        ZonePriorities prioridades = ZonePriorities.of(new StringReader("""
+                # depósito nuevo entre J y T
+                J=0
+                D=1
+                DEP2=7
+                T=2
+                """));
+
+        assertEquals(1, prioridades.prioridad("D5"));
+        assertEquals(7, prioridades.prioridad("dep2-A"));
+        assertEquals(1, prioridades.prioridad("DEP"));
+        assertEquals(ZonePriorities.SIN_PRIORIDAD, prioridades.prioridad("COMBOS"));
+    }
+
+    @Test
+    void sinArchivoOConErroresSeUsaElOrdenDeSiempre() throws IOException {
+        assertSame(ZonePriorities.DEFAULT, ZonePriorities.cargar(tempDir.resolve("zonas.properties")));
+
+        Path archivo = Files.writeString(tempDir.resolve("zonas.properties"), "J=primero\n");
+        assertSame(ZonePriorities.DEFAULT, ZonePriorities.cargar(archivo));
+    }
+
+    @Test
+    void elSorterUsaLaTablaQueLeDan() throws IOException {
+        ZonePriorities prioridades = ZonePriorities.of(new StringReader("T=0\nJ=1\n"));
+        List<ZplLabel> labels = List.of(
+                new ZplLabel("^XA1^XZ", "1", "d", "det"),
+                new ZplLabel("^XA2^XZ", "2", "d", "det"));
+
+        List<SortedLabelGroup> groups = new LabelSorter(prioridades).sort(labels, Map.of("1", "J1", "2", "T1")).groups();
+
+        assertEquals("T1", groups.get(0).zone());
+        assertEquals("J1", groups.get(1).zone());
+    }
+}
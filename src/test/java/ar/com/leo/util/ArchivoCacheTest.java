@@ -0,0 +1,54 @@
+package ar.com.leo.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ArchivoCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void seLeeUnaVezMientrasElArchivoNoCambie() throws Exception {
+        AtomicInteger lecturas = new AtomicInteger();
+        ArchivoCache<String> cache = new ArchivoCache<>(path -> {
+            lecturas.incrementAndGet();
+            return Files.readString(path);
+        });
+        Path archivo = Files.writeString(tempDir.resolve("combos.xlsx"), "uno");
+        Files.setLastModifiedTime(archivo, FileTime.from(Instant.parse("2026-01-01T10:00:00Z")));
+
+        String primero = cache.leer(archivo);
+        assertSame(primero, cache.leer(tempDir.resolve(".").resolve("combos.xlsx")));
+        assertEquals(1, lecturas.get());
+
+        // Mismo tamaño, otra fecha.
+        Files.writeString(archivo, "dos");
+        Files.setLastModifiedTime(archivo, FileTime.from(Instant.parse("2026-01-01T10:05:00Z")));
+        assertEquals("dos", cache.leer(archivo));
+
+        // Misma fecha, otro tamaño.
+        Files.writeString(archivo, "tres");
+        Files.setLastModifiedTime(archivo, FileTime.from(Instant.parse("2026-01-01T10:05:00Z")));
+        assertEquals("tres", cache.leer(archivo));
+        assertEquals(3, lecturas.get());
+    }
+
+    @Test
+    void siNoExisteFallaComoElLector() {
+        ArchivoCache<String> cache = new ArchivoCache<>(Files::readString);
+
+        assertThrows(NoSuchFileException.class, () -> cache.leer(tempDir.resolve("no-existe.xlsx")));
+    }
+}
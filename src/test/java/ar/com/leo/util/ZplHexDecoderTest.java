@@ -0,0 +1,41 @@
+package ar.com.leo.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ZplHexDecoderTest {
+
+    @Test
+    void sinEscapesDevuelveElMismoTexto() {
+        String texto = "Pack ID: 2000011223344 _X1 _";
+
+        assertSame(texto, ZplHexDecoder.decode(texto));
+    }
+
+    @Test
+    void decodificaLasTiradasUtf8() {
+        assertEquals("Cañería Dúplex", ZplHexDecoder.decode("Ca_C3_B1er_C3_ADa D_c3_bAplex"));
+        assertEquals("A_", ZplHexDecoder.decode("_41_"));
+    }
+
+    @Test
+    void unaTiradaMalFormadaSaleComoConElDecoderDelJdk() {
+        assertEquals("x\uFFFDy", ZplHexDecoder.decode("x_C3y"));
+        assertEquals("\uFFFDA", ZplHexDecoder.decode("_C3_41"));
+        // Una mitad de surrogate: los reemplazos los decide el JDK.
+        byte[] surrogate = {(byte) 0xED, (byte) 0xA0, (byte) 0x80};
+        assertEquals(new String(surrogate, StandardCharsets.UTF_8), ZplHexDecoder.decode("_ED_A0_80"));
+    }
+
+    @Test
+    void decodificaSoloElCampoPedido() {
+        String bloque = "^FO1,1^FH^FDCa_C3_B1o^FS^FD_C3_A1^FS";
+        int desde = bloque.indexOf("^FD") + 3;
+
+        assertEquals("Caño", ZplHexDecoder.decodeField(bloque, desde, bloque.indexOf("^FS")));
+    }
+}